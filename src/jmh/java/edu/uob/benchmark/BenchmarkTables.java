@@ -0,0 +1,105 @@
+package edu.uob.benchmark;
+
+import edu.uob.parser.QueryExecuter;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Builds the tables the benchmarks run against. The table "data" has the id, a
+ * numeric column c1 holding id % 100 (so c1 == 42 matches 1% of the rows) and
+ * text columns c2 to cN; the table "dim" has 100 rows whose id joins with c1.
+ */
+final class BenchmarkTables {
+    static final String DATABASE = "bench";
+
+    private BenchmarkTables() {
+    }
+
+    /**
+     * Create the benchmark database under a storage folder and select it.
+     * @param executer Executer whose storage folder the database is created in
+     * @param storageFolder Storage folder of the executer, where the data file for LOAD is written
+     * @param rows Rows in the data table
+     * @param columns Columns in the data table, not counting the id
+     */
+    static void create(QueryExecuter executer, Path storageFolder, int rows, int columns) throws IOException {
+        check(executer.execute("CREATE DATABASE " + DATABASE + ";"));
+        check(executer.execute("USE " + DATABASE + ";"));
+        check(executer.execute("CREATE TABLE data (" + String.join(", ", columnNames(columns)) + ");"));
+        check(executer.execute("CREATE TABLE dim (label);"));
+
+        Path dataFile = storageFolder.resolve("data.tsv");
+        writeDataFile(dataFile, rows, columns);
+        check(executer.execute("LOAD DATA '" + dataFile + "' INTO data;"));
+        Files.delete(dataFile);
+
+        StringBuilder dimRows = new StringBuilder("INSERT INTO dim VALUES ");
+        for (int row = 0; row < 100; row++) {
+            dimRows.append(row == 0 ? "" : ", ").append("('label").append(row).append("')");
+        }
+        check(executer.execute(dimRows.append(";").toString()));
+    }
+
+    // Write the rows of the data table as a tab-separated file for LOAD DATA.
+    static void writeDataFile(Path dataFile, int rows, int columns) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(dataFile, StandardCharsets.UTF_8)) {
+            for (int row = 1; row <= rows; row++) {
+                writer.write(String.join("\t", rowValues(row, columns)));
+                writer.newLine();
+            }
+        }
+    }
+
+    static List<String> columnNames(int columns) {
+        List<String> names = new ArrayList<>(columns);
+        for (int column = 1; column <= columns; column++) {
+            names.add("c" + column);
+        }
+        return names;
+    }
+
+    // Values of the row with the given id, without the id.
+    static List<String> rowValues(int id, int columns) {
+        List<String> values = new ArrayList<>(columns);
+        values.add(String.valueOf(id % 100));
+        for (int column = 2; column <= columns; column++) {
+            values.add("name" + (id % 1000) + "_" + column);
+        }
+        return values;
+    }
+
+    // The values of a row as the VALUES list of an INSERT.
+    static String insertValues(int id, int columns) {
+        List<String> quoted = new ArrayList<>(columns);
+        for (String value : rowValues(id, columns)) {
+            quoted.add("'" + value + "'");
+        }
+        return "(" + String.join(", ", quoted) + ")";
+    }
+
+    static void deleteRecursively(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    static String check(String result) {
+        if (!result.startsWith("[OK]")) {
+            throw new IllegalStateException("Benchmark setup failed: " + result);
+        }
+        return result;
+    }
+}
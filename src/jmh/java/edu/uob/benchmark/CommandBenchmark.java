@@ -0,0 +1,130 @@
+package edu.uob.benchmark;
+
+import edu.uob.model.Database;
+import edu.uob.parser.QueryExecuter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Each command run through {@link QueryExecuter#execute(String)} against tables of
+ * different sizes, without the network. The table is loaded into the table cache
+ * during setup, so scans measure the in-memory path; selectWhereFromFile drops the
+ * table from the cache first, so it measures loading or scanning the table file.
+ *
+ * <p>The result cache is turned off, otherwise every repeated SELECT would only
+ * measure a cache hit.
+ *
+ * <p>INSERT adds a row per call, so the table grows by the number of calls made
+ * during a trial; UPDATE changes one row chosen by id; DELETE removes one row and
+ * inserts a replacement, so the table keeps its size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Ddb.resultCache.maxBytes=0")
+public class CommandBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int rows;
+
+    @Param({"4", "16"})
+    public int columns;
+
+    private Path storageFolder;
+    private QueryExecuter executer;
+    private int nextId;
+    private int oldestId;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        storageFolder = Files.createTempDirectory("db-benchmark");
+        executer = new QueryExecuter(new Database(storageFolder.toString()));
+        BenchmarkTables.create(executer, storageFolder, rows, columns);
+        BenchmarkTables.check(executer.execute("SELECT id FROM data WHERE id == 1;"));
+        nextId = 1;
+        oldestId = 1;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        executer.execute("DROP DATABASE " + BenchmarkTables.DATABASE + ";");
+        executer.getDatabase().close();
+        BenchmarkTables.deleteRecursively(storageFolder);
+    }
+
+    @Benchmark
+    public String selectAll() throws IOException {
+        return executer.execute("SELECT * FROM data;");
+    }
+
+    @Benchmark
+    public String selectWhere() throws IOException {
+        return executer.execute("SELECT c1, c2 FROM data WHERE c1 == 42;");
+    }
+
+    @Benchmark
+    public String selectWhereFromFile() throws IOException {
+        executer.getDatabase().getTableCache().invalidatePrefix(BenchmarkTables.DATABASE + "/");
+        return executer.execute("SELECT c1, c2 FROM data WHERE c1 == 42;");
+    }
+
+    @Benchmark
+    public String selectRange() throws IOException {
+        return executer.execute("SELECT id FROM data WHERE c1 > 97 AND c2 LIKE 'name1';");
+    }
+
+    @Benchmark
+    public String selectById() throws IOException {
+        return executer.execute("SELECT * FROM data WHERE id == " + nextRowId() + ";");
+    }
+
+    @Benchmark
+    public String insert() throws IOException {
+        return executer.execute("INSERT INTO data VALUES " + BenchmarkTables.insertValues(rows + nextId, columns) + ";");
+    }
+
+    @Benchmark
+    public String update() throws IOException {
+        return executer.execute("UPDATE data SET c2 = 'changed' WHERE id == " + nextRowId() + ";");
+    }
+
+    @Benchmark
+    public String deleteAndReinsert() throws IOException {
+        // Delete the oldest row. Its replacement takes the next free id, not the deleted one, so the ids
+        // of the rows still in the table run from oldestId to rows + oldestId - 1; wrapping back to 1 once
+        // oldestId passes rows would delete nothing.
+        String result = executer.execute("DELETE FROM data WHERE id == " + oldestId + ";");
+        executer.execute("INSERT INTO data VALUES " + BenchmarkTables.insertValues(rows + oldestId, columns) + ";");
+        oldestId++;
+        return result;
+    }
+
+    @Benchmark
+    public String join() throws IOException {
+        return executer.execute("JOIN data AND dim ON c1 AND id;");
+    }
+
+    // Cycle through the ids of the loaded rows.
+    private int nextRowId() {
+        nextId = nextId % rows + 1;
+        return nextId;
+    }
+}
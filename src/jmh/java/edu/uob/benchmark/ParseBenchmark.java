@@ -0,0 +1,61 @@
+package edu.uob.benchmark;
+
+import edu.uob.parser.PlanCache;
+import edu.uob.parser.QuerySyntaxException;
+import edu.uob.parser.Statement;
+import edu.uob.parser.StatementParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing SELECT, UPDATE and DELETE statements, and looking them up in the plan cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+    private static final String SELECT = "SELECT c1, c2 FROM data WHERE (c1 == 42 AND c2 LIKE 'name') OR c1 > 90;";
+    private static final String UPDATE = "UPDATE data SET c2 = 'changed', c3 = 'again' WHERE c1 >= 10 AND c1 < 20;";
+    private static final String DELETE = "DELETE FROM data WHERE c1 == 42 OR c2 == 'name7_2';";
+
+    private PlanCache planCache;
+
+    @Setup
+    public void setup() throws QuerySyntaxException {
+        planCache = new PlanCache();
+        planCache.get(SELECT);
+    }
+
+    @Benchmark
+    public Statement parseSelect() throws QuerySyntaxException {
+        return StatementParser.parse(SELECT);
+    }
+
+    @Benchmark
+    public Statement parseUpdate() throws QuerySyntaxException {
+        return StatementParser.parse(UPDATE);
+    }
+
+    @Benchmark
+    public Statement parseDelete() throws QuerySyntaxException {
+        return StatementParser.parse(DELETE);
+    }
+
+    @Benchmark
+    public Statement planCacheHit() throws QuerySyntaxException {
+        return planCache.get(SELECT);
+    }
+}
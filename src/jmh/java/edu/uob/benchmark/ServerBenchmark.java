@@ -0,0 +1,197 @@
+package edu.uob.benchmark;
+
+import edu.uob.DBServer;
+import edu.uob.protocol.BinaryProtocol;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Commands sent to a {@link DBServer} over a loopback socket, with the text and the
+ * binary protocol, so the figures include parsing the request, the command itself
+ * and writing the result to the client. The server keeps its databases in a
+ * temporary folder, which is deleted when the trial ends.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+// Keep the query log from writing a line to the console for every command, and run every SELECT instead of
+// answering it from the result cache.
+@Fork(value = 1, jvmArgsAppend = {"-Ddb.log.level=WARN", "-Ddb.resultCache.maxBytes=0"})
+public class ServerBenchmark {
+    private static final char END_OF_TRANSMISSION = 4;
+
+    @Param({"1000", "100000", "1000000"})
+    public int rows;
+
+    @Param({"4"})
+    public int columns;
+
+    private Path storageFolder;
+    private DBServer server;
+    private Thread listener;
+    private Socket textSocket;
+    private BufferedReader textReader;
+    private BufferedWriter textWriter;
+    private Socket binarySocket;
+    private DataInputStream binaryIn;
+    private DataOutputStream binaryOut;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, InterruptedException {
+        storageFolder = Files.createTempDirectory("db-benchmark");
+        server = new DBServer(storageFolder.toString());
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        listener = new Thread(() -> {
+            try {
+                server.blockingListenOn(port);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }, "benchmark-server");
+        listener.setDaemon(true);
+        listener.start();
+
+        textSocket = connect(port);
+        textReader = new BufferedReader(new InputStreamReader(textSocket.getInputStream(), StandardCharsets.UTF_8));
+        textWriter = new BufferedWriter(new OutputStreamWriter(textSocket.getOutputStream(), StandardCharsets.UTF_8));
+        sendText("CREATE DATABASE " + BenchmarkTables.DATABASE + ";");
+        sendText("USE " + BenchmarkTables.DATABASE + ";");
+        sendText("CREATE TABLE data (" + String.join(", ", BenchmarkTables.columnNames(columns)) + ");");
+        BenchmarkTables.writeDataFile(storageFolder.resolve("data.tsv"), rows, columns);
+        BenchmarkTables.check(sendText("LOAD DATA 'data.tsv' INTO data;"));
+        Files.delete(storageFolder.resolve("data.tsv"));
+
+        binarySocket = connect(port);
+        binarySocket.getOutputStream().write((BinaryProtocol.HANDSHAKE + "\n").getBytes(StandardCharsets.UTF_8));
+        binarySocket.getOutputStream().flush();
+        binaryIn = new DataInputStream(new BufferedInputStream(binarySocket.getInputStream()));
+        binaryOut = new DataOutputStream(new BufferedOutputStream(binarySocket.getOutputStream()));
+        String reply = readHandshakeReply(binaryIn);
+        if (!reply.equals(BinaryProtocol.HANDSHAKE)) {
+            throw new IllegalStateException("Server did not switch to the binary protocol: " + reply);
+        }
+        sendBinary("USE " + BenchmarkTables.DATABASE + ";");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException, InterruptedException {
+        textSocket.close();
+        binarySocket.close();
+        // The listener closes the databases before it returns, so the folder is no longer in use.
+        server.stop();
+        listener.join();
+        BenchmarkTables.deleteRecursively(storageFolder);
+    }
+
+    @Benchmark
+    public String textSelectWhere() throws IOException {
+        return sendText("SELECT c1, c2 FROM data WHERE c1 == 42;");
+    }
+
+    @Benchmark
+    public String textSelectAll() throws IOException {
+        return sendText("SELECT * FROM data;");
+    }
+
+    @Benchmark
+    public long binarySelectWhere() throws IOException {
+        return sendBinary("SELECT c1, c2 FROM data WHERE c1 == 42;");
+    }
+
+    @Benchmark
+    public long binarySelectAll() throws IOException {
+        return sendBinary("SELECT * FROM data;");
+    }
+
+    @Benchmark
+    public String textInsert() throws IOException {
+        return sendText("INSERT INTO data VALUES " + BenchmarkTables.insertValues(rows + 1, columns) + ";");
+    }
+
+    private static Socket connect(int port) throws IOException, InterruptedException {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return new Socket("localhost", port);
+            } catch (IOException e) {
+                if (attempt == 50) throw e;
+                // The listener thread may not have opened the port yet.
+                Thread.sleep(100);
+            }
+        }
+    }
+
+    // Send a command with the text protocol and read the result up to the EOT line.
+    private String sendText(String command) throws IOException {
+        textWriter.write(command + "\n");
+        textWriter.flush();
+        StringBuilder result = new StringBuilder();
+        String line;
+        while ((line = textReader.readLine()) != null && line.indexOf(END_OF_TRANSMISSION) == -1) {
+            result.append(line).append('\n');
+        }
+        if (line == null) {
+            throw new IOException("Server disconnected (end-of-stream)");
+        }
+        return result.toString();
+    }
+
+    // Send a command with the binary protocol and read the response, returning the number of rows.
+    private long sendBinary(String command) throws IOException {
+        BinaryProtocol.writeQuery(binaryOut, command);
+        return BinaryProtocol.readResponse(binaryIn, new BinaryProtocol.ResponseHandler() {
+            @Override
+            public void status(String status) {
+            }
+
+            @Override
+            public void header(List<String> columns) {
+            }
+
+            @Override
+            public void rows(List<List<String>> rows) {
+            }
+        });
+    }
+
+    private static String readHandshakeReply(DataInputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            line.append((char) b);
+        }
+        return line.toString();
+    }
+}
@@ -1,19 +1,34 @@
 package edu.uob;
 
+import edu.uob.protocol.BinaryProtocol;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.net.Socket;
+import java.util.List;
 
 public class DBClient {
 
     private static final char END_OF_TRANSMISSION = 4;
 
+    // Start with --binary to use the length-prefixed binary protocol instead of the text protocol.
     public static void main(String[] args) throws IOException {
         BufferedReader input = new BufferedReader(new InputStreamReader(System.in));
         Socket socket = new Socket("localhost", 8888);
+        if (args.length > 0 && args[0].equals("--binary") && negotiateBinaryProtocol(socket)) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            while (!Thread.interrupted()) {
+                handleNextBinaryCommand(input, in, out);
+            }
+        }
         BufferedReader socketReader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
         BufferedWriter socketWriter = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
         while (!Thread.interrupted()) {
@@ -21,6 +36,62 @@ public class DBClient {
         }
     }
 
+    /**
+     * Ask the server for the binary protocol. A server that does not support it answers with an
+     * ordinary text response, which is read to the end so the text protocol can carry on.
+     */
+    private static boolean negotiateBinaryProtocol(Socket socket) throws IOException {
+        socket.getOutputStream().write((BinaryProtocol.HANDSHAKE + "\n").getBytes());
+        socket.getOutputStream().flush();
+        // Read byte by byte so no part of the next response is buffered here.
+        StringBuilder line = new StringBuilder();
+        while (true) {
+            int b = socket.getInputStream().read();
+            if (b == -1) {
+                throw new IOException("Server disconnected (end-of-stream)");
+            }
+            if (b == '\n') {
+                if (line.toString().equals(BinaryProtocol.HANDSHAKE)) {
+                    return true;
+                }
+                if (line.toString().contains("" + END_OF_TRANSMISSION)) {
+                    System.out.println("Server does not support the binary protocol, using text");
+                    return false;
+                }
+                line.setLength(0);
+            } else {
+                line.append((char) b);
+            }
+        }
+    }
+
+    private static void handleNextBinaryCommand(BufferedReader commandLine, DataInputStream in, DataOutputStream out) throws IOException {
+        System.out.print("SQL:> ");
+        String command = commandLine.readLine();
+        if (command == null) {
+            throw new IOException("End of input");
+        }
+        BinaryProtocol.writeQuery(out, command);
+        BinaryProtocol.readResponse(in, new BinaryProtocol.ResponseHandler() {
+            @Override
+            public void status(String status) {
+                System.out.println(status);
+            }
+
+            @Override
+            public void header(List<String> columns) {
+                System.out.println(String.join("\t", columns));
+            }
+
+            @Override
+            public void rows(List<List<String>> rows) {
+                for (List<String> row : rows) {
+                    System.out.println(String.join("\t", row));
+                }
+            }
+        });
+    }
+
     private static void handleNextCommand(BufferedReader commandLine, BufferedReader socketReader, BufferedWriter socketWriter) throws IOException {
         System.out.print("SQL:> ");
         String command = commandLine.readLine();
@@ -1,25 +1,53 @@
 package edu.uob;
 
+import edu.uob.log.QueryLog;
+import edu.uob.metrics.ServerMetrics;
+import edu.uob.metrics.StatsMBean;
+import edu.uob.model.Database;
+import edu.uob.model.Session;
 import edu.uob.parser.QueryExecuter;
+import edu.uob.protocol.BinaryProtocol;
+import edu.uob.protocol.BinaryResultWriter;
+import edu.uob.protocol.ResultSink;
+import edu.uob.protocol.TextResultWriter;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
 import java.nio.file.Files;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 /** This class implements the DB server. */
 public class DBServer {
 
     private static final char END_OF_TRANSMISSION = 4;
+    private static final int MAX_CONNECTION_THREADS = 64;
+    // Text results are written to the socket in chunks of this many characters.
+    private static final int TEXT_BUFFER_SIZE = 64 * 1024;
     private String storageFolderPath;
     QueryExecuter queryExecuter;
-
-
+    // Set while blockingListenOn is accepting connections, so stop can close it.
+    private volatile ServerSocket serverSocket;
+    // Commands are logged by a background thread, configured with the db.log.* system properties.
+    QueryLog queryLog = QueryLog.fromSystemProperties();
 
     public static void main(String args[]) throws IOException {
         DBServer server = new DBServer();
@@ -30,11 +58,20 @@ public class DBServer {
      * KEEP this signature otherwise we won't be able to mark your submission correctly.
      */
     public DBServer() {
-        storageFolderPath = Paths.get("databases").toAbsolutePath().toString();
+        this(Paths.get("databases").toAbsolutePath().toString());
+    }
+
+    /**
+     * A server that keeps its databases in the given folder instead of the databases folder of the
+     * working directory.
+     * @param storageFolderPath Folder the databases are kept in
+     */
+    public DBServer(String storageFolderPath) {
+        this.storageFolderPath = storageFolderPath;
         try {
             // Create the database storage folder if it doesn't already exist !
             Files.createDirectories(Paths.get(storageFolderPath));
-            queryExecuter = new QueryExecuter();
+            queryExecuter = new QueryExecuter(new Database(storageFolderPath));
         } catch(IOException ioe) {
             System.out.println("Can't seem to create database storage folder " + storageFolderPath);
         }
@@ -47,52 +84,189 @@ public class DBServer {
      * <p>This method handles all incoming DB commands and carries out the required actions.
      */
     public String handleCommand(String command) {
-        // TODO implement your server logic here
+        return handleCommand(null, command);
+    }
+
+    /**
+     * Handle a command sent over a client connection, using that connection's session state.
+     * A null session falls back to the server's default session.
+     */
+    public String handleCommand(Session session, String command) {
+        long start = System.nanoTime();
         String result;
         try {
-            result = queryExecuter.execute(command);
+            result = session == null ? queryExecuter.execute(command) : queryExecuter.execute(session, command);
         } catch (Exception e) {
             result = "[ERROR] " + e.getMessage();
         }
-        System.out.println("========================");
-        System.out.println(command);
-        System.out.println(result);
-        System.out.println("========================");
-        System.out.println();
+        queryLog.command(command, result, statusOf(result), System.nanoTime() - start);
         return result;
     }
 
-    //  === Methods below handle networking aspects of the project - you will not need to change these ! ===
+    private static String statusOf(String result) {
+        int end = result.indexOf('\n');
+        if (end == -1) {
+            return result;
+        }
+        return result.substring(0, end > 0 && result.charAt(end - 1) == '\r' ? end - 1 : end);
+    }
+
+    /**
+     * Handle a command sent over a client connection and pass its result to the sink. SELECT rows are
+     * passed to the sink one by one rather than first being formatted as one text result.
+     */
+    public void handleCommand(Session session, String command, ResultSink sink) throws IOException {
+        long start = System.nanoTime();
+        // A SELECT that fails is reported by stream itself, so a command is never run twice.
+        String status = queryExecuter.stream(session, command, sink);
+        if (status != null) {
+            queryLog.command(command, null, status, System.nanoTime() - start);
+        } else {
+            String result = handleCommand(session, command);
+            long serializeStart = System.nanoTime();
+            sink.result(result);
+            metrics().record(ServerMetrics.commandType(command), ServerMetrics.Phase.SERIALIZE,
+                    System.nanoTime() - serializeStart);
+        }
+    }
+
+    private ServerMetrics metrics() {
+        return queryExecuter.getDatabase().getMetrics();
+    }
+
+    // Publish the statistics of SHOW STATS as the JMX bean edu.uob:type=Stats,port=<port>.
+    private void registerStatsBean(int portNumber) {
+        try {
+            MBeanServer beanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("edu.uob:type=Stats,port=" + portNumber);
+            if (beanServer.isRegistered(name)) {
+                beanServer.unregisterMBean(name);
+            }
+            beanServer.registerMBean(new StatsMBean(metrics()), name);
+        } catch (JMException e) {
+            queryLog.event(QueryLog.Level.WARN, "Statistics are not available over JMX: " + e);
+        }
+    }
+
+    //  === Methods below handle networking aspects of the project ===
 
     public void blockingListenOn(int portNumber) throws IOException {
+        ExecutorService connectionExecutor = createConnectionExecutor();
         try (ServerSocket s = new ServerSocket(portNumber)) {
-            System.out.println("Server listening on port " + portNumber);
+            serverSocket = s;
+            queryLog.event(QueryLog.Level.INFO, "Server listening on port " + portNumber);
+            registerStatsBean(portNumber);
             while (!Thread.interrupted()) {
                 try {
-                    blockingHandleConnection(s);
+                    Socket socket = s.accept();
+                    // Each client is served on its own thread so one connection cannot block the others.
+                    connectionExecutor.execute(() -> handleConnectionQuietly(socket));
                 } catch (IOException e) {
-                    System.err.println("Server encountered a non-fatal IO error:");
-                    e.printStackTrace();
-                    System.err.println("Continuing...");
+                    if (s.isClosed()) {
+                        break;
+                    }
+                    queryLog.event(QueryLog.Level.ERROR, "Non-fatal IO error while accepting a connection: " + e);
                 }
             }
+        } finally {
+            serverSocket = null;
+            connectionExecutor.shutdownNow();
+            queryExecuter.getDatabase().close();
+            queryLog.close();
+        }
+    }
+
+    /**
+     * Stop accepting connections, so {@link #blockingListenOn(int)} closes the databases and returns.
+     * Connections that are still being served are not waited for.
+     */
+    public void stop() throws IOException {
+        ServerSocket s = serverSocket;
+        if (s != null) {
+            s.close();
         }
     }
 
-    private void blockingHandleConnection(ServerSocket serverSocket) throws IOException {
-        try (Socket s = serverSocket.accept();
-             BufferedReader reader = new BufferedReader(new InputStreamReader(s.getInputStream()));
-             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(s.getOutputStream()))) {
+    /**
+     * Use a virtual thread per connection when running on Java 21 or later,
+     * otherwise fall back to a bounded pool of platform threads.
+     */
+    private static ExecutorService createConnectionExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(MAX_CONNECTION_THREADS);
+        }
+    }
 
-            System.out.println("Connection established: " + serverSocket.getInetAddress());
-            while (!Thread.interrupted()) {
-                String incomingCommand = reader.readLine();
-                System.out.println("Received message: " + incomingCommand);
-                String result = handleCommand(incomingCommand);
-                writer.write(result);
-                writer.write("\n" + END_OF_TRANSMISSION + "\n");
-                writer.flush();
+    private void handleConnectionQuietly(Socket socket) {
+        metrics().connectionOpened();
+        try {
+            blockingHandleConnection(socket);
+        } catch (IOException e) {
+            queryLog.event(QueryLog.Level.ERROR, "Connection closed after a non-fatal IO error: " + e);
+        } finally {
+            metrics().connectionClosed();
+        }
+    }
+
+    private void blockingHandleConnection(Socket socket) throws IOException {
+        try (Socket s = socket;
+             BufferedInputStream input = new BufferedInputStream(s.getInputStream());
+             BufferedOutputStream output = new BufferedOutputStream(s.getOutputStream())) {
+
+            queryLog.event(QueryLog.Level.DEBUG, "Connection established: " + s.getInetAddress());
+            // Each connection gets its own session, so USE only affects this client.
+            Session session = new Session();
+            String firstLine = readFirstLine(input);
+            if (firstLine == null) {
+                return;
             }
+            if (firstLine.trim().equals(BinaryProtocol.HANDSHAKE)) {
+                output.write((BinaryProtocol.HANDSHAKE + "\n").getBytes(StandardCharsets.UTF_8));
+                output.flush();
+                serveBinaryProtocol(session, new DataInputStream(input), new DataOutputStream(output));
+            } else {
+                serveTextProtocol(session, firstLine, new BufferedReader(new InputStreamReader(input)),
+                        new BufferedWriter(new OutputStreamWriter(output), TEXT_BUFFER_SIZE));
+            }
+        }
+    }
+
+    // Read the first line byte by byte, so nothing after it is consumed before the protocol is known.
+    private static String readFirstLine(InputStream input) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = input.read()) != -1 && b != '\n') {
+            line.write(b);
+        }
+        if (b == -1 && line.size() == 0) {
+            return null;
+        }
+        String text = line.toString();
+        return text.endsWith("\r") ? text.substring(0, text.length() - 1) : text;
+    }
+
+    // Default protocol: one command per line, answered by the result text and a line holding EOT.
+    private void serveTextProtocol(Session session, String firstCommand, BufferedReader reader, BufferedWriter writer)
+            throws IOException {
+        TextResultWriter resultWriter = new TextResultWriter(writer);
+        String incomingCommand = firstCommand;
+        while (incomingCommand != null && !Thread.interrupted()) {
+            handleCommand(session, incomingCommand, resultWriter);
+            writer.write("\n" + END_OF_TRANSMISSION + "\n");
+            writer.flush();
+            // A null line means the client closed the connection.
+            incomingCommand = reader.readLine();
+        }
+    }
+
+    private void serveBinaryProtocol(Session session, DataInputStream in, DataOutputStream out) throws IOException {
+        BinaryResultWriter resultWriter = new BinaryResultWriter(out);
+        String incomingCommand;
+        while (!Thread.interrupted() && (incomingCommand = BinaryProtocol.readQuery(in)) != null) {
+            handleCommand(session, incomingCommand, resultWriter);
         }
     }
 }
@@ -1,13 +1,17 @@
 package edu.uob.commands;
 
+import edu.uob.model.ColumnType;
 import edu.uob.model.Database;
+import edu.uob.model.Session;
 import java.io.IOException;
 
 public class AlterTableCommand {
     private final Database database;
+    private final Session session;
 
-    public AlterTableCommand(Database database) {
+    public AlterTableCommand(Database database, Session session) {
         this.database = database;
+        this.session = session;
     }
 
     public String execute(String[] tokens) {
@@ -24,18 +28,23 @@ public class AlterTableCommand {
                 columnName = tokens[4].replaceAll(";", "").toLowerCase().trim();
             }
             try {
-                return database.alterTableDropColumn(tableName, columnName);
+                return database.alterTableDropColumn(session, tableName, columnName);
             } catch (IOException e) {
                 return "[ERROR] " + e.getMessage();
             }
         } else if (operation.equals("ADD")) {
-            String columnName;
-            if (tokens.length >= 6 && tokens[4].equalsIgnoreCase("COLUMN")) {
-                columnName = tokens[5].replaceAll(";", "").toLowerCase().trim();
-            } else {
-                columnName = tokens[4].replaceAll(";", "").toLowerCase().trim();
+            int nameIndex = tokens.length >= 6 && tokens[4].equalsIgnoreCase("COLUMN") ? 5 : 4;
+            String columnName = tokens[nameIndex].replaceAll(";", "").toLowerCase().trim();
+            // The column may be followed by its type, e.g. ALTER TABLE marks ADD grade INT.
+            ColumnType type = ColumnType.TEXT;
+            if (nameIndex + 1 < tokens.length && !tokens[nameIndex + 1].replaceAll(";", "").isBlank()) {
+                String typeName = tokens[nameIndex + 1].replaceAll(";", "").trim();
+                type = ColumnType.parse(typeName);
+                if (type == null) {
+                    return "[ERROR] Unsupported column type: " + typeName.toUpperCase();
+                }
             }
-            return database.alterTableAddColumn(tableName, columnName);
+            return database.alterTableAddColumn(session, tableName, columnName, type);
         }
         return "[ERROR] Unsupported ALTER TABLE command";
     }
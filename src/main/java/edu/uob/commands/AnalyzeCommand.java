@@ -0,0 +1,24 @@
+package edu.uob.commands;
+
+import edu.uob.model.Database;
+import edu.uob.model.Session;
+
+
+public class AnalyzeCommand {
+    private final Database database;
+    private final Session session;
+
+    public AnalyzeCommand(Database database, Session session) {
+        this.database = database;
+        this.session = session;
+    }
+
+    // ANALYZE <table>; collects the statistics the planner uses to estimate how many rows a query matches
+    public String execute(String[] tokens) {
+        String tableName = tokens.length < 2 ? "" : tokens[1].replace(";", "").trim().toLowerCase();
+        if (tableName.isEmpty() || (tokens.length > 2 && !(tokens.length == 3 && tokens[2].equals(";")))) {
+            return "[ERROR] Invalid ANALYZE syntax. Use: ANALYZE <table>;";
+        }
+        return database.analyzeTable(session, tableName);
+    }
+}
@@ -1,12 +1,13 @@
 package edu.uob.commands;
 
 import edu.uob.model.Database;
+import edu.uob.model.Session;
 
 public class CreateDatabaseCommand {
     private final Database database;
 
-    public CreateDatabaseCommand(String storageFolderPath) {
-        this.database = new Database(storageFolderPath);
+    public CreateDatabaseCommand(Database database) {
+        this.database = database;
     }
 
     public String execute(String[] tokens) {
@@ -15,7 +16,8 @@ public class CreateDatabaseCommand {
         }
 
         String dbName = tokens[2].replaceAll(";", "").trim();
-        return database.createDatabase(dbName);
+        // Creating a database does not switch the caller's session to it, USE is still required.
+        return database.createDatabase(new Session(), dbName);
     }
 }
 
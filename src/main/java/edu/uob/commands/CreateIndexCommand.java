@@ -0,0 +1,43 @@
+package edu.uob.commands;
+
+import edu.uob.model.Database;
+import edu.uob.model.Session;
+
+
+public class CreateIndexCommand {
+    private final Database database;
+    private final Session session;
+
+    public CreateIndexCommand(Database database, Session session) {
+        this.database = database;
+        this.session = session;
+    }
+
+    // CREATE INDEX <name> ON <table> (<column>);
+    public String execute(String[] tokens) {
+        if (session.getCurrentDatabasePath() == null) {
+            return "[ERROR] No database selected: CreateIndexCommand.execute";
+        }
+        if (tokens.length < 6 || !tokens[3].equalsIgnoreCase("ON")) {
+            return "[ERROR] Invalid CREATE INDEX syntax";
+        }
+        String indexName = tokens[2].toLowerCase();
+        StringBuilder tableAndColumn = new StringBuilder();
+        for (int i = 4; i < tokens.length; i++) {
+            tableAndColumn.append(tokens[i]).append(" ");
+        }
+        String rest = tableAndColumn.toString().replace(";", "").trim();
+        int open = rest.indexOf('(');
+        int close = rest.lastIndexOf(')');
+        if (open == -1 || close < open) {
+            return "[ERROR] Invalid CREATE INDEX syntax";
+        }
+        String tableName = rest.substring(0, open).trim().toLowerCase();
+        String columnName = rest.substring(open + 1, close).trim().toLowerCase();
+        if (!indexName.matches("^[a-zA-Z0-9]+$") || !tableName.matches("^[a-zA-Z0-9]+$")
+                || !columnName.matches("^[a-zA-Z0-9]+$")) {
+            return "[ERROR] Invalid CREATE INDEX syntax";
+        }
+        return database.createIndex(session, tableName, indexName, columnName);
+    }
+}
@@ -1,20 +1,30 @@
 package edu.uob.commands;
 
+import edu.uob.model.ColumnType;
 import edu.uob.model.Database;
+import edu.uob.model.Session;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 
 public class CreateTableCommand {
     private final Database database;
+    private final Session session;
+    // Optional storage format after the column list: STORAGE=ROW (the default) or STORAGE=COLUMNAR.
+    private static final Pattern STORAGE_OPTION = Pattern.compile("\\s*STORAGE\\s*=\\s*(\\w+)\\s*;?\\s*$", Pattern.CASE_INSENSITIVE);
 
-    public CreateTableCommand(Database database) {
+    public CreateTableCommand(Database database, Session session) {
         this.database = database;
+        this.session = session;
     }
 
     public String execute(String[] tokens) {
-        if (database.getCurrentDatabasePath() == null) {
+        if (session.getCurrentDatabasePath() == null) {
             return "[ERROR] No database selected: CreateTableCommand.execute";
         }
         if (tokens.length < 3) {
@@ -25,11 +35,34 @@ public class CreateTableCommand {
         for (int i = 3; i < tokens.length; i++) {
             columnsBuilder.append(tokens[i]).append(" ");
         }
-        String columnsStr = columnsBuilder.toString().trim().replaceAll("[()]", "");
+        String definition = columnsBuilder.toString().trim();
+        boolean columnar = false;
+        Matcher storage = STORAGE_OPTION.matcher(definition);
+        if (storage.find()) {
+            String format = storage.group(1).toUpperCase();
+            if (format.equals("COLUMNAR")) {
+                columnar = true;
+            } else if (!format.equals("ROW")) {
+                return "[ERROR] Unsupported storage format: " + storage.group(1);
+            }
+            definition = definition.substring(0, storage.start());
+        }
+        String columnsStr = definition.replaceAll("[()]", "");
         String[] rawColumns = columnsStr.split(",");
         List<String> columns = new ArrayList<>();
+        Map<String, ColumnType> columnTypes = new HashMap<>();
         for (String col : rawColumns) {
             String trimmed = col.trim().replaceAll(";", "").toLowerCase();
+            // A column may be followed by its type, e.g. mark INT.
+            String[] nameAndType = trimmed.split("\\s+");
+            if (nameAndType.length == 2) {
+                ColumnType type = ColumnType.parse(nameAndType[1]);
+                if (type == null) {
+                    return "[ERROR] Unsupported column type: " + nameAndType[1].toUpperCase();
+                }
+                trimmed = nameAndType[0];
+                columnTypes.put(trimmed, type);
+            }
             if (!trimmed.matches("^[a-zA-Z0-9]+$") && !trimmed.isEmpty()) {
                 return "[ERROR] Invalid column name: " + trimmed;
             }
@@ -40,7 +73,7 @@ public class CreateTableCommand {
             }
             columns.add(trimmed);
         }
-        return database.createTable(tableName, columns);
+        return database.createTable(session, tableName, columns, columnTypes, columnar);
     }
 }
 
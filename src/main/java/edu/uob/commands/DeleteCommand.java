@@ -1,159 +1,160 @@
 package edu.uob.commands;
 
+import edu.uob.metrics.ServerMetrics;
+import edu.uob.model.ColumnType;
 import edu.uob.model.Database;
+import edu.uob.model.PlanNode;
+import edu.uob.model.Session;
+import edu.uob.model.Record;
+import edu.uob.model.Table;
+import edu.uob.parser.Condition;
+import edu.uob.parser.DeleteStatement;
+import edu.uob.parser.Predicate;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.function.ToDoubleFunction;
 
 public class DeleteCommand {
     private final Database database;
+    private final Session session;
+    // LSN of the log records written by this delete, 0 if nothing was logged.
+    private long commitLsn;
 
-    public DeleteCommand(Database database) {
+    public DeleteCommand(Database database, Session session) {
         this.database = database;
+        this.session = session;
     }
 
-    public String execute(String[] tokens) {
-        if (tokens.length < 5) {
-            //System.out.println("[DEBUG] DELETE syntax invalid: tokens length " + tokens.length);
-            return "[ERROR] Invalid DELETE syntax";
-        }
+    public String execute(DeleteStatement statement) {
+        return execute(statement, PlanNode.Mode.NONE);
+    }
 
-        // Two DELETE syntax are supported:
-        // 1. DELETE FROM tableName WHERE conditionColumn operator conditionValue
-        // 2. DELETE tableName WHERE conditionColumn operator conditionValue
-        String tableName;
-        int whereStartIndex;
-        if (tokens[0].equalsIgnoreCase("DELETE") && tokens[1].equalsIgnoreCase("FROM")) {
-            tableName = tokens[2];
-            whereStartIndex = 3;
-        } else {
-            tableName = tokens[1];
-            whereStartIndex = 2;
+    /**
+     * Run a parsed DELETE.
+     * @param mode NONE to delete the rows, PLAN for EXPLAIN, ANALYZE for EXPLAIN ANALYZE, which deletes the
+     *             rows as well
+     * @return Result message, or the plan for EXPLAIN
+     */
+    public String execute(DeleteStatement statement, PlanNode.Mode mode) {
+        Lock lock = database.getTableLock(session, statement.getTableName()).writeLock();
+        String result;
+        lock.lock();
+        try {
+            result = delete(statement, mode);
+        } finally {
+            lock.unlock();
         }
+        return commit(result);
+    }
 
-        // Check whether the WHERE keyword exists.
-        if (tokens.length <= whereStartIndex || !tokens[whereStartIndex].equalsIgnoreCase("WHERE")) {
-            //System.out.println("[DEBUG] DELETE command missing WHERE clause");
-            return "[ERROR] DELETE command must contain a WHERE clause";
+    // Wait for the logged rows to reach disk outside the lock, so concurrent writers can share one fsync.
+    private String commit(String result) {
+        if (commitLsn == 0) {
+            return result;
         }
-
-        // Get the database directory
-        File databasePath = database.getCurrentDatabasePath();
-        File tableFile = new File(databasePath, tableName + ".tab");
-        if (!tableFile.exists()) {
-            //System.out.println("[DEBUG] Table file for '" + tableName + "' does not exist at " + tableFile.getAbsolutePath());
-            return "[ERROR] Table does not exist";
+        try {
+            database.awaitDurable(session, commitLsn);
+            return result;
+        } catch (IOException e) {
+            return "[ERROR] Failed to write table";
         }
+    }
 
-        // Read table file content
-        List<String> lines;
+    private String delete(DeleteStatement statement, PlanNode.Mode mode) {
+        long start = System.nanoTime();
+        // Get the table, served from the table cache when possible
+        Table table;
         try {
-            lines = Files.readAllLines(tableFile.toPath());
+            table = database.getTable(session, statement.getTableName());
         } catch (IOException e) {
             //System.out.println("[DEBUG] IOException reading table file: " + e.getMessage());
             return "[ERROR] Failed to read table";
         }
-        if (lines.isEmpty()) {
+        if (table == null) {
+            return "[ERROR] Table does not exist";
+        }
+        if (table.getColumns().isEmpty()) {
             //System.out.println("[DEBUG] Table file is empty");
             return "[ERROR] Table is empty";
         }
 
         // Analytic header
-        String headerLine = lines.get(0);
-        String[] headerColumns = headerLine.split("\t");
-        List<String> headerList = new ArrayList<>();
-        for (String header : headerColumns) {
-            headerList.add(header.trim());
-        }
+        List<String> headerList = table.getColumns();
 
-        // Analytic WHERE condition
-        if (tokens.length < whereStartIndex + 4) {
-            //System.out.println("[DEBUG] Invalid WHERE syntax in DELETE: tokens length " + tokens.length + ", expected at least " + (whereStartIndex + 4));
-            return "[ERROR] Invalid WHERE syntax";
+        // Compile the WHERE clause once
+        Condition where = statement.getWhere();
+        for (Condition.Comparison comparison : where.getComparisons()) {
+            if (!headerList.contains(comparison.getColumn())) {
+                return "[ERROR] Column '" + comparison.getColumn() + "' does not exist";
+            }
         }
-        String conditionColumn = tokens[whereStartIndex + 1];
-        String whereOperator = tokens[whereStartIndex + 2];
-        String conditionValue = tokens[whereStartIndex + 3];
-        //System.out.println("[DEBUG] Parsed DELETE WHERE condition: column='" + conditionColumn +
-                //"', operator='" + whereOperator + "', raw value='" + conditionValue + "'");
-
-        if ((conditionValue.startsWith("'") && conditionValue.endsWith("'")) ||
-                (conditionValue.startsWith("\"") && conditionValue.endsWith("\""))) {
-            conditionValue = conditionValue.substring(1, conditionValue.length() - 1);
-            //System.out.println("[DEBUG] Cleaned DELETE WHERE condition value: '" + conditionValue + "'");
+        List<ColumnType> types;
+        try {
+            types = database.getColumnTypes(session, statement.getTableName(), headerList);
+        } catch (IOException e) {
+            return "[ERROR] Failed to read table";
         }
-
-        // Clear all characters except numbers and letters in conditionValue.
-        conditionValue = conditionValue.replaceAll("[^a-zA-Z0-9]", "");
-        //System.out.println("[DEBUG] Cleaned DELETE WHERE condition value: '" + conditionValue + "'");
-
-        if (!headerList.contains(conditionColumn)) {
-            //System.out.println("[DEBUG] DELETE WHERE column '" + conditionColumn + "' not found in header: " + headerList);
-            return "[ERROR] Column '" + conditionColumn + "' does not exist";
+        ToDoubleFunction<Condition.Comparison> selectivity = comparison -> QueryPlanner.selectivity(table, comparison);
+        Predicate predicate = where.compile(headerList, types, selectivity);
+        if (predicate == null) {
+            return "[ERROR] Unsupported operator in WHERE clause";
         }
 
-        // Traverse the data rows and delete the rows that meet the WHERE condition.
-        List<String> newLines = new ArrayList<>();
-        newLines.add(headerLine); 
-        for (int i = 1; i < lines.size(); i++) {
-            String rowLine = lines.get(i);
-            String[] rowValues = rowLine.split("\t", -1);
-            boolean rowMatches = true;
-            int condIndex = headerList.indexOf(conditionColumn);
-            if (condIndex < rowValues.length) {
-                String actualValue = rowValues[condIndex].trim();
-                //System.out.println("[DEBUG] Row " + i + " actual value for DELETE, column '" + conditionColumn + "': '" + actualValue + "'");
-                switch (whereOperator) {
-                    case "==":
-                        if (!actualValue.equalsIgnoreCase(conditionValue))
-                            rowMatches = false;
-                        break;
-                    case "!=":
-                        if (actualValue.equalsIgnoreCase(conditionValue))
-                            rowMatches = false;
-                        break;
-                    case ">":
-                        try {
-                            if (Double.parseDouble(actualValue) <= Double.parseDouble(conditionValue))
-                                rowMatches = false;
-                        } catch (NumberFormatException e) {
-                            rowMatches = false;
-                        }
-                        break;
-                    case "<":
-                        try {
-                            if (Double.parseDouble(actualValue) >= Double.parseDouble(conditionValue))
-                                rowMatches = false;
-                        } catch (NumberFormatException e) {
-                            rowMatches = false;
-                        }
-                        break;
-                    default:
-                        //System.out.println("[DEBUG] DELETE unsupported operator: " + whereOperator);
-                        return "[ERROR] Unsupported operator in WHERE clause";
-                }
-            } else {
-                rowMatches = false;
+        // Traverse the data rows (or only the indexed rows) and delete the rows that meet the WHERE condition.
+        long planStart = System.nanoTime();
+        QueryPlanner.AccessPath accessPath = QueryPlanner.plan(table, where);
+        long planNanos = System.nanoTime() - planStart;
+        database.getMetrics().record("DELETE", ServerMetrics.Phase.PLAN, planNanos);
+        List<Record> candidates = accessPath.records;
+
+        Iterator<Record> records = candidates.iterator();
+        PlanNode plan = null;
+        PlanNode filter = null;
+        PlanNode scan = null;
+        if (mode != PlanNode.Mode.NONE) {
+            // Delete <- Filter <- scan or index lookup
+            scan = new PlanNode(accessPath.description).estimateRows(candidates.size());
+            scan.addTime(planNanos);
+            filter = QueryPlanner.filter(where, scan, selectivity);
+            predicate = QueryPlanner.timed(predicate, filter);
+            plan = new PlanNode("Delete from " + table.getName()).estimateRows(filter.getEstimatedRows());
+            plan.addChild(filter);
+            if (mode == PlanNode.Mode.PLAN) {
+                return plan.toResult(mode, 0);
             }
-
-            if (!rowMatches) {
-                newLines.add(rowLine);
-            }else {
-                //System.out.println("[DEBUG] Row " + i + " matched DELETE condition and will be removed");
+            records = scan.measure(records);
+        }
+        List<Record> deletedRecords = new ArrayList<>();
+        while (records.hasNext()) {
+            Record record = records.next();
+            if (predicate.test(record.getValues())) {
+                deletedRecords.add(record);
             }
         }
-
-        try {
-            Files.write(tableFile.toPath(), newLines);
-            //System.out.println("[DEBUG] Successfully wrote updated data to table file: " + tableFile.getAbsolutePath());
-            return "[OK] Delete successful";
-        } catch (IOException e) {
-            //System.out.println("[DEBUG] IOException writing table file: " + e.getMessage());
-            return "[ERROR] Failed to write table";
+        database.recordScan(session, statement.getTableName(), candidates.size(), deletedRecords.size(), 0);
+        if (!deletedRecords.isEmpty()) {
+            try {
+                table.removeRecords(deletedRecords);
+                // Only the ids of the removed rows are logged; the table file is rewritten by the next checkpoint.
+                commitLsn = database.logDeletes(session, table, deletedRecords);
+            } catch (IOException e) {
+                //System.out.println("[DEBUG] IOException writing table file: " + e.getMessage());
+                return "[ERROR] Failed to write table";
+            }
+        }
+        if (plan != null) {
+            long executionNanos = System.nanoTime() - start;
+            filter.addRows(deletedRecords.size());
+            filter.addTime(scan.getTime());
+            plan.addRows(deletedRecords.size());
+            plan.addTime(executionNanos);
+            return plan.toResult(mode, executionNanos);
         }
+        return "[OK] Delete successful";
     }
 }
 
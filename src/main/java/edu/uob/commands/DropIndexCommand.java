@@ -0,0 +1,25 @@
+package edu.uob.commands;
+
+import edu.uob.model.Database;
+import edu.uob.model.Session;
+
+
+public class DropIndexCommand {
+    private final Database database;
+    private final Session session;
+
+    public DropIndexCommand(Database database, Session session) {
+        this.database = database;
+        this.session = session;
+    }
+
+    // DROP INDEX <name> ON <table>;
+    public String execute(String[] tokens) {
+        if (tokens.length < 5 || !tokens[3].equalsIgnoreCase("ON")) {
+            return "[ERROR] Invalid DROP INDEX syntax";
+        }
+        String indexName = tokens[2].toLowerCase();
+        String tableName = tokens[4].replace(";", "").trim().toLowerCase();
+        return database.dropIndex(session, tableName, indexName);
+    }
+}
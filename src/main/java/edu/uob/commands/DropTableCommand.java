@@ -1,13 +1,16 @@
 package edu.uob.commands;
 
 import edu.uob.model.Database;
+import edu.uob.model.Session;
 
 
 public class DropTableCommand {
     private final Database database;
+    private final Session session;
 
-    public DropTableCommand(Database database) {
+    public DropTableCommand(Database database, Session session) {
         this.database = database;
+        this.session = session;
     }
 
     public String execute(String[] tokens) {
@@ -15,7 +18,7 @@ public class DropTableCommand {
             return "[ERROR] Invalid DROP TABLE syntax";
         String tableName = tokens[2].toLowerCase();
         //System.out.println("[DEBUG] DROP TABLE command for table: " + tableName);
-        return database.dropTable(tableName);
+        return database.dropTable(session, tableName);
     }
 }
 
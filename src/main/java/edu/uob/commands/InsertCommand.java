@@ -1,30 +1,81 @@
 package edu.uob.commands;
 
 import edu.uob.model.Database;
+import edu.uob.model.Session;
 import java.util.List;
 import java.util.ArrayList;
 
 
 public class InsertCommand {
     private final Database database;
+    private final Session session;
 
-    public InsertCommand(Database database) {
+    public InsertCommand(Database database, Session session) {
         this.database = database;
+        this.session = session;
     }
 
     public String execute(String[] tokens) {
         String fullCommand = String.join(" ", tokens).replace(";", "").trim();
-        if (fullCommand.toUpperCase().indexOf("VALUES") == -1) {
+        int valuesIndex = fullCommand.toUpperCase().indexOf("VALUES");
+        if (valuesIndex == -1 || tokens.length < 3) {
             return "[ERROR] Invalid INSERT syntax";
         }
         String tableName = tokens[2].replaceAll("[^a-zA-Z0-9_]", "").toLowerCase().trim();
-        List<String> values = extractValues(fullCommand);
-        if (values.isEmpty()) {
+        List<List<String>> rows = extractRows(fullCommand.substring(valuesIndex + 6));
+        if (rows.isEmpty()) {
             return "[ERROR] Invalid INSERT syntax";
         }
-        return database.insertIntoTable(tableName, values);
+        for (List<String> values : rows) {
+            if (values.isEmpty()) {
+                return "[ERROR] Invalid INSERT syntax";
+            }
+        }
+        // A multi-row INSERT is written as one batch with a single fsync.
+        return database.insertIntoTable(session, tableName, rows, rows.size() > 1);
+    }
+
+
+    /**
+     * Extract every parenthesised tuple following VALUES, for example
+     * ('Simon', 65, TRUE), ('Sion', 55, TRUE) will take out two rows.
+     * A single tuple spans from its first "(" to the last ")" so that, as before,
+     * a value may contain brackets as long as it is quoted.
+     */
+    private List<List<String>> extractRows(String valuesPart) {
+        List<List<String>> rows = new ArrayList<>();
+        List<String> tuples = splitTuples(valuesPart);
+        if (tuples.size() <= 1) {
+            List<String> values = extractValues(valuesPart);
+            if (!values.isEmpty()) {
+                rows.add(values);
+            }
+            return rows;
+        }
+        for (String tuple : tuples) {
+            rows.add(extractValues(tuple));
+        }
+        return rows;
     }
 
+    // Split "(a, b), (c, d)" into "(a, b)" and "(c, d)", ignoring brackets inside single quotes.
+    private List<String> splitTuples(String valuesPart) {
+        List<String> tuples = new ArrayList<>();
+        boolean inQuote = false;
+        int depth = 0;
+        int tupleStart = -1;
+        for (int i = 0; i < valuesPart.length(); i++) {
+            char c = valuesPart.charAt(i);
+            if (c == '\'') {
+                inQuote = !inQuote;
+            } else if (!inQuote && c == '(') {
+                if (depth++ == 0) tupleStart = i;
+            } else if (!inQuote && c == ')' && depth > 0) {
+                if (--depth == 0) tuples.add(valuesPart.substring(tupleStart, i + 1));
+            }
+        }
+        return tuples;
+    }
 
     /**
      * Extract the values in parentheses from the complete INSERT command string
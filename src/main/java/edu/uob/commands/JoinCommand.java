@@ -1,17 +1,26 @@
 package edu.uob.commands;
 
 import edu.uob.model.Database;
+import edu.uob.model.PlanNode;
+import edu.uob.model.Session;
 
 import java.io.IOException;
 
 public class JoinCommand {
     private final Database database;
+    private final Session session;
 
-    public JoinCommand(Database database) {
+    public JoinCommand(Database database, Session session) {
         this.database = database;
+        this.session = session;
     }
 
     public String execute(String[] tokens) throws IOException {
+        return execute(tokens, PlanNode.Mode.NONE);
+    }
+
+    // JOIN table1 AND table2 ON column1 AND column2; mode PLAN or ANALYZE explains it instead
+    public String execute(String[] tokens, PlanNode.Mode mode) throws IOException {
         if (tokens.length < 6 || !tokens[2].equalsIgnoreCase("AND") || !tokens[4].equalsIgnoreCase("ON")) {
             return "[ERROR] Invalid JOIN syntax. Use: JOIN table1 AND table2 ON column1 AND column2;";
         }
@@ -19,7 +28,7 @@ public class JoinCommand {
         String table2 = tokens[3].toLowerCase();
         String column1 = tokens[5].toLowerCase();
         String column2 = tokens[7].replace(";", "").toLowerCase();
-        return database.joinTables(table1, table2, column1, column2);
+        return database.joinTables(session, table1, table2, column1, column2, mode);
     }
 }
 
@@ -0,0 +1,55 @@
+package edu.uob.commands;
+
+import edu.uob.model.Database;
+import edu.uob.model.Session;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class LoadCommand {
+    private static final Pattern LOAD_PATTERN =
+            Pattern.compile("(?i)^LOAD\\s+DATA\\s+'([^']+)'\\s+INTO\\s+([a-zA-Z0-9_]+)\\s*;?$");
+
+    private final Database database;
+    private final Session session;
+    private final String storageFolderPath;
+
+    public LoadCommand(Database database, Session session, String storageFolderPath) {
+        this.database = database;
+        this.session = session;
+        this.storageFolderPath = storageFolderPath;
+    }
+
+    /**
+     * Bulk load a tab-separated file into a table:
+     * LOAD DATA 'file.tsv' INTO tableName;
+     * Relative paths are resolved against the database storage folder, and the file has to be inside it.
+     */
+    public String execute(String command) {
+        Matcher matcher = LOAD_PATTERN.matcher(command.trim());
+        if (!matcher.matches()) {
+            return "[ERROR] Invalid LOAD syntax. Use: LOAD DATA 'file.tsv' INTO table;";
+        }
+        if (session.getCurrentDatabasePath() == null) {
+            return "[ERROR] No database selected: LoadCommand.execute";
+        }
+        File dataFile = new File(matcher.group(1));
+        if (!dataFile.isAbsolute()) {
+            dataFile = new File(storageFolderPath, matcher.group(1));
+        }
+        try {
+            // Clients may only load files from the storage folder, not any file the server can read.
+            File storageFolder = new File(storageFolderPath).getCanonicalFile();
+            dataFile = dataFile.getCanonicalFile();
+            if (!dataFile.toPath().startsWith(storageFolder.toPath())) {
+                return "[ERROR] Data file must be inside the database storage folder";
+            }
+        } catch (IOException e) {
+            return "[ERROR] Invalid data file path";
+        }
+        String tableName = matcher.group(2).toLowerCase();
+        return database.loadIntoTable(session, tableName, dataFile);
+    }
+}
@@ -0,0 +1,311 @@
+package edu.uob.commands;
+
+import edu.uob.model.ColumnStatistics;
+import edu.uob.model.ColumnarFile;
+import edu.uob.model.PlanNode;
+import edu.uob.model.Record;
+import edu.uob.model.ScannableTableFile;
+import edu.uob.model.SecondaryIndex;
+import edu.uob.model.Table;
+import edu.uob.model.TableStatistics;
+import edu.uob.parser.Condition;
+import edu.uob.parser.Predicate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Decides which records a WHERE clause needs to look at.
+ */
+class QueryPlanner {
+
+    // Cost of finding one row through an index and testing it, in row tests of a full scan, before sorting.
+    private static final double INDEX_ROW_COST = 2;
+
+    private QueryPlanner() {
+    }
+
+    /**
+     * The records a query has to check and a short description of how they were found, as shown by EXPLAIN.
+     */
+    static class AccessPath {
+        final List<Record> records;
+        final String description;
+
+        AccessPath(List<Record> records, String description) {
+            this.records = records;
+            this.description = description;
+        }
+    }
+
+    static List<Record> candidateRecords(Table table, Condition where) {
+        return plan(table, where).records;
+    }
+
+    /**
+     * Use an index when the WHERE clause requires a comparison on an indexed column, either as the whole
+     * clause or as one of the operands of a top-level AND, so only the matching records have to be checked.
+     * A lookup on the primary key always wins. For a table analyzed with ANALYZE, an equality lookup or a
+     * range scan (&lt; or &gt;) on a secondary index is only used when its estimated cost is below that of
+     * a full scan; otherwise an equality lookup is preferred, then a range scan. Without an index every
+     * record of the table is a candidate.
+     * @param table Table being queried
+     * @param where WHERE clause, or null if there is none
+     * @return Records the WHERE clause still has to be evaluated against
+     */
+    static AccessPath plan(Table table, Condition where) {
+        String fullScan = "Full scan on " + table.getName();
+        List<String[]> conditions = new ArrayList<>();
+        if (where instanceof Condition.Comparison comparison) {
+            conditions.add(toArray(comparison));
+        } else if (where instanceof Condition.Logical logical && logical.isAnd()) {
+            for (Condition operand : logical.getOperands()) {
+                if (operand instanceof Condition.Comparison comparison) {
+                    conditions.add(toArray(comparison));
+                }
+            }
+        }
+        if (conditions.isEmpty()) {
+            return new AccessPath(table.getRecords(), fullScan);
+        }
+        for (String[] cond : conditions) {
+            if (cond[0].equals("id") && cond[1].equals("==")) {
+                List<Record> candidates = new ArrayList<>(1);
+                Record record = table.getRecordById(cond[2]);
+                if (record != null) {
+                    candidates.add(record);
+                }
+                return new AccessPath(candidates, "Primary key lookup on " + table.getName() + " (id == " + cond[2] + ")");
+            }
+        }
+        AccessPath indexPath = table.getStatistics() != null
+                ? cheapestIndexPath(table, conditions) : firstIndexPath(table, conditions);
+        return indexPath != null ? indexPath : new AccessPath(table.getRecords(), fullScan);
+    }
+
+    // Without statistics: the first equality lookup on an index, else the first range scan.
+    private static AccessPath firstIndexPath(Table table, List<String[]> conditions) {
+        for (String[] cond : conditions) {
+            SecondaryIndex index = table.getIndexOnColumn(cond[0]);
+            if (index != null && cond[1].equals("==")) {
+                return indexLookup(table, index, cond);
+            }
+        }
+        for (String[] cond : conditions) {
+            SecondaryIndex index = table.getIndexOnColumn(cond[0]);
+            if (index != null && (cond[1].equals(">") || cond[1].equals("<"))) {
+                return indexRange(table, index, cond);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * With statistics: the index access with the lowest estimated cost, or null if a full scan is cheaper.
+     * A full scan tests every row once. An index access tests only the rows it finds, but sorts them back
+     * into table order first, so a predicate that matches a large part of the table is cheaper to scan.
+     */
+    private static AccessPath cheapestIndexPath(Table table, List<String[]> conditions) {
+        double bestCost = table.getRecords().size();
+        String[] bestCondition = null;
+        SecondaryIndex bestIndex = null;
+        for (String[] cond : conditions) {
+            SecondaryIndex index = table.getIndexOnColumn(cond[0]);
+            double rows;
+            if (index != null && cond[1].equals("==")) {
+                rows = index.lookup(cond[2]).size();
+            } else if (index != null && (cond[1].equals(">") || cond[1].equals("<"))) {
+                ColumnStatistics stats = table.getStatistics().getColumn(cond[0]);
+                double fraction = stats != null ? stats.selectivity(cond[1], cond[2]) : defaultSelectivity(cond[1]);
+                rows = fraction * table.getRecords().size();
+            } else {
+                continue;
+            }
+            double cost = indexCost(rows);
+            if (cost < bestCost) {
+                bestCost = cost;
+                bestCondition = cond;
+                bestIndex = index;
+            }
+        }
+        if (bestIndex == null) {
+            return null;
+        }
+        return bestCondition[1].equals("==") ? indexLookup(table, bestIndex, bestCondition)
+                : indexRange(table, bestIndex, bestCondition);
+    }
+
+    // Cost of finding rows through an index, in row tests of a full scan.
+    private static double indexCost(double rows) {
+        return rows < 2 ? rows : rows * (INDEX_ROW_COST + Math.log(rows) / Math.log(2));
+    }
+
+    private static AccessPath indexLookup(Table table, SecondaryIndex index, String[] cond) {
+        return new AccessPath(inTableOrder(table, index.lookup(cond[2])),
+                "Index lookup on " + table.getName() + " using " + index.getName() + " (" + cond[0] + " == " + cond[2] + ")");
+    }
+
+    private static AccessPath indexRange(Table table, SecondaryIndex index, String[] cond) {
+        return new AccessPath(inTableOrder(table, index.range(cond[2], cond[1].equals(">"))),
+                "Index range scan on " + table.getName() + " using " + index.getName() + " (" + cond[0] + " " + cond[1] + " " + cond[2] + ")");
+    }
+
+    /**
+     * The WHERE filter as an operator for EXPLAIN, showing its comparisons in the order they are evaluated.
+     * @param where WHERE clause
+     * @param input Operator the filter reads its rows from
+     * @param selectivity Estimated fraction of rows a comparison matches, as used to compile the clause
+     */
+    static PlanNode filter(Condition where, PlanNode input, ToDoubleFunction<Condition.Comparison> selectivity) {
+        PlanNode filter = new PlanNode("Filter " + where.describe(selectivity));
+        if (input.getEstimatedRows() >= 0) {
+            filter.estimateRows(input.getEstimatedRows() * where.selectivity(selectivity));
+        }
+        filter.addChild(input);
+        return filter;
+    }
+
+    // A predicate that adds the time spent testing rows to an operator, for EXPLAIN ANALYZE.
+    static Predicate timed(Predicate predicate, PlanNode node) {
+        return row -> {
+            long start = System.nanoTime();
+            boolean matches = predicate.test(row);
+            node.addTime(System.nanoTime() - start);
+            return matches;
+        };
+    }
+
+    private static String[] toArray(Condition.Comparison comparison) {
+        return new String[]{comparison.getColumn(), comparison.getOperator(), comparison.getValue()};
+    }
+
+    /**
+     * Estimate the fraction of a table's rows a comparison matches, used to decide which operands of
+     * an AND or OR to evaluate first. Lookups on id and on indexed columns are exact; everything else
+     * uses the table's statistics when it has been analyzed, and fixed guesses otherwise.
+     */
+    static double selectivity(Table table, Condition.Comparison comparison) {
+        return selectivity(table, table == null ? null : table.getStatistics(), comparison);
+    }
+
+    /**
+     * Estimate the fraction of a table's rows a comparison matches.
+     * @param table Table being queried, or null if it is scanned from its file without being loaded
+     * @param statistics Statistics of the table, or null if it has not been analyzed
+     */
+    static double selectivity(Table table, TableStatistics statistics, Condition.Comparison comparison) {
+        String operator = comparison.getOperator();
+        if (operator.equals("==") && table != null) {
+            double rows = Math.max(1, table.getRecords().size());
+            if (comparison.getColumn().equals("id")) {
+                return 1 / rows;
+            }
+            SecondaryIndex index = table.getIndexOnColumn(comparison.getColumn());
+            if (index != null) {
+                return index.lookup(comparison.getValue()).size() / rows;
+            }
+        }
+        ColumnStatistics stats = statistics == null ? null : statistics.getColumn(comparison.getColumn());
+        if (stats != null) {
+            return stats.selectivity(operator, comparison.getValue());
+        }
+        return defaultSelectivity(operator);
+    }
+
+    private static double defaultSelectivity(String operator) {
+        switch (operator) {
+            case "==":
+                return 0.1;
+            case "!=":
+                return 0.9;
+            case "LIKE":
+                return 0.25;
+            default:
+                return 1.0 / 3;
+        }
+    }
+
+    static String describeFileScan(String tableName, ScannableTableFile file, boolean[] neededColumns) {
+        int needed = 0;
+        for (boolean column : neededColumns) {
+            if (column) needed++;
+        }
+        String kind = file instanceof ColumnarFile ? "Columnar scan" : "Mapped file scan";
+        return kind + " on " + tableName.toLowerCase() + " reading " + needed + " of " + neededColumns.length + " columns";
+    }
+
+    /**
+     * Decide from the statistics of a column store segment whether it can hold rows matching the WHERE clause.
+     * Only numeric comparisons that the whole clause requires (the clause itself or an operand of a top-level
+     * AND) are used, on columns whose values in the segment are all numbers.
+     * @param where WHERE clause, or null if there is none
+     * @param headerList Columns of the table
+     * @return Filter that rejects segments which cannot match
+     */
+    static java.util.function.Predicate<ColumnarFile.SegmentStats> segmentFilter(Condition where, List<String> headerList) {
+        List<Condition.Comparison> required = new ArrayList<>();
+        if (where instanceof Condition.Comparison comparison) {
+            required.add(comparison);
+        } else if (where instanceof Condition.Logical logical && logical.isAnd()) {
+            for (Condition operand : logical.getOperands()) {
+                if (operand instanceof Condition.Comparison comparison) required.add(comparison);
+            }
+        }
+        required.removeIf(comparison -> !List.of("==", ">", "<", ">=", "<=").contains(comparison.getOperator()));
+        if (required.isEmpty()) {
+            return segment -> true;
+        }
+        return segment -> {
+            for (Condition.Comparison comparison : required) {
+                int column = headerList.indexOf(comparison.getColumn());
+                if (segment.isNumeric(column) && !mayMatch(segment.getMin(column), segment.getMax(column), comparison)) {
+                    return false;
+                }
+            }
+            return true;
+        };
+    }
+
+    // Whether a column whose numbers lie between min and max can satisfy a numeric comparison or ==.
+    private static boolean mayMatch(double min, double max, Condition.Comparison comparison) {
+        double bound;
+        try {
+            bound = Double.parseDouble(comparison.getValue());
+        } catch (NumberFormatException e) {
+            // Numbers never equal, or compare with, a value that is not a number.
+            return false;
+        }
+        switch (comparison.getOperator()) {
+            case "==":
+                return bound >= min && bound <= max;
+            case ">":
+                return max > bound;
+            case "<":
+                return min < bound;
+            case ">=":
+                return max >= bound;
+            default:
+                return min <= bound;
+        }
+    }
+
+    // Index entries are grouped by value, so sort them back into file order (ids only ever increase).
+    private static List<Record> inTableOrder(Table table, List<Record> records) {
+        List<Record> sorted = new ArrayList<>(records);
+        int idIndex = table.getColumnIndex("id");
+        if (sorted.size() < 2 || idIndex == -1) {
+            return sorted;
+        }
+        sorted.sort((a, b) -> {
+            String idA = a.getValue(idIndex);
+            String idB = b.getValue(idIndex);
+            try {
+                return Long.compare(Long.parseLong(idA), Long.parseLong(idB));
+            } catch (NumberFormatException e) {
+                return idA.compareTo(idB);
+            }
+        });
+        return sorted;
+    }
+}
@@ -1,279 +1,381 @@
 package edu.uob.commands;
 
+import edu.uob.metrics.ServerMetrics;
+import edu.uob.model.ColumnType;
 import edu.uob.model.Database;
-import edu.uob.parser.QueryParser;
+import edu.uob.model.PlanNode;
+import edu.uob.model.Record;
+import edu.uob.model.ScannableTableFile;
+import edu.uob.model.Session;
+import edu.uob.model.Table;
+import edu.uob.model.TableStatistics;
+import edu.uob.parser.Condition;
+import edu.uob.parser.Predicate;
+import edu.uob.parser.SelectStatement;
+import edu.uob.protocol.BufferedResult;
+import edu.uob.protocol.ResultSink;
+import edu.uob.protocol.TextResultWriter;
+import java.io.Closeable;
 import java.io.IOException;
-import java.io.File;
-import java.util.List;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
-import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.function.ToDoubleFunction;
 
 public class SelectCommand {
+    // Rows are read this many at a time with the table locked, then sent with it unlocked.
+    private static final int CHUNK_ROWS = 1024;
+
     private final Database database;
+    private final Session session;
 
-    public SelectCommand(Database database) {
+    public SelectCommand(Database database, Session session) {
         this.database = database;
+        this.session = session;
     }
 
-    public String execute(String command, File databasePath) {
-        //System.out.println("[DEBUG] Executing SELECT command: " + command);
-        // Parse table name
-        String tableName = QueryParser.extractTableName(command);
-        if (tableName == null) {
-            //System.out.println("[DEBUG] Invalid table name in SELECT command.");
-            return "[ERROR] Invalid table name";
-        }
-        //System.out.println("[DEBUG] Extracted table name: '" + tableName + "'");
-        File tableFile = new File(databasePath, tableName + ".tab");
-        //System.out.println("[DEBUG] Looking for table file at: " + tableFile.getAbsolutePath());
-        if (!tableFile.exists()) {
-            //System.out.println("[DEBUG] Table file does not exist.");
-            return "[ERROR] Table does not exist";
+    public String execute(SelectStatement statement) {
+        return execute(statement, PlanNode.Mode.NONE);
+    }
+
+    /**
+     * Run a parsed SELECT and return the whole result as text.
+     * @param statement Parsed statement
+     * @param mode NONE to return the rows, PLAN for EXPLAIN, ANALYZE for EXPLAIN ANALYZE
+     * @return Result message
+     */
+    public String execute(SelectStatement statement, PlanNode.Mode mode) {
+        TextResultWriter.Builder result = new TextResultWriter.Builder();
+        try {
+            execute(statement, mode, result);
+        } catch (IOException e) {
+            // Appending to a StringBuilder cannot fail, so the table changed while the rows were read.
+            return "[ERROR] " + e.getMessage();
         }
+        return result.toString();
+    }
+
+    /**
+     * Run a parsed SELECT, passing its rows to the sink a chunk at a time as they are found.
+     * @param statement Parsed statement
+     * @param mode NONE to return the rows, PLAN for EXPLAIN, ANALYZE for EXPLAIN ANALYZE
+     * @param sink Receives the status, header and rows, or the lines of the plan
+     * @return The status line sent to the sink
+     * @throws IOException If the sink fails, e.g. because the client disconnected, or the columns of the
+     *         table changed after part of the result was sent
+     */
+    public String execute(SelectStatement statement, PlanNode.Mode mode, ResultSink sink) throws IOException {
+        // SELECTs on the same table share the read lock and run in parallel. It is only held while a chunk
+        // of rows is read, never while rows are sent, so a client that reads its result slowly, or not at
+        // all, cannot keep writers to the table waiting. Errors and plans are short, so they are kept
+        // until the lock is released and then sent whole.
+        Lock lock = database.getTableLock(session, statement.getTableName()).readLock();
+        BufferedResult result = new BufferedResult();
+        List<List<String>> chunk = new ArrayList<>();
+        RowStream rows = null;
+        boolean more;
+        lock.lock();
         try {
-            List<String> lines = Files.readAllLines(tableFile.toPath());
-            if (lines.isEmpty()) {
-                //System.out.println("[DEBUG] Table file is empty.");
-                return "[ERROR] Table is empty";
+            rows = select(statement, mode, result);
+            more = rows != null && rows.fill(chunk);
+        } catch (IOException | RuntimeException e) {
+            if (rows != null) {
+                rows.close();
             }
-            // Get and process header
-            String headerLine = lines.get(0);
-            //System.out.println("[DEBUG] Retrieved table header: " + headerLine);
-            String[] headerColumns = headerLine.split("\t");
-            List<String> headerList = new ArrayList<>();
-            for (String header : headerColumns) {
-                headerList.add(header.trim());
+            throw e;
+        } finally {
+            lock.unlock();
+        }
+        if (rows == null) {
+            return result.sendTo(sink);
+        }
+        try (RowStream open = rows) {
+            sink.status("[OK]");
+            sink.header(open.header, open.types);
+            while (true) {
+                for (List<String> row : chunk) {
+                    sink.row(row);
+                }
+                chunk.clear();
+                if (!more) {
+                    break;
+                }
+                lock.lock();
+                try {
+                    more = open.fill(chunk);
+                } finally {
+                    lock.unlock();
+                }
             }
-            //System.out.println("[DEBUG] Processed header columns: " + headerList);
+            sink.end();
+            open.recordScan();
+        }
+        return "[OK]";
+    }
 
-            // Parse the column name part in the SELECT statement
-            List<String> selectedColumns = QueryParser.extractSelectColumns(command);
-            //System.out.println("[DEBUG] Selected columns from query: " + selectedColumns);
-            if (selectedColumns.isEmpty()) {
-                //System.out.println("[DEBUG] No columns specified in SELECT command.");
-                return "[ERROR] Invalid SELECT syntax";
+    /**
+     * Start a SELECT with the table locked. Results that are not rows, i.e. errors and plans, are sent to the
+     * sink at once.
+     * @return The rows to send, or null if the result has already been sent
+     */
+    private RowStream select(SelectStatement statement, PlanNode.Mode mode, ResultSink sink) throws IOException {
+        Table table = null;
+        ScannableTableFile scannable;
+        try {
+            // A columnar or large table that is not cached is read in place, decoding only the columns the query uses.
+            scannable = database.getScannableFile(session, statement.getTableName());
+            if (scannable == null) {
+                table = database.getTable(session, statement.getTableName());
             }
+        } catch (IOException e) {
+            return error(sink, "[ERROR] Failed to read table");
+        }
+        if (scannable == null && table == null) {
+            return error(sink, "[ERROR] Table does not exist");
+        }
+        // Get and process header
+        List<String> headerList = scannable != null ? scannable.getColumns() : table.getColumns();
+        if (headerList.isEmpty()) {
+            return error(sink, "[ERROR] Table is empty");
+        }
+        List<ColumnType> types;
+        try {
+            types = database.getColumnTypes(session, statement.getTableName(), headerList);
+        } catch (IOException e) {
+            return error(sink, "[ERROR] Failed to read table");
+        }
 
-            // Determine the column index of the returned data according to the selected column.
-            List<Integer> selectedIndices = new ArrayList<>();
-            if (selectedColumns.contains("*")) {
-                for (int i = 0; i < headerList.size(); i++) {
-                    selectedIndices.add(i);
-                }
-            } else {
-                for (String col : selectedColumns) {
-                    int index = headerList.indexOf(col);
-                    if (index == -1) {
-                        //System.out.println("[DEBUG] Column '" + col + "' not found in header.");
-                        return "[ERROR] Column '" + col + "' does not exist";
-                    }
-                    selectedIndices.add(index);
+        // Determine the column index of the returned data according to the selected column.
+        int[] selectedIndices = null;
+        List<String> returnHeader = headerList;
+        List<ColumnType> returnTypes = types;
+        if (!statement.selectsAllColumns()) {
+            List<String> selectedColumns = statement.getColumns();
+            selectedIndices = new int[selectedColumns.size()];
+            for (int i = 0; i < selectedIndices.length; i++) {
+                String col = selectedColumns.get(i);
+                selectedIndices[i] = headerList.indexOf(col);
+                if (selectedIndices[i] == -1) {
+                    return error(sink, "[ERROR] Column '" + col + "' does not exist");
                 }
             }
-            //System.out.println("[DEBUG] Selected column indices: " + selectedIndices);
+            returnHeader = selectedColumns;
+            returnTypes = new ArrayList<>(selectedIndices.length);
+            for (int idx : selectedIndices) {
+                returnTypes.add(types.get(idx));
+            }
+        }
 
-            // Parse the WHERE clause
-            int wherePos = command.toUpperCase().indexOf("WHERE");
-            boolean hasWhereClause = wherePos != -1;
-            List<String[]> conditions = new ArrayList<>();
-            String logicOperator = null; // "AND" 或 "OR"；单个条件时为 null
-            if (hasWhereClause) {
-                String whereClause = command.substring(wherePos + 5).trim();
-                if (whereClause.endsWith(";")) {
-                    whereClause = whereClause.substring(0, whereClause.length() - 1).trim();
-                }
-                // Determine whether the condition contains AND OR OR.
-                boolean containsAnd = whereClause.toUpperCase().contains("AND");
-                boolean containsOr = whereClause.toUpperCase().contains("OR");
-                if (containsAnd && containsOr) {
-                    //System.out.println("[DEBUG] Mixed AND/OR conditions are not supported.");
-                    return "[ERROR] Mixed AND/OR conditions are not supported";
-                } else if (containsAnd) {
-                    logicOperator = "AND";
-                } else if (containsOr) {
-                    logicOperator = "OR";
-                }
-                List<String> condStrings = new ArrayList<>();
-                if (logicOperator != null) {
-                    // Remove the extra brackets on the outer layer
-                    while (whereClause.startsWith("(") && whereClause.endsWith(")")) {
-                        int count = 0;
-                        boolean balanced = true;
-                        for (int i = 0; i < whereClause.length(); i++) {
-                            char c = whereClause.charAt(i);
-                            if (c == '(') count++;
-                            else if (c == ')') count--;
-                            if (count == 0 && i < whereClause.length() - 1) {
-                                balanced = false;
-                                break;
-                            }
-                        }
-                        if (balanced) {
-                            whereClause = whereClause.substring(1, whereClause.length() - 1).trim();
-                        } else {
-                            break;
-                        }
-                    }
-                    int opLength = logicOperator.length();
-                    StringBuilder sb = new StringBuilder();
-                    int parenCount = 0;
-                    for (int i = 0; i < whereClause.length(); i++) {
-                        char c = whereClause.charAt(i);
-                        if (c == '(') {
-                            parenCount++;
-                            sb.append(c);
-                        } else if (c == ')') {
-                            parenCount--;
-                            sb.append(c);
-                        } else {
-                            if (parenCount == 0 && i + opLength <= whereClause.length() &&
-                                    whereClause.substring(i, i + opLength).equalsIgnoreCase(logicOperator)) {
-                                condStrings.add(sb.toString().trim());
-                                sb.setLength(0);
-                                i += opLength - 1;
-                            } else {
-                                sb.append(c);
-                            }
-                        }
-                    }
-                    if (sb.length() > 0) {
-                        condStrings.add(sb.toString().trim());
-                    }
-                } else {
-                    condStrings.add(whereClause);
-                }
-                // Process each conditional expression
-                for (String condStr : condStrings) {
-                    while (condStr.startsWith("(") && condStr.endsWith(")")) {
-                        condStr = condStr.substring(1, condStr.length() - 1).trim();
-                    }
-                    String[] parts = condStr.split("\\s+");
-                    if (parts.length != 3) {
-                        //System.out.println("[DEBUG] Invalid WHERE clause detected: '" + condStr + "'");
-                        return "[ERROR] Invalid WHERE clause";
-                    }
-                    String col = parts[0].trim();
-                    String op = parts[1].trim();
-                    String val = parts[2].trim();
-                    // Remove quotation marks and non-alphanumeric characters
-                    val = val.replaceAll("^[\"']|[\"']$", "");
-                    val = val.replaceAll("[^a-zA-Z0-9]", "");
-                    //System.out.println("[DEBUG] Parsed condition: '" + col + " " + op + " " + val + "'");
-                    conditions.add(new String[]{col, op, val});
-                }
-                for (String[] cond : conditions) {
-                    if (!headerList.contains(cond[0])) {
-                        //System.out.println("[DEBUG] WHERE column '" + cond[0] + "' not found in header.");
-                        return "[ERROR] Column " + cond[0] + " does not exist";
-                    }
+        Condition where = statement.getWhere();
+        if (where != null) {
+            for (Condition.Comparison comparison : where.getComparisons()) {
+                if (!headerList.contains(comparison.getColumn())) {
+                    return error(sink, "[ERROR] Column " + comparison.getColumn() + " does not exist");
                 }
             }
+        }
 
-            List<String> resultRows = new ArrayList<>();
-            List<String> returnHeader = new ArrayList<>();
-            if (selectedColumns.contains("*")) {
-                returnHeader.addAll(headerList);
-            } else {
-                for (int idx : selectedIndices) {
-                    returnHeader.add(headerList.get(idx));
-                }
+        if (scannable != null) {
+            return scanFile(statement, scannable, types, selectedIndices, returnHeader, returnTypes, mode, sink);
+        }
+        Table cachedTable = table;
+        long planStart = System.nanoTime();
+        QueryPlanner.AccessPath accessPath = QueryPlanner.plan(table, where);
+        long planNanos = System.nanoTime() - planStart;
+        database.getMetrics().record("SELECT", ServerMetrics.Phase.PLAN, planNanos);
+
+        // Compile the WHERE clause once, then stream the data rows, or only the indexed rows when the
+        // WHERE clause can use an index
+        Predicate predicate = null;
+        ToDoubleFunction<Condition.Comparison> selectivity = comparison -> QueryPlanner.selectivity(cachedTable, comparison);
+        if (where != null) {
+            predicate = where.compile(headerList, types, selectivity);
+            if (predicate == null) {
+                return error(sink, "[ERROR] Unsupported operator in WHERE clause");
             }
-            resultRows.add(String.join("\t", returnHeader));
+        }
+        if (mode != PlanNode.Mode.NONE) {
+            PlanNode scan = new PlanNode(accessPath.description).estimateRows(accessPath.records.size());
+            // The index lookup, if any, was done while planning.
+            scan.addTime(planNanos);
+            Iterator<List<String>> rows = accessPath.records.stream().map(Record::getValues).iterator();
+            explain(statement, mode, scan, rows, predicate, selectivity, selectedIndices, sink);
+            return null;
+        }
+        // The table is unlocked between chunks, so read from a copy of the list of candidates, leaving out
+        // records that were deleted in between. Rows inserted in between are not part of the result.
+        List<Record> candidates = new ArrayList<>(accessPath.records);
+        Iterator<List<String>> rows = candidates.stream()
+                .filter(table::containsRecord).map(Record::getValues).iterator();
+        return new RowStream(statement.getTableName(), returnHeader, returnTypes,
+                new SelectCursor(rows, predicate, selectedIndices), selectedIndices == null, table, null);
+    }
 
-            // Traverse data rows
-            for (int i = 1; i < lines.size(); i++) {
-                String rowLine = lines.get(i);
-                String[] rowValues = rowLine.split("\t");
-                boolean rowMatches = true;
-                if (hasWhereClause) {
-                    if (logicOperator == null) {
-                        // Single condition
-                        rowMatches = evaluateCondition(conditions.get(0), rowValues, headerList, i);
-                    } else if (logicOperator.equals("AND")) {
-                        rowMatches = true;
-                        for (String[] cond : conditions) {
-                            if (!evaluateCondition(cond, rowValues, headerList, i)) {
-                                rowMatches = false;
-                                break;
-                            }
-                        }
-                    } else if (logicOperator.equals("OR")) {
-                        rowMatches = false;
-                        for (String[] cond : conditions) {
-                            if (evaluateCondition(cond, rowValues, headerList, i)) {
-                                rowMatches = true;
-                                break;
-                            }
-                        }
-                    }
-                }
-                if (rowMatches) {
-                    List<String> selectedValues = new ArrayList<>();
-                    if (selectedColumns.contains("*")) {
-                        for (String value : rowValues) {
-                            selectedValues.add(value.trim());
-                        }
-                    } else {
-                        for (int idx : selectedIndices) {
-                            if (idx < rowValues.length)
-                                selectedValues.add(rowValues[idx].trim());
-                        }
-                    }
-                    resultRows.add(String.join("\t", selectedValues));
-                }
+    // Read the rows of a table from its file, decoding only the selected and WHERE columns.
+    private RowStream scanFile(SelectStatement statement, ScannableTableFile scannable, List<ColumnType> types,
+                            int[] selectedIndices, List<String> returnHeader, List<ColumnType> returnTypes,
+                            PlanNode.Mode mode, ResultSink sink) throws IOException {
+        List<String> headerList = scannable.getColumns();
+        Condition where = statement.getWhere();
+        boolean[] needed = new boolean[headerList.size()];
+        if (selectedIndices == null) {
+            Arrays.fill(needed, true);
+        } else {
+            for (int idx : selectedIndices) {
+                needed[idx] = true;
             }
+        }
+        Predicate predicate = null;
+        TableStatistics statistics = database.getTableStatistics(session, statement.getTableName());
+        ToDoubleFunction<Condition.Comparison> selectivity =
+                comparison -> QueryPlanner.selectivity(null, statistics, comparison);
+        if (where != null) {
+            for (Condition.Comparison comparison : where.getComparisons()) {
+                needed[headerList.indexOf(comparison.getColumn())] = true;
+            }
+            predicate = where.compile(headerList, types, selectivity);
+            if (predicate == null) {
+                return error(sink, "[ERROR] Unsupported operator in WHERE clause");
+            }
+        }
+        PlanNode scan = new PlanNode(QueryPlanner.describeFileScan(statement.getTableName(), scannable, needed));
+        if (statistics != null) {
+            // The file is not loaded, so the row count is the one ANALYZE saw.
+            scan.estimateRows(statistics.getRowCount());
+        }
+        if (mode == PlanNode.Mode.PLAN) {
+            explain(statement, mode, scan, null, predicate, selectivity, selectedIndices, sink);
+            return null;
+        }
+        // The scanner reads the file as it was when it was opened and keeps its place between chunks.
+        ScannableTableFile.RowScanner rows = scannable.scan(needed, QueryPlanner.segmentFilter(where, headerList));
+        if (mode == PlanNode.Mode.ANALYZE) {
+            try (rows) {
+                explain(statement, mode, scan, rows, predicate, selectivity, selectedIndices, sink);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            return null;
+        }
+        return new RowStream(statement.getTableName(), returnHeader, returnTypes,
+                new SelectCursor(rows, predicate, selectedIndices), selectedIndices == null, null, rows);
+    }
 
-            String finalResult = String.join(System.lineSeparator(), resultRows);
-            return "[OK]" + System.lineSeparator() + finalResult;
-        } catch (IOException e) {
-            //System.out.println("[DEBUG] Exception reading table file: " + e.getMessage());
-            return "[ERROR] Failed to read table";
+    /**
+     * Send the operators of the query as the lines of the result: the scan, then the WHERE filter with its
+     * comparisons in the order they are evaluated, then the projection onto the selected columns. For
+     * EXPLAIN ANALYZE the query is run first, discarding its rows, to measure each operator.
+     * @param scan Operator that reads the rows
+     * @param rows Rows of the scan, only read for EXPLAIN ANALYZE
+     */
+    private static void explain(SelectStatement statement, PlanNode.Mode mode, PlanNode scan,
+                                  Iterator<List<String>> rows, Predicate predicate,
+                                  ToDoubleFunction<Condition.Comparison> selectivity, int[] selectedIndices,
+                                  ResultSink sink) throws IOException {
+        PlanNode root = scan;
+        PlanNode filter = null;
+        if (statement.getWhere() != null) {
+            filter = QueryPlanner.filter(statement.getWhere(), root, selectivity);
+            root = filter;
+        }
+        PlanNode project = null;
+        if (selectedIndices != null) {
+            project = new PlanNode("Project " + String.join(", ", statement.getColumns()));
+            project.estimateRows(root.getEstimatedRows());
+            project.addChild(root);
+            root = project;
+        }
+        long executionNanos = 0;
+        if (mode == PlanNode.Mode.ANALYZE) {
+            long start = System.nanoTime();
+            SelectCursor cursor = new SelectCursor(scan.measure(rows),
+                    filter == null ? predicate : QueryPlanner.timed(predicate, filter), selectedIndices);
+            while (cursor.next() != null) {
+                // Only the counts are reported.
+            }
+            executionNanos = System.nanoTime() - start;
+            if (filter != null) {
+                filter.addRows(cursor.getRowsReturned());
+                filter.addTime(scan.getTime());
+            }
+            if (project != null) {
+                project.addRows(cursor.getRowsReturned());
+                project.addTime(executionNanos);
+            }
         }
+        root.send(sink, mode, executionNanos);
+    }
+
+    private static RowStream error(ResultSink sink, String message) throws IOException {
+        sink.status(message);
+        sink.end();
+        return null;
     }
 
     /**
-     * Judging whether the current line meets the requirements according to a single condition.
+     * The rows of a running SELECT, read a chunk at a time while the table is locked. The cursor must only
+     * be moved on with the lock held, and rows that are the table's own value lists are copied before it
+     * is released.
      */
-    private boolean evaluateCondition(String[] cond, String[] rowValues, List<String> headerList, int rowIndex) {
-        String col = cond[0];
-        String op = cond[1];
-        String val = cond[2];
-        int condIndex = headerList.indexOf(col);
-        if (condIndex >= rowValues.length) {
-            return false;
+    private class RowStream implements Closeable {
+        private final String tableName;
+        private final List<String> header;
+        private final List<ColumnType> types;
+        private final SelectCursor cursor;
+        private final boolean copyRows;
+        // The cached table read from and its columns when the query started, or null for a file scan.
+        private final Table table;
+        private final List<String> columns;
+        private final ScannableTableFile.RowScanner scanner;
+
+        RowStream(String tableName, List<String> header, List<ColumnType> types, SelectCursor cursor,
+                  boolean copyRows, Table table, ScannableTableFile.RowScanner scanner) {
+            this.tableName = tableName;
+            this.header = header;
+            this.types = types;
+            this.cursor = cursor;
+            this.copyRows = copyRows;
+            this.table = table;
+            this.columns = table == null ? null : new ArrayList<>(table.getColumns());
+            this.scanner = scanner;
         }
-        String actualValue = rowValues[condIndex].trim();
-        //System.out.println("[DEBUG] Row " + rowIndex + " condition (" + col + " " + op + " " + val + "): '" + actualValue + "'");
-        boolean condResult = false;
-        switch (op) {
-            case "==":
-                condResult = actualValue.equalsIgnoreCase(val);
-                break;
-            case "!=":
-                condResult = !actualValue.equalsIgnoreCase(val);
-                break;
-            case ">":
-                try {
-                    condResult = Double.parseDouble(actualValue) > Double.parseDouble(val);
-                } catch (NumberFormatException e) {
-                    condResult = false;
-                }
-                break;
-            case "<":
-                try {
-                    condResult = Double.parseDouble(actualValue) < Double.parseDouble(val);
-                } catch (NumberFormatException e) {
-                    condResult = false;
+
+        /**
+         * Add the next rows of the result to the chunk, up to CHUNK_ROWS of them.
+         * @return True if there may be more rows
+         */
+        boolean fill(List<List<String>> chunk) throws IOException {
+            if (table != null && !table.getColumns().equals(columns)) {
+                // The rows read so far no longer fit the rest of the table.
+                throw new IOException("The columns of " + tableName + " changed while its rows were being sent");
+            }
+            try {
+                while (chunk.size() < CHUNK_ROWS) {
+                    List<String> row = cursor.next();
+                    if (row == null) {
+                        return false;
+                    }
+                    chunk.add(copyRows ? new ArrayList<>(row) : row);
                 }
-                break;
-            case "LIKE":
-                condResult = actualValue.toLowerCase().contains(val.toLowerCase());
-                break;
-            default:
-                //System.out.println("[DEBUG] Unsupported operator in WHERE clause: " + op);
-                condResult = false;
+                return true;
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+
+        void recordScan() {
+            database.recordScan(session, tableName, cursor.getRowsScanned(), cursor.getRowsReturned(),
+                    scanner == null ? 0 : scanner.getBytesRead());
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (scanner != null) {
+                scanner.close();
+            }
         }
-        return condResult;
     }
 }
-
@@ -0,0 +1,76 @@
+package edu.uob.commands;
+
+import edu.uob.model.Record;
+import edu.uob.parser.Predicate;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Produces the rows of a SELECT one at a time: each call to {@link #next()} moves
+ * on to the next candidate record that satisfies the WHERE clause and returns its
+ * selected values. Nothing is collected, so memory use does not depend on the
+ * size of the result.
+ */
+class SelectCursor {
+    private final Iterator<List<String>> candidates;
+    private final Predicate predicate;
+    private final int[] selectedIndices;
+    private long rowsScanned;
+    private long rowsReturned;
+
+    /**
+     * @param candidates Records to check, from the chosen access path
+     * @param predicate Compiled WHERE clause, or null if every candidate matches
+     * @param selectedIndices Column positions to return, or null for all columns
+     */
+    SelectCursor(List<Record> candidates, Predicate predicate, int[] selectedIndices) {
+        this(candidates.stream().map(Record::getValues).iterator(), predicate, selectedIndices);
+    }
+
+    /**
+     * @param rows Values of the rows to check, e.g. from a column store scan
+     * @param predicate Compiled WHERE clause, or null if every row matches
+     * @param selectedIndices Column positions to return, or null for all columns
+     */
+    SelectCursor(Iterator<List<String>> rows, Predicate predicate, int[] selectedIndices) {
+        this.candidates = rows;
+        this.predicate = predicate;
+        this.selectedIndices = selectedIndices;
+    }
+
+    /**
+     * The next matching row. With all columns selected this is the record's own value list,
+     * which must not be modified or kept after the read lock is released.
+     * @return The values of the next row, or null when there are no more rows
+     */
+    List<String> next() {
+        while (candidates.hasNext()) {
+            List<String> rowValues = candidates.next();
+            rowsScanned++;
+            if (predicate != null && !predicate.test(rowValues)) {
+                continue;
+            }
+            rowsReturned++;
+            if (selectedIndices == null) {
+                return rowValues;
+            }
+            List<String> selectedValues = new ArrayList<>(selectedIndices.length);
+            for (int idx : selectedIndices) {
+                if (idx < rowValues.size())
+                    selectedValues.add(rowValues.get(idx));
+            }
+            return selectedValues;
+        }
+        return null;
+    }
+
+    long getRowsScanned() {
+        return rowsScanned;
+    }
+
+    long getRowsReturned() {
+        return rowsReturned;
+    }
+}
@@ -0,0 +1,39 @@
+package edu.uob.commands;
+
+import edu.uob.metrics.ServerMetrics;
+import edu.uob.protocol.TextResultWriter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+public class ShowStatsCommand {
+    private final ServerMetrics metrics;
+
+    public ShowStatsCommand(ServerMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    // SHOW STATS; one row per value, with times in milliseconds
+    public String execute(String[] tokens) {
+        if (tokens.length != 2 || !tokens[1].replace(";", "").equalsIgnoreCase("STATS")) {
+            return "[ERROR] Invalid SHOW syntax. Use: SHOW STATS;";
+        }
+        TextResultWriter.Builder result = new TextResultWriter.Builder();
+        try {
+            result.status("[OK]");
+            result.header(List.of("stat", "value"));
+            for (Map.Entry<String, Number> stat : metrics.snapshot().entrySet()) {
+                Number value = stat.getValue();
+                result.row(List.of(stat.getKey(),
+                        value instanceof Double ? String.format(Locale.ROOT, "%.3f", value) : value.toString()));
+            }
+        } catch (IOException e) {
+            // Appending to a StringBuilder cannot fail.
+            throw new UncheckedIOException(e);
+        }
+        return result.toString();
+    }
+}
@@ -1,85 +1,99 @@
 package edu.uob.commands;
 
+import edu.uob.metrics.ServerMetrics;
+import edu.uob.model.ColumnType;
 import edu.uob.model.Database;
-import edu.uob.parser.QueryParser;
+import edu.uob.model.PlanNode;
+import edu.uob.model.Session;
+import edu.uob.model.Record;
+import edu.uob.model.Table;
+import edu.uob.parser.Condition;
+import edu.uob.parser.Predicate;
+import edu.uob.parser.UpdateStatement;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.HashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.function.ToDoubleFunction;
 
 public class UpdateCommand {
     private final Database database;
+    private final Session session;
+    // LSN of the log records written by this update, 0 if nothing was logged.
+    private long commitLsn;
 
-    public UpdateCommand(Database database) {
+    public UpdateCommand(Database database, Session session) {
         this.database = database;
+        this.session = session;
     }
 
-    public String execute(String[] tokens) {
-        if (tokens.length < 6) {
-            //System.out.println("[DEBUG] UPDATE syntax invalid: tokens length " + tokens.length);
-            return "[ERROR] Invalid UPDATE syntax";
+    public String execute(UpdateStatement statement) {
+        return execute(statement, PlanNode.Mode.NONE);
+    }
+
+    /**
+     * Run a parsed UPDATE.
+     * @param mode NONE to update the rows, PLAN for EXPLAIN, ANALYZE for EXPLAIN ANALYZE, which updates the
+     *             rows as well
+     * @return Result message, or the plan for EXPLAIN
+     */
+    public String execute(UpdateStatement statement, PlanNode.Mode mode) {
+        Lock lock = database.getTableLock(session, statement.getTableName()).writeLock();
+        String result;
+        lock.lock();
+        try {
+            result = update(statement, mode);
+        } finally {
+            lock.unlock();
         }
-        String tableName = tokens[1];
-        File databasePath = database.getCurrentDatabasePath();
-        File tableFile = new File(databasePath, tableName + ".tab");
-        if (!tableFile.exists()) {
-            //System.out.println("[DEBUG] Table file for '" + tableName + "' does not exist at " + tableFile.getAbsolutePath());
-            return "[ERROR] Table does not exist";
+        return commit(result);
+    }
+
+    // Wait for the logged rows to reach disk outside the lock, so concurrent writers can share one fsync.
+    private String commit(String result) {
+        if (commitLsn == 0) {
+            return result;
+        }
+        try {
+            database.awaitDurable(session, commitLsn);
+            return result;
+        } catch (IOException e) {
+            return "[ERROR] Failed to write table";
         }
+    }
 
-        List<String> lines;
+    private String update(UpdateStatement statement, PlanNode.Mode mode) {
+        long start = System.nanoTime();
+        Table table;
         try {
-            lines = Files.readAllLines(tableFile.toPath());
+            table = database.getTable(session, statement.getTableName());
         } catch (IOException e) {
             //System.out.println("[DEBUG] IOException reading table file: " + e.getMessage());
             return "[ERROR] Failed to read table";
         }
-        if (lines.isEmpty()) {
+        if (table == null) {
+            return "[ERROR] Table does not exist";
+        }
+        if (table.getColumns().isEmpty()) {
             //System.out.println("[DEBUG] Table file is empty");
             return "[ERROR] Table is empty";
         }
-        String headerLine = lines.get(0);
-        String[] headerColumns = headerLine.split("\t");
-        List<String> headerList = new ArrayList<>();
-        for (String header : headerColumns) {
-            headerList.add(header.trim());
-        }
+        List<String> headerList = table.getColumns();
 
-        if (!tokens[2].equalsIgnoreCase("SET")) {
-            //System.out.println("[DEBUG] Missing SET keyword in UPDATE command");
-            return "[ERROR] Invalid UPDATE syntax: missing SET";
-        }
-        int whereIndex = -1;
-        for (int i = 3; i < tokens.length; i++) {
-            if (tokens[i].equalsIgnoreCase("WHERE")) {
-                whereIndex = i;
-                break;
-            }
-        }
-
-        int endIndex = (whereIndex == -1 ? tokens.length : whereIndex);
-        StringBuilder setClauseBuilder = new StringBuilder();
-        for (int i = 3; i < endIndex; i++) {
-            setClauseBuilder.append(tokens[i]).append(" ");
+        List<ColumnType> types;
+        try {
+            types = database.getColumnTypes(session, statement.getTableName(), headerList);
+        } catch (IOException e) {
+            return "[ERROR] Failed to read table";
         }
-        String setClause = setClauseBuilder.toString().trim();
-        String[] assignments = setClause.split(",");
-        Map<String, String> updates = new HashMap<>();
-        for (String assignment : assignments) {
-            String[] parts = assignment.split("=");
-            if (parts.length != 2) {
-                //System.out.println("[DEBUG] Invalid assignment syntax: " + assignment);
-                return "[ERROR] Invalid SET syntax";
-            }
-            String col = parts[0].trim();
-            String newValue = parts[1].trim();
-            newValue = newValue.replaceAll("[^a-zA-Z0-9]", "");
-            //System.out.println("[DEBUG] Update assignment: column='" + col + "', newValue='" + newValue + "'");
+        // New values in the form they are stored in, checked against the column types.
+        Map<String, String> updates = new LinkedHashMap<>();
+        for (Map.Entry<String, String> assignment : statement.getAssignments().entrySet()) {
+            String col = assignment.getKey();
             if (col.equalsIgnoreCase("id")) {
                 //System.out.println("[DEBUG] Attempt to update primary key 'id' detected");
                 return "[ERROR] Cannot update primary key";
@@ -88,104 +102,99 @@ public class UpdateCommand {
                 //System.out.println("[DEBUG] Column '" + col + "' not found in header: " + headerList);
                 return "[ERROR] Column '" + col + "' does not exist";
             }
-            updates.put(col, newValue);
-        }
-        String conditionColumn = null;
-        String whereOperator = null;
-        String conditionValue = null;
-        boolean hasWhereClause = (whereIndex != -1);
-        if (hasWhereClause) {
-            if (tokens.length < whereIndex + 4) {
-                //System.out.println("[DEBUG] Invalid WHERE syntax: tokens length " + tokens.length + ", expected at least " + (whereIndex + 4));
-                return "[ERROR] Invalid WHERE syntax";
+            ColumnType type = types.get(headerList.indexOf(col));
+            String value = type.normalize(assignment.getValue());
+            if (value == null) {
+                return "[ERROR] Invalid " + type + " value: " + assignment.getValue();
             }
-            conditionColumn = tokens[whereIndex + 1];
-            whereOperator = tokens[whereIndex + 2];
-            conditionValue = tokens[whereIndex + 3];
-            //System.out.println("[DEBUG] Parsed WHERE condition: column='" + conditionColumn +
-                    //"', operator='" + whereOperator + "', raw value='" + conditionValue + "'");
-            if ((conditionValue.startsWith("'") && conditionValue.endsWith("'")) ||
-                    (conditionValue.startsWith("\"") && conditionValue.endsWith("\""))) {
-                conditionValue = conditionValue.substring(1, conditionValue.length() - 1);
-                //System.out.println("[DEBUG] Cleaned WHERE condition value: '" + conditionValue + "'");
+            updates.put(col, value);
+        }
+        // Compile the WHERE clause once; only the indexed rows need checking when one applies.
+        Predicate predicate = null;
+        Condition where = statement.getWhere();
+        ToDoubleFunction<Condition.Comparison> selectivity = comparison -> QueryPlanner.selectivity(table, comparison);
+        if (where != null) {
+            for (Condition.Comparison comparison : where.getComparisons()) {
+                if (!headerList.contains(comparison.getColumn())) {
+                    return "[ERROR] Column '" + comparison.getColumn() + "' does not exist";
+                }
             }
-            conditionValue = conditionValue.replaceAll("[^a-zA-Z0-9]", "");
-            //System.out.println("[DEBUG] Cleaned WHERE condition value: '" + conditionValue + "'");
-            if (!headerList.contains(conditionColumn)) {
-                //System.out.println("[DEBUG] WHERE column '" + conditionColumn + "' not found in header: " + headerList);
-                return "[ERROR] Column '" + conditionColumn + "' does not exist";
+            predicate = where.compile(headerList, types, selectivity);
+            if (predicate == null) {
+                return "[ERROR] Unsupported operator in WHERE clause";
             }
         }
+        long planStart = System.nanoTime();
+        QueryPlanner.AccessPath accessPath = QueryPlanner.plan(table, where);
+        long planNanos = System.nanoTime() - planStart;
+        database.getMetrics().record("UPDATE", ServerMetrics.Phase.PLAN, planNanos);
+        List<Record> records = accessPath.records;
 
-        List<String> newLines = new ArrayList<>();
-        newLines.add(headerLine); 
-        for (int i = 1; i < lines.size(); i++) {
-            String rowLine = lines.get(i);
-            String[] rowValues = rowLine.split("\t", -1);
-            for(String value : rowValues) {
-                //System.out.println(value + "123");
+        Iterator<Record> candidates = records.iterator();
+        PlanNode plan = null;
+        PlanNode filter = null;
+        PlanNode scan = null;
+        if (mode != PlanNode.Mode.NONE) {
+            // Update <- Filter <- scan or index lookup
+            scan = new PlanNode(accessPath.description).estimateRows(records.size());
+            scan.addTime(planNanos);
+            PlanNode input = scan;
+            if (where != null) {
+                filter = QueryPlanner.filter(where, scan, selectivity);
+                predicate = QueryPlanner.timed(predicate, filter);
+                input = filter;
             }
-            boolean rowMatches = true;
-            if (hasWhereClause) {
-                int condIndex = headerList.indexOf(conditionColumn);
-                if (condIndex < rowValues.length) {
-                    String actualValue = rowValues[condIndex].trim();
-                    //System.out.println("[DEBUG] Row " + i + " actual value for column '" + conditionColumn + "': '" + actualValue + "'");
-                    switch (whereOperator) {
-                        case "==":
-                            if (!actualValue.equalsIgnoreCase(conditionValue))
-                                rowMatches = false;
-                            break;
-                        case "!=":
-                            if (actualValue.equalsIgnoreCase(conditionValue))
-                                rowMatches = false;
-                            break;
-                        case ">":
-                            try {
-                                if (Double.parseDouble(actualValue) <= Double.parseDouble(conditionValue))
-                                    rowMatches = false;
-                            } catch (NumberFormatException e) {
-                                rowMatches = false;
-                            }
-                            break;
-                        case "<":
-                            try {
-                                if (Double.parseDouble(actualValue) >= Double.parseDouble(conditionValue))
-                                    rowMatches = false;
-                            } catch (NumberFormatException e) {
-                                rowMatches = false;
-                            }
-                            break;
-                        default:
-                            //System.out.println("[DEBUG] Unsupported operator in WHERE clause: " + whereOperator);
-                            return "[ERROR] Unsupported operator in WHERE clause";
-                    }
-                } else {
-                    rowMatches = false;
-                }
+            plan = new PlanNode("Update " + table.getName() + " set " + describe(updates));
+            plan.estimateRows(input.getEstimatedRows());
+            plan.addChild(input);
+            if (mode == PlanNode.Mode.PLAN) {
+                return plan.toResult(mode, 0);
             }
-            if (rowMatches) {
+            candidates = scan.measure(candidates);
+        }
+        List<Record> updatedRecords = new ArrayList<>();
+        while (candidates.hasNext()) {
+            Record record = candidates.next();
+            List<String> rowValues = record.getValues();
+            if (predicate == null || predicate.test(rowValues)) {
+                updatedRecords.add(record);
                 for (Map.Entry<String, String> entry : updates.entrySet()) {
                     int colIndex = headerList.indexOf(entry.getKey());
-                    if (colIndex < rowValues.length) {
-                        rowValues[colIndex] = entry.getValue();
-                        //System.out.println("[DEBUG] Row " + i + " updated column '" + entry.getKey() +
-                                //"' to '" + entry.getValue() + "'");
+                    if (colIndex < rowValues.size()) {
+                        table.setValue(record, colIndex, entry.getValue());
                     }
                 }
             }
-            String updatedRow = String.join("\t", rowValues);
-            newLines.add(updatedRow);
         }
-        
-        try {
-            Files.write(tableFile.toPath(), newLines);
-            //System.out.println("[DEBUG] Successfully wrote updated data to table file: " + tableFile.getAbsolutePath());
-            return "[OK] Update successful";
-        } catch (IOException e) {
-            //System.out.println("[DEBUG] IOException writing table file: " + e.getMessage());
-            return "[ERROR] Failed to write table";
+        database.recordScan(session, statement.getTableName(), records.size(), updatedRecords.size(), 0);
+        if (!updatedRecords.isEmpty()) {
+            try {
+                // Only the changed rows are logged; the table file is rewritten by the next checkpoint.
+                commitLsn = database.logUpdates(session, table, updatedRecords);
+            } catch (IOException e) {
+                //System.out.println("[DEBUG] IOException writing table file: " + e.getMessage());
+                return "[ERROR] Failed to write table";
+            }
+        }
+        if (plan != null) {
+            long executionNanos = System.nanoTime() - start;
+            if (filter != null) {
+                filter.addRows(updatedRecords.size());
+                filter.addTime(scan.getTime());
+            }
+            plan.addRows(updatedRecords.size());
+            plan.addTime(executionNanos);
+            return plan.toResult(mode, executionNanos);
+        }
+        return "[OK] Update successful";
+    }
+
+    private static String describe(Map<String, String> updates) {
+        List<String> assignments = new ArrayList<>();
+        for (Map.Entry<String, String> entry : updates.entrySet()) {
+            assignments.add(entry.getKey() + " = " + entry.getValue());
         }
+        return String.join(", ", assignments);
     }
 }
 
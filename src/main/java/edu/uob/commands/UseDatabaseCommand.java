@@ -1,13 +1,16 @@
 package edu.uob.commands;
 
 import edu.uob.model.Database;
+import edu.uob.model.Session;
 
 
 public class UseDatabaseCommand {
     private final Database database;
+    private final Session session;
 
-    public UseDatabaseCommand(Database database) {
+    public UseDatabaseCommand(Database database, Session session) {
         this.database = database;
+        this.session = session;
     }
 
     public String execute(String[] tokens) {
@@ -16,7 +19,7 @@ public class UseDatabaseCommand {
         }
         //System.out.println(tokens[1]);
         String dbName = tokens[1].replaceAll(";", "").toLowerCase().trim();
-        String result = database.useDatabase(dbName);
+        String result = database.useDatabase(session, dbName);
 
         if (!result.startsWith("[OK]")) {
         }
@@ -0,0 +1,275 @@
+package edu.uob.log;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Locale;
+
+/**
+ * Log of the commands the server runs, written by a background thread so that
+ * handling a command never waits for console or file output.
+ *
+ * <p>Callers put entries into a fixed-size ring buffer and return at once. When
+ * the writer falls behind and the buffer is full, the oldest entries are dropped
+ * and the number of dropped entries is reported in the next line written.
+ *
+ * <p>Each entry has a level and only entries at or above the configured level are
+ * kept: failed and slow commands are {@link Level#WARN}, other commands
+ * {@link Level#INFO} and connection events {@link Level#DEBUG}. At DEBUG the result
+ * text is logged as well, cut to a maximum length; otherwise only its first line.
+ *
+ * <p>The log is configured with system properties:
+ * <pre>
+ *   db.log.level          OFF, ERROR, WARN, INFO (default) or DEBUG
+ *   db.log.file           file to append to instead of standard output
+ *   db.log.slowQueryMs    commands taking at least this long are WARN (default 1000)
+ *   db.log.maxResultChars longest result text logged at DEBUG (default 200)
+ *   db.log.bufferSize     entries held until written (default 8192)
+ * </pre>
+ */
+public class QueryLog implements AutoCloseable {
+
+    public enum Level {
+        OFF, ERROR, WARN, INFO, DEBUG
+    }
+
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+    private static final long DEFAULT_SLOW_QUERY_MILLIS = 1000;
+    private static final int DEFAULT_MAX_RESULT_CHARS = 200;
+
+    private final Level level;
+    private final long slowQueryNanos;
+    private final int maxResultChars;
+    private final PrintWriter out;
+
+    private final Entry[] ring;
+    private int head;
+    private int size;
+    private long dropped;
+    // Entries put into the buffer, and entries written or dropped, so flush() knows when it is done.
+    private long logged;
+    private long finished;
+    private boolean closed;
+    private final Thread writer;
+
+    /**
+     * @param level Lowest level that is logged
+     * @param slowQueryMillis Commands taking at least this long are logged as slow
+     * @param maxResultChars Longest result text logged at DEBUG
+     * @param bufferSize Number of entries held until the writer catches up
+     * @param out Where the log is written
+     */
+    public QueryLog(Level level, long slowQueryMillis, int maxResultChars, int bufferSize, Writer out) {
+        this.level = level;
+        this.slowQueryNanos = slowQueryMillis * 1_000_000;
+        this.maxResultChars = maxResultChars;
+        this.out = new PrintWriter(out);
+        this.ring = new Entry[Math.max(1, bufferSize)];
+        this.writer = new Thread(this::writeEntries, "query-log-writer");
+        writer.setDaemon(true);
+        if (level != Level.OFF) {
+            writer.start();
+        }
+    }
+
+    /**
+     * Create the log described by the db.log.* system properties.
+     */
+    public static QueryLog fromSystemProperties() {
+        Level level = parseLevel(System.getProperty("db.log.level", "INFO"));
+        long slowQueryMillis = Long.getLong("db.log.slowQueryMs", DEFAULT_SLOW_QUERY_MILLIS);
+        int maxResultChars = Integer.getInteger("db.log.maxResultChars", DEFAULT_MAX_RESULT_CHARS);
+        int bufferSize = Integer.getInteger("db.log.bufferSize", DEFAULT_BUFFER_SIZE);
+        Writer out = new OutputStreamWriter(System.out, StandardCharsets.UTF_8) {
+            @Override
+            public void close() throws IOException {
+                // Closing the log must not close standard output.
+                flush();
+            }
+        };
+        String file = System.getProperty("db.log.file");
+        if (file != null && level != Level.OFF) {
+            try {
+                out = Files.newBufferedWriter(Paths.get(file), StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                System.err.println("Can't open query log " + file + ", logging to standard output: " + e.getMessage());
+            }
+        }
+        return new QueryLog(level, slowQueryMillis, maxResultChars, bufferSize, out);
+    }
+
+    // An unknown level is a configuration mistake that should not stop the server, so INFO is used instead.
+    private static Level parseLevel(String name) {
+        try {
+            return Level.valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown query log level " + name + ", logging at INFO");
+            return Level.INFO;
+        }
+    }
+
+    public boolean isEnabled(Level entryLevel) {
+        return entryLevel != Level.OFF && entryLevel.compareTo(level) <= 0;
+    }
+
+    /**
+     * Log a command once it has run.
+     * @param command Command text
+     * @param result Result text; only its first line is kept below DEBUG. Null for results that were streamed.
+     * @param status Status line of the result
+     * @param elapsedNanos Time taken to run the command
+     */
+    public void command(String command, String result, String status, long elapsedNanos) {
+        boolean slow = elapsedNanos >= slowQueryNanos;
+        boolean failed = status.startsWith("[ERROR]");
+        Level entryLevel = slow || failed ? Level.WARN : Level.INFO;
+        if (!isEnabled(entryLevel)) {
+            return;
+        }
+        // Copy no more of the result than will be written, so the buffer never holds large results.
+        String details = isEnabled(Level.DEBUG) && result != null ? truncate(result) : truncate(status);
+        enqueue(new Entry(entryLevel, System.currentTimeMillis(), slow ? "SLOW " : "", command, details, elapsedNanos));
+    }
+
+    // Log an event that is not a command, such as a new connection.
+    public void event(Level entryLevel, String message) {
+        if (isEnabled(entryLevel)) {
+            enqueue(new Entry(entryLevel, System.currentTimeMillis(), "", message, null, -1));
+        }
+    }
+
+    private String truncate(String text) {
+        if (text.length() <= maxResultChars) {
+            return text;
+        }
+        return text.substring(0, maxResultChars) + "... (" + text.length() + " chars)";
+    }
+
+    private synchronized void enqueue(Entry entry) {
+        if (closed) {
+            return;
+        }
+        if (size == ring.length) {
+            // The writer is behind: overwrite the oldest entry rather than make the caller wait.
+            head = (head + 1) % ring.length;
+            size--;
+            dropped++;
+            finished++;
+        }
+        ring[(head + size) % ring.length] = entry;
+        size++;
+        logged++;
+        notifyAll();
+    }
+
+    private void writeEntries() {
+        Entry[] batch = new Entry[ring.length];
+        while (true) {
+            int count;
+            long droppedSinceLastBatch;
+            synchronized (this) {
+                while (size == 0 && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        closed = true;
+                    }
+                }
+                if (size == 0) {
+                    notifyAll();
+                    return;
+                }
+                count = size;
+                for (int i = 0; i < count; i++) {
+                    batch[i] = ring[(head + i) % ring.length];
+                    ring[(head + i) % ring.length] = null;
+                }
+                head = (head + count) % ring.length;
+                size = 0;
+                droppedSinceLastBatch = dropped;
+                dropped = 0;
+            }
+            if (droppedSinceLastBatch > 0) {
+                out.println(Instant.now() + " WARN  " + droppedSinceLastBatch + " log entries dropped");
+            }
+            for (int i = 0; i < count; i++) {
+                batch[i].writeTo(out);
+                batch[i] = null;
+            }
+            out.flush();
+            synchronized (this) {
+                finished += count;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Wait until every entry logged so far has been written.
+     */
+    public synchronized void flush() throws InterruptedException {
+        long target = logged;
+        while (finished < target && writer.isAlive()) {
+            wait(100);
+        }
+    }
+
+    /**
+     * Write the remaining entries, stop the writer and close the output.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        out.close();
+    }
+
+    private static class Entry {
+        private final Level level;
+        private final long timestamp;
+        private final String prefix;
+        private final String message;
+        private final String details;
+        private final long elapsedNanos;
+
+        Entry(Level level, long timestamp, String prefix, String message, String details, long elapsedNanos) {
+            this.level = level;
+            this.timestamp = timestamp;
+            this.prefix = prefix;
+            this.message = message;
+            this.details = details;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        // One line per entry: time, level, then for commands the duration, the command and the result.
+        void writeTo(PrintWriter out) {
+            out.print(Instant.ofEpochMilli(timestamp));
+            out.print(' ');
+            out.print(String.format("%-5s ", level));
+            out.print(prefix);
+            if (elapsedNanos >= 0) {
+                out.print(String.format("%.3fms ", elapsedNanos / 1_000_000.0));
+            }
+            out.print(message);
+            if (details != null) {
+                out.print(" -> ");
+                out.print(details.replace(System.lineSeparator(), " | "));
+            }
+            out.println();
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package edu.uob.metrics;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Counters and latency histograms for one server, shared by every session:
+ * how long each phase of each command type takes, how many rows and bytes each
+ * table scan reads compared to the rows it returns, and the number of client
+ * connections. Components that keep their own counters, like the table and plan
+ * caches, are added as gauges. Everything is readable as one flat map of named
+ * values, used by SHOW STATS and the JMX bean.
+ */
+public class ServerMetrics {
+    public enum Phase {
+        PARSE, PLAN, EXECUTE, SERIALIZE;
+
+        String key() {
+            return name().toLowerCase();
+        }
+    }
+
+    private static final Set<String> COMMAND_TYPES = Set.of("SELECT", "UPDATE", "DELETE", "INSERT", "CREATE", "DROP",
+            "ALTER", "USE", "JOIN", "LOAD", "EXPLAIN", "PREPARE", "EXECUTE", "DEALLOCATE", "SHOW", "ANALYZE");
+
+    private final Map<String, CommandStats> commands = new ConcurrentHashMap<>();
+    private final Map<String, TableStats> tables = new ConcurrentHashMap<>();
+    private final Map<String, Supplier<Number>> gauges = new ConcurrentHashMap<>();
+    private final AtomicLong activeConnections = new AtomicLong();
+    private final LongAdder totalConnections = new LongAdder();
+
+    private static class CommandStats {
+        final LongAdder count = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final Map<Phase, LatencyHistogram> phases = new ConcurrentHashMap<>();
+    }
+
+    private static class TableStats {
+        final LongAdder scans = new LongAdder();
+        final LongAdder rowsScanned = new LongAdder();
+        final LongAdder rowsReturned = new LongAdder();
+        final LongAdder bytesRead = new LongAdder();
+    }
+
+    /**
+     * The type a command is counted under: its first word in upper case, or OTHER for anything that is
+     * not a command, so stray input cannot create an unbounded number of entries.
+     */
+    public static String commandType(String command) {
+        String trimmed = command.trim();
+        int end = 0;
+        while (end < trimmed.length() && Character.isLetter(trimmed.charAt(end))) {
+            end++;
+        }
+        String type = trimmed.substring(0, end).toUpperCase();
+        return COMMAND_TYPES.contains(type) ? type : "OTHER";
+    }
+
+    private CommandStats command(String type) {
+        return commands.computeIfAbsent(type, t -> new CommandStats());
+    }
+
+    private TableStats table(String key) {
+        return tables.computeIfAbsent(key, k -> new TableStats());
+    }
+
+    // Record the time one phase of a command took.
+    public void record(String type, Phase phase, long nanos) {
+        command(type).phases.computeIfAbsent(phase, p -> new LatencyHistogram()).record(nanos);
+    }
+
+    /**
+     * Record a finished command.
+     * @param type Command type, see {@link #commandType}
+     * @param nanos Time from receiving the command to having its result
+     * @param failed Whether the result was an error
+     */
+    public void commandExecuted(String type, long nanos, boolean failed) {
+        CommandStats stats = command(type);
+        stats.count.increment();
+        if (failed) {
+            stats.errors.increment();
+        }
+        record(type, Phase.EXECUTE, nanos);
+    }
+
+    /**
+     * Record a scan of a table by a query.
+     * @param tableKey Database and table name, e.g. "school/marks"
+     * @param rowsScanned Rows the query looked at
+     * @param rowsReturned Rows that matched
+     * @param bytesRead Bytes read from the table file, 0 if the table was in the table cache
+     */
+    public void tableScanned(String tableKey, long rowsScanned, long rowsReturned, long bytesRead) {
+        TableStats stats = table(tableKey);
+        stats.scans.increment();
+        stats.rowsScanned.add(rowsScanned);
+        stats.rowsReturned.add(rowsReturned);
+        stats.bytesRead.add(bytesRead);
+    }
+
+    // Record bytes read from a table's files outside a scan, e.g. loading the table into the cache.
+    public void tableBytesRead(String tableKey, long bytes) {
+        table(tableKey).bytesRead.add(bytes);
+    }
+
+    // Drop the figures of every table whose key starts with the prefix, e.g. when its database is dropped.
+    public void forgetTables(String prefix) {
+        tables.keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    public void connectionOpened() {
+        activeConnections.incrementAndGet();
+        totalConnections.increment();
+    }
+
+    public void connectionClosed() {
+        activeConnections.decrementAndGet();
+    }
+
+    // Add a value that is read when a snapshot is taken.
+    public void gauge(String name, Supplier<Number> value) {
+        gauges.put(name, value);
+    }
+
+    /**
+     * All current values by name. Counts are Longs; times are Doubles in milliseconds.
+     */
+    public Map<String, Number> snapshot() {
+        Map<String, Number> values = new TreeMap<>();
+        values.put("connections.active", activeConnections.get());
+        values.put("connections.total", totalConnections.sum());
+        commands.forEach((type, stats) -> {
+            String prefix = "command." + type + ".";
+            values.put(prefix + "count", stats.count.sum());
+            values.put(prefix + "errors", stats.errors.sum());
+            stats.phases.forEach((phase, histogram) -> {
+                String phasePrefix = prefix + phase.key() + ".";
+                values.put(phasePrefix + "count", histogram.getCount());
+                values.put(phasePrefix + "mean_ms", histogram.getMean() / 1e6);
+                values.put(phasePrefix + "p50_ms", histogram.getPercentile(50) / 1e6);
+                values.put(phasePrefix + "p90_ms", histogram.getPercentile(90) / 1e6);
+                values.put(phasePrefix + "p99_ms", histogram.getPercentile(99) / 1e6);
+                values.put(phasePrefix + "max_ms", histogram.getMax() / 1e6);
+            });
+        });
+        tables.forEach((key, stats) -> {
+            String prefix = "table." + key + ".";
+            values.put(prefix + "scans", stats.scans.sum());
+            values.put(prefix + "rows_scanned", stats.rowsScanned.sum());
+            values.put(prefix + "rows_returned", stats.rowsReturned.sum());
+            values.put(prefix + "bytes_read", stats.bytesRead.sum());
+        });
+        gauges.forEach((name, gauge) -> {
+            Number value = gauge.get();
+            values.put(name, value instanceof Double || value instanceof Float ? value.doubleValue() : value.longValue());
+        });
+        return values;
+    }
+
+    // Hit ratio of a cache, 0 before the first lookup.
+    public static double hitRatio(long hits, long misses) {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+}
@@ -0,0 +1,95 @@
+package edu.uob.model;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Replaces files in one step. Every rewrite of a table, index, metadata or log file goes
+ * through {@link #write}, which writes the new contents to a temporary file in the same
+ * folder, forces it to disk and then renames it over the old file. Anyone reading the
+ * file sees either the old version or the new one, never a partly written file, and a
+ * crash during the write leaves the old version in place.
+ */
+public class AtomicFile {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Numbers the temporary files, so no two writes in this server share one.
+    private static final AtomicLong TEMP_COUNTER = new AtomicLong();
+
+    private AtomicFile() {
+    }
+
+    /**
+     * Writes the contents of a file.
+     */
+    @FunctionalInterface
+    public interface Contents {
+        void writeTo(BufferedWriter writer) throws IOException;
+    }
+
+    /**
+     * Writes the contents of a binary file.
+     */
+    @FunctionalInterface
+    public interface BinaryContents {
+        void writeTo(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Replace a file (or create it) with new contents.
+     * @param target File to replace
+     * @param contents Writes the new contents
+     */
+    public static void write(File target, Contents contents) throws IOException {
+        writeBytes(target, out -> {
+            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+            contents.writeTo(writer);
+            writer.flush();
+        });
+    }
+
+    /**
+     * Replace a file (or create it) with new binary contents.
+     * @param target File to replace
+     * @param contents Writes the new contents
+     */
+    public static void writeBytes(File target, BinaryContents contents) throws IOException {
+        File directory = target.getAbsoluteFile().getParentFile();
+        // Starts with a dot so it is never mistaken for a table or index file. The number keeps writers that
+        // only hold the read lock of a table, such as ANALYZE, from writing to the same temporary file at once.
+        File temp = new File(directory, "." + target.getName() + "." + TEMP_COUNTER.incrementAndGet() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE))) {
+                contents.writeTo(out);
+                out.flush();
+                channel.force(true);
+            }
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+        syncDirectory(directory);
+    }
+
+    // Make the rename itself durable. Not every platform can open a folder for this, in which case it is skipped.
+    private static void syncDirectory(File directory) {
+        try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // The rename is still atomic, it may just not survive a power failure.
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package edu.uob.model;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * What ANALYZE found out about the values of one column: the number of distinct
+ * values, estimated with a {@link HyperLogLog} sketch, the number of empty values,
+ * and for the values that are numbers their minimum, maximum and an equi-depth
+ * histogram, whose bounds split the numbers into buckets holding the same number
+ * of values. The planner uses them to estimate the fraction of rows a comparison
+ * matches.
+ */
+public class ColumnStatistics {
+    static final int HISTOGRAM_BUCKETS = 16;
+    // Fraction of rows LIKE is assumed to match; the statistics say nothing about substrings.
+    private static final double LIKE_SELECTIVITY = 0.25;
+
+    private final long rows;
+    private final long distinct;
+    private final long empty;
+    private final long numeric;
+    // Bounds of the histogram buckets: the smallest number, the upper bound of each bucket and so the largest number.
+    private final double[] histogram;
+
+    ColumnStatistics(long rows, long distinct, long empty, long numeric, double[] histogram) {
+        this.rows = rows;
+        this.distinct = distinct;
+        this.empty = empty;
+        this.numeric = numeric;
+        this.histogram = histogram;
+    }
+
+    /**
+     * Collect the statistics of one column of a table.
+     * @param records Rows of the table
+     * @param column Position of the column
+     */
+    static ColumnStatistics compute(List<Record> records, int column) {
+        HyperLogLog distinctValues = new HyperLogLog();
+        double[] numbers = new double[records.size()];
+        int numeric = 0;
+        long empty = 0;
+        for (Record record : records) {
+            String value = record.getValue(column);
+            if (value.isEmpty()) {
+                empty++;
+                continue;
+            }
+            // == ignores case, so values that only differ in case count as one.
+            distinctValues.add(value.toLowerCase());
+            Double number = parseNumber(value);
+            if (number != null && !number.isNaN()) {
+                numbers[numeric++] = number;
+            }
+        }
+        numbers = Arrays.copyOf(numbers, numeric);
+        Arrays.sort(numbers);
+        double[] histogram = new double[0];
+        if (numeric > 0) {
+            int buckets = Math.min(HISTOGRAM_BUCKETS, numeric);
+            histogram = new double[buckets + 1];
+            for (int bound = 0; bound <= buckets; bound++) {
+                histogram[bound] = numbers[(int) ((long) (numeric - 1) * bound / buckets)];
+            }
+        }
+        long nonEmpty = records.size() - empty;
+        return new ColumnStatistics(records.size(), Math.min(distinctValues.estimate(), nonEmpty), empty, numeric,
+                histogram);
+    }
+
+    /**
+     * Estimate the fraction of rows a comparison on this column matches, following the rules of the
+     * compiled WHERE clause: ordering comparisons only match numbers, and == compares text ignoring case.
+     * @param operator ==, !=, &lt;, &gt;, &lt;=, &gt;= or LIKE
+     * @param value Value compared with
+     * @return Fraction between 0 and 1
+     */
+    public double selectivity(String operator, String value) {
+        if (rows == 0) {
+            return 0;
+        }
+        switch (operator) {
+            case "==":
+                return equalFraction(value);
+            case "!=":
+                return Math.max(0, 1 - equalFraction(value) - (double) empty / rows);
+            case "LIKE":
+                return LIKE_SELECTIVITY * (rows - empty) / rows;
+            case "<":
+            case "<=":
+                return belowFraction(value);
+            default:
+                Double bound = parseNumber(value);
+                return bound == null ? 0 : (double) numeric / rows - belowFraction(value);
+        }
+    }
+
+    private double equalFraction(String value) {
+        if (value.isEmpty()) {
+            return (double) empty / rows;
+        }
+        Double number = parseNumber(value);
+        if (number != null && numeric == rows - empty && numeric > 0
+                && (number < getMin() || number > getMax())) {
+            // Every value is a number and none is this one.
+            return 0;
+        }
+        return distinct == 0 ? 0 : (double) (rows - empty) / rows / distinct;
+    }
+
+    // Fraction of all rows holding a number below the value, interpolating within the histogram bucket it falls in.
+    private double belowFraction(String value) {
+        Double bound = parseNumber(value);
+        if (bound == null || numeric == 0) {
+            return 0;
+        }
+        double numericFraction = (double) numeric / rows;
+        int buckets = histogram.length - 1;
+        if (bound <= histogram[0]) {
+            return 0;
+        }
+        if (bound > histogram[buckets]) {
+            return numericFraction;
+        }
+        int bucket = 0;
+        while (bucket < buckets - 1 && bound > histogram[bucket + 1]) {
+            bucket++;
+        }
+        double low = histogram[bucket];
+        double high = histogram[bucket + 1];
+        double within = high > low ? (bound - low) / (high - low) : 0.5;
+        return numericFraction * (bucket + within) / buckets;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public long getDistinct() {
+        return distinct;
+    }
+
+    public long getEmpty() {
+        return empty;
+    }
+
+    public long getNumeric() {
+        return numeric;
+    }
+
+    // Smallest number in the column, NaN if it holds no numbers.
+    public double getMin() {
+        return numeric == 0 ? Double.NaN : histogram[0];
+    }
+
+    public double getMax() {
+        return numeric == 0 ? Double.NaN : histogram[histogram.length - 1];
+    }
+
+    double[] getHistogram() {
+        return histogram;
+    }
+
+    private static Double parseNumber(String value) {
+        // Skip the exception for values that cannot be numbers, which is the common case for text columns.
+        if (value.isEmpty()) return null;
+        char first = value.charAt(0);
+        if (first > ' ' && !Character.isDigit(first) && first != '-' && first != '+' && first != '.'
+                && first != 'N' && first != 'I') {
+            return null;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package edu.uob.model;
+
+/**
+ * Type of a column, declared after the column name in CREATE TABLE or ALTER TABLE ADD,
+ * e.g. CREATE TABLE marks (name TEXT, mark INT, pass BOOLEAN). Columns without a
+ * declared type are TEXT, which accepts any value.
+ *
+ * <p>Values are still stored as text, in a canonical form per type, so a typed
+ * column can be compared as numbers without checking every value and is stored
+ * compactly by a {@link ColumnarFile}. An empty value is a missing value and is
+ * allowed in every type, e.g. for rows that existed before ALTER TABLE ADD.
+ */
+public enum ColumnType {
+    INT, FLOAT, BOOLEAN, TEXT;
+
+    /**
+     * @param name Type name as written in a command, in any case
+     * @return The type, or null if there is no such type
+     */
+    public static ColumnType parse(String name) {
+        for (ColumnType type : values()) {
+            if (type.name().equalsIgnoreCase(name.trim())) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    public boolean isNumeric() {
+        return this == INT || this == FLOAT;
+    }
+
+    /**
+     * Check a value and bring it to the form it is stored in: INT as written by Long.toString,
+     * FLOAT as written by Double.toString and BOOLEAN as TRUE or FALSE.
+     * @param value Value as given in a command or data file
+     * @return The stored value, or null if it is not a value of this type
+     */
+    public String normalize(String value) {
+        if (value.isEmpty() || this == TEXT) {
+            return value;
+        }
+        try {
+            switch (this) {
+                case INT:
+                    return Long.toString(Long.parseLong(value));
+                case FLOAT:
+                    double number = Double.parseDouble(value);
+                    return Double.isFinite(number) ? Double.toString(number) : null;
+                default:
+                    return value.equalsIgnoreCase("TRUE") || value.equalsIgnoreCase("FALSE") ? value.toUpperCase() : null;
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
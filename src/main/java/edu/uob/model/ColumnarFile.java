@@ -0,0 +1,472 @@
+package edu.uob.model;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Binary column store of a table created with STORAGE=COLUMNAR, kept in table.col
+ * next to the table file.
+ *
+ * <p>Rows are stored in segments of up to {@link #SEGMENT_ROWS} rows. Within a
+ * segment every column is stored on its own, in the most compact of three encodings
+ * that gives back exactly the original text:
+ * <pre>
+ *   L  64-bit integers, for columns holding only integers in canonical form
+ *   D  doubles, for columns holding only finite numbers as Double.toString writes them
+ *   S  dictionary of the distinct strings, and one code per row
+ * </pre>
+ * Numeric columns also record their minimum and maximum, so a scan can skip whole
+ * segments that a WHERE clause cannot match. Each segment starts with the encoding,
+ * statistics and byte length of every column, so a scan can skip the columns it
+ * does not need without decoding them.
+ *
+ * <p>The .tab file still holds the header line and works as a delta store: INSERT
+ * appends rows to it as for any table, and rewriting the table moves them into
+ * the column store. Rows in the .tab file with an id not above the highest id in
+ * the column store were moved by a rewrite that was interrupted before the .tab
+ * file was cut back to its header, and are ignored.
+ */
+public class ColumnarFile implements ScannableTableFile {
+    public static final int SEGMENT_ROWS = 8192;
+
+    private static final int MAGIC = 0x434f4c31; // "COL1"
+    private static final byte LONG = 'L';
+    private static final byte DOUBLE = 'D';
+    private static final byte STRING = 'S';
+
+    private final File file;
+    private final File tableFile;
+    private final List<String> columns;
+    private final long maxId;
+    // Offset of the first segment.
+    private final long dataStart;
+
+    private ColumnarFile(File file, File tableFile, List<String> columns, long maxId, long dataStart) {
+        this.file = file;
+        this.tableFile = tableFile;
+        this.columns = columns;
+        this.maxId = maxId;
+        this.dataStart = dataStart;
+    }
+
+    public static File fileFor(File tableFile) {
+        String baseName = tableFile.getName().replace(".tab", "");
+        return new File(tableFile.getParentFile(), baseName + ".col");
+    }
+
+    /**
+     * Open the column store of a table and read its header.
+     * @param tableFile File of the table
+     */
+    public static ColumnarFile open(File tableFile) throws IOException {
+        File file = fileFor(tableFile);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a column store: " + file);
+            }
+            int columnCount = in.readInt();
+            // Magic number and column count.
+            long dataStart = 8;
+            List<String> columns = new ArrayList<>(columnCount);
+            for (int i = 0; i < columnCount; i++) {
+                String column = readString(in);
+                columns.add(column);
+                dataStart += 4 + column.getBytes(StandardCharsets.UTF_8).length;
+            }
+            long maxId = in.readLong();
+            return new ColumnarFile(file, tableFile, columns, maxId, dataStart + 8);
+        }
+    }
+
+    /**
+     * Write the rows of a table as a new column store, replacing the old one in one step.
+     * @param tableFile File of the table
+     * @param columns Columns of the table
+     * @param records Rows of the table
+     */
+    public static void write(File tableFile, List<String> columns, List<Record> records) throws IOException {
+        int idIndex = columns.indexOf("id");
+        long maxId = -1;
+        if (idIndex != -1) {
+            for (Record record : records) {
+                try {
+                    maxId = Math.max(maxId, Long.parseLong(record.getValue(idIndex)));
+                } catch (NumberFormatException ignored) {
+                    // Ids are always numbers unless the file was edited by hand.
+                }
+            }
+        }
+        long highestId = maxId;
+        AtomicFile.writeBytes(fileFor(tableFile), out -> {
+            out.writeInt(MAGIC);
+            out.writeInt(columns.size());
+            for (String column : columns) {
+                writeString(out, column);
+            }
+            out.writeLong(highestId);
+            for (int start = 0; start < records.size(); start += SEGMENT_ROWS) {
+                writeSegment(out, columns.size(), records.subList(start, Math.min(records.size(), start + SEGMENT_ROWS)));
+            }
+        });
+    }
+
+    private static void writeSegment(DataOutputStream out, int columnCount, List<Record> rows) throws IOException {
+        byte[][] chunks = new byte[columnCount][];
+        byte[] encodings = new byte[columnCount];
+        double[] min = new double[columnCount];
+        double[] max = new double[columnCount];
+        for (int column = 0; column < columnCount; column++) {
+            String[] values = new String[rows.size()];
+            for (int row = 0; row < values.length; row++) {
+                List<String> rowValues = rows.get(row).getValues();
+                values[row] = column < rowValues.size() ? rowValues.get(column) : "";
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream chunk = new DataOutputStream(bytes);
+            encodings[column] = encode(values, chunk, min, max, column);
+            chunk.flush();
+            chunks[column] = bytes.toByteArray();
+        }
+        out.writeInt(rows.size());
+        for (int column = 0; column < columnCount; column++) {
+            out.writeByte(encodings[column]);
+            out.writeDouble(min[column]);
+            out.writeDouble(max[column]);
+            out.writeInt(chunks[column].length);
+        }
+        for (byte[] chunk : chunks) {
+            out.write(chunk);
+        }
+    }
+
+    // Write one column of a segment in the most compact encoding that round-trips, and return the encoding.
+    private static byte encode(String[] values, DataOutputStream out, double[] min, double[] max, int column) throws IOException {
+        long[] longs = new long[values.length];
+        boolean allLongs = values.length > 0;
+        for (int i = 0; i < values.length && allLongs; i++) {
+            try {
+                longs[i] = Long.parseLong(values[i]);
+                allLongs = Long.toString(longs[i]).equals(values[i]);
+            } catch (NumberFormatException e) {
+                allLongs = false;
+            }
+        }
+        if (allLongs) {
+            long low = Long.MAX_VALUE;
+            long high = Long.MIN_VALUE;
+            for (long value : longs) {
+                out.writeLong(value);
+                low = Math.min(low, value);
+                high = Math.max(high, value);
+            }
+            min[column] = low;
+            max[column] = high;
+            return LONG;
+        }
+        double[] doubles = new double[values.length];
+        boolean allDoubles = values.length > 0;
+        for (int i = 0; i < values.length && allDoubles; i++) {
+            try {
+                doubles[i] = Double.parseDouble(values[i]);
+                allDoubles = Double.isFinite(doubles[i]) && Double.toString(doubles[i]).equals(values[i]);
+            } catch (NumberFormatException e) {
+                allDoubles = false;
+            }
+        }
+        if (allDoubles) {
+            double low = Double.POSITIVE_INFINITY;
+            double high = Double.NEGATIVE_INFINITY;
+            for (double value : doubles) {
+                out.writeDouble(value);
+                low = Math.min(low, value);
+                high = Math.max(high, value);
+            }
+            min[column] = low;
+            max[column] = high;
+            return DOUBLE;
+        }
+        Map<String, Integer> codes = new LinkedHashMap<>();
+        for (String value : values) {
+            codes.putIfAbsent(value, codes.size());
+        }
+        out.writeInt(codes.size());
+        for (String value : codes.keySet()) {
+            writeString(out, value);
+        }
+        for (String value : values) {
+            out.writeInt(codes.get(value));
+        }
+        min[column] = Double.NaN;
+        max[column] = Double.NaN;
+        return STRING;
+    }
+
+    /**
+     * Read every row: the column store, then the rows appended to the table file since it was written.
+     */
+    public List<Record> readAll() throws IOException {
+        boolean[] allColumns = new boolean[columns.size()];
+        Arrays.fill(allColumns, true);
+        List<Record> records = new ArrayList<>();
+        try (Scanner scanner = scan(allColumns, segment -> true)) {
+            while (scanner.hasNext()) {
+                records.add(new Record(new ArrayList<>(scanner.next())));
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Scan the rows of the table, decoding only some of the columns.
+     * @param needed Columns to decode; the values of the others are null
+     * @param segmentFilter Says whether a segment may hold matching rows, based on its statistics
+     * @return Rows in table order, as lists with one entry per column
+     */
+    @Override
+    public Scanner scan(boolean[] needed, Predicate<SegmentStats> segmentFilter) throws IOException {
+        return new Scanner(needed, segmentFilter);
+    }
+
+    @Override
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Statistics of one segment, used to skip segments a query cannot match.
+     */
+    public static class SegmentStats {
+        private final int rows;
+        private final byte[] encodings;
+        private final double[] min;
+        private final double[] max;
+
+        private SegmentStats(int rows, byte[] encodings, double[] min, double[] max) {
+            this.rows = rows;
+            this.encodings = encodings;
+            this.min = min;
+            this.max = max;
+        }
+
+        public int getRows() {
+            return rows;
+        }
+
+        // Whether every value of the column in this segment is a number, so min and max apply.
+        public boolean isNumeric(int column) {
+            return encodings[column] != STRING;
+        }
+
+        public double getMin(int column) {
+            return min[column];
+        }
+
+        public double getMax(int column) {
+            return max[column];
+        }
+    }
+
+    /**
+     * Reads rows one at a time, a segment at a time, followed by the rows of the table file.
+     */
+    public class Scanner implements RowScanner {
+        private final boolean[] needed;
+        private final Predicate<SegmentStats> segmentFilter;
+        private final DataInputStream in;
+        private BufferedReader deltaReader;
+        private String[][] segment;
+        private int segmentRows;
+        private int position;
+        private List<String> nextRow;
+        private long segmentsSkipped;
+        private long bytesRead;
+
+        private Scanner(boolean[] needed, Predicate<SegmentStats> segmentFilter) throws IOException {
+            this.needed = needed;
+            this.segmentFilter = segmentFilter;
+            this.in = new DataInputStream(new BufferedInputStream(new CountingInputStream(new FileInputStream(file)), 64 * 1024));
+            in.skipNBytes(dataStart);
+            segment = new String[columns.size()][];
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (nextRow == null) {
+                try {
+                    nextRow = advance();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return nextRow != null;
+        }
+
+        @Override
+        public List<String> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            List<String> row = nextRow;
+            nextRow = null;
+            return row;
+        }
+
+        private List<String> advance() throws IOException {
+            while (deltaReader == null) {
+                if (position < segmentRows) {
+                    String[] row = new String[columns.size()];
+                    for (int column = 0; column < row.length; column++) {
+                        if (needed[column]) row[column] = segment[column][position];
+                    }
+                    position++;
+                    return Arrays.asList(row);
+                }
+                if (!readSegment()) {
+                    openDelta();
+                }
+            }
+            return readDeltaRow();
+        }
+
+        // Load the next segment the filter accepts; false when there are no more segments.
+        private boolean readSegment() throws IOException {
+            while (true) {
+                int rows;
+                try {
+                    rows = in.readInt();
+                } catch (EOFException e) {
+                    return false;
+                }
+                byte[] encodings = new byte[columns.size()];
+                double[] min = new double[columns.size()];
+                double[] max = new double[columns.size()];
+                int[] lengths = new int[columns.size()];
+                for (int column = 0; column < encodings.length; column++) {
+                    encodings[column] = in.readByte();
+                    min[column] = in.readDouble();
+                    max[column] = in.readDouble();
+                    lengths[column] = in.readInt();
+                }
+                if (!segmentFilter.test(new SegmentStats(rows, encodings, min, max))) {
+                    long total = 0;
+                    for (int length : lengths) total += length;
+                    in.skipNBytes(total);
+                    segmentsSkipped++;
+                    continue;
+                }
+                for (int column = 0; column < encodings.length; column++) {
+                    if (needed[column]) {
+                        segment[column] = decode(encodings[column], rows);
+                    } else {
+                        in.skipNBytes(lengths[column]);
+                    }
+                }
+                segmentRows = rows;
+                position = 0;
+                return true;
+            }
+        }
+
+        private String[] decode(byte encoding, int rows) throws IOException {
+            String[] values = new String[rows];
+            if (encoding == LONG) {
+                for (int i = 0; i < rows; i++) values[i] = Long.toString(in.readLong());
+            } else if (encoding == DOUBLE) {
+                for (int i = 0; i < rows; i++) values[i] = Double.toString(in.readDouble());
+            } else {
+                String[] dictionary = new String[in.readInt()];
+                for (int i = 0; i < dictionary.length; i++) dictionary[i] = readString(in);
+                for (int i = 0; i < rows; i++) values[i] = dictionary[in.readInt()];
+            }
+            return values;
+        }
+
+        private void openDelta() throws IOException {
+            deltaReader = new BufferedReader(new InputStreamReader(new CountingInputStream(new FileInputStream(tableFile)),
+                    StandardCharsets.UTF_8));
+            // Skip the header.
+            deltaReader.readLine();
+        }
+
+        private List<String> readDeltaRow() throws IOException {
+            int idIndex = columns.indexOf("id");
+            String line;
+            while ((line = deltaReader.readLine()) != null) {
+                if (line.isBlank()) continue;
+                String[] values = line.split("\t", -1);
+                List<String> row = new ArrayList<>(columns.size());
+                for (int i = 0; i < columns.size(); i++) {
+                    row.add(i < values.length ? values[i].trim() : "");
+                }
+                if (idIndex != -1 && isMovedRow(row.get(idIndex))) continue;
+                return row;
+            }
+            return null;
+        }
+
+        private boolean isMovedRow(String id) {
+            try {
+                return Long.parseLong(id) <= maxId;
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+
+        // Number of segments the filter ruled out so far.
+        public long getSegmentsSkipped() {
+            return segmentsSkipped;
+        }
+
+        @Override
+        public long getBytesRead() {
+            return bytesRead;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+            if (deltaReader != null) {
+                deltaReader.close();
+            }
+        }
+
+        // Counts the bytes actually read from a file; skipped bytes are not counted.
+        private class CountingInputStream extends FilterInputStream {
+            CountingInputStream(InputStream in) {
+                super(in);
+            }
+
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b != -1) bytesRead++;
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int read = super.read(buffer, offset, length);
+                if (read > 0) bytesRead += read;
+                return read;
+            }
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
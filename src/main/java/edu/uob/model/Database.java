@@ -1,59 +1,134 @@
 package edu.uob.model;
 
+import edu.uob.metrics.ServerMetrics;
+import edu.uob.protocol.TextResultWriter;
+
 import java.io.*;
-import java.nio.file.Files;
 import java.util.*;
 import java.io.File;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
-public class Database {
+public class Database implements Closeable {
     private File rootPath;
-    private File currentDatabasePath;
-    private String currentDatabase = null;
+    private final ServerMetrics metrics = new ServerMetrics();
+    private final TableCache tableCache = new TableCache(TableCache.DEFAULT_MAX_ROWS, metrics);
+    private final Map<String, TableMetadata> tableMetadata = new ConcurrentHashMap<>();
+    private final Map<String, ReentrantReadWriteLock> tableLocks = new ConcurrentHashMap<>();
+    // Version of each table, keyed like the table locks; see getTableVersion.
+    private final Map<String, TableVersion> tableVersions = new ConcurrentHashMap<>();
+    // One write-ahead log per database folder, opened on first use.
+    private final Map<String, WriteAheadLog> writeAheadLogs = new HashMap<>();
+    // How often logged changes are written into the table files (milliseconds).
+    private static final long CHECKPOINT_INTERVAL_MS = Long.getLong("db.wal.checkpointMs", 1000);
+    private final ScheduledExecutorService checkpointer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "checkpointer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Uncached row tables at least this large (bytes) are scanned by mapping their file instead of loading them.
+    private long mappedScanMinBytes = Long.getLong("db.scan.mappedMinBytes", 64L * 1024 * 1024);
 
     public Database(String rootDirectory) {
         this.rootPath = new File(rootDirectory);
         if (!rootPath.exists()) {
             rootPath.mkdirs();
         }
+        metrics.gauge("cache.table.hits", tableCache::getHits);
+        metrics.gauge("cache.table.misses", tableCache::getMisses);
+        metrics.gauge("cache.table.hit_ratio",
+                () -> ServerMetrics.hitRatio(tableCache.getHits(), tableCache.getMisses()));
+        checkpointer.scheduleWithFixedDelay(this::checkpointQuietly, CHECKPOINT_INTERVAL_MS, CHECKPOINT_INTERVAL_MS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    public File getRootPath() {
+        return rootPath;
+    }
+
+    /**
+     * Stop the background checkpoints, write the logged changes into the table files and close the
+     * write-ahead logs. The database cannot be used afterwards.
+     */
+    @Override
+    public void close() {
+        checkpointer.shutdown();
+        try {
+            checkpointer.awaitTermination(CHECKPOINT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        checkpointQuietly();
+        synchronized (writeAheadLogs) {
+            for (WriteAheadLog wal : writeAheadLogs.values()) {
+                wal.close();
+            }
+            writeAheadLogs.clear();
+        }
     }
 
-    public String createDatabase(String dbName) {
+    public String createDatabase(Session session, String dbName) {
         File databaseDir = new File(rootPath, dbName.toLowerCase().trim());
         if (databaseDir.exists()) {
             return "[ERROR] Database already exists";
         }
         if (databaseDir.mkdirs()) {
-            String switchResult = useDatabase(dbName);
+            String switchResult = useDatabase(session, dbName);
             return switchResult;
         }
         return "[ERROR] Failed to create database";
     }
 
-    public String useDatabase(String dbName) {
+    public String useDatabase(Session session, String dbName) {
         //System.out.println(dbName);
         File databaseDir = new File(rootPath, dbName.toLowerCase().trim());
         if (!databaseDir.exists() || !databaseDir.isDirectory()) {
             return "[ERROR] Database does not exist";
         }
 
-        this.currentDatabase = dbName.toLowerCase().trim();
-        this.currentDatabasePath = databaseDir;
+        session.setCurrentDatabase(dbName.toLowerCase().trim(), databaseDir);
 
         return "[OK] Switched to database: " + dbName;
     }
 
-    public void setCurrentDatabasePath(String path) {
-        this.currentDatabasePath = new File(path);
+    // Create table: automatically add "id" at the front of the header.
+    public String createTable(Session session, String tableName, List<String> columns) {
+        return createTable(session, tableName, columns, Collections.emptyMap(), false);
     }
 
-    // Create table: automatically add "id" at the front of the header.
-    public String createTable(String tableName, List<String> columns) {
-        if (this.currentDatabasePath == null) {
+    /**
+     * Create a table.
+     * @param tableName Table name
+     * @param columns Column names, without the id
+     * @param columnTypes Declared types of the typed columns
+     * @param columnar Store the rows in a {@link ColumnarFile} instead of the tab-separated table file
+     * @return Result message
+     */
+    public String createTable(Session session, String tableName, List<String> columns,
+                              Map<String, ColumnType> columnTypes, boolean columnar) {
+        Lock lock = getTableLock(session, tableName).writeLock();
+        lock.lock();
+        try {
+            return createTableLocked(session, tableName, columns, columnTypes, columnar);
+        } finally {
+            tableChanged(session, tableName);
+            lock.unlock();
+        }
+    }
+
+    private String createTableLocked(Session session, String tableName, List<String> columns,
+                                     Map<String, ColumnType> columnTypes, boolean columnar) {
+        if (session.getCurrentDatabasePath() == null) {
             return "[ERROR] No database selected: Database.createTable";
         }
         // Clean tableName
         String cleanedTableName = tableName.replaceAll("[^a-zA-Z0-9]", "").toLowerCase().trim();
-        File tableFile = new File(this.currentDatabasePath, cleanedTableName + ".tab");
+        File tableFile = new File(session.getCurrentDatabasePath(), cleanedTableName + ".tab");
         if (tableFile.exists()) {
             return "[ERROR] Table already exists";
         }
@@ -65,8 +140,19 @@ public class Database {
         for (String col : columns) {
             newHeaderColumns.add(col.trim().replaceAll(";", ""));
         }
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(tableFile))) {
-            writer.write(String.join("\t", newHeaderColumns));
+        try {
+            if (columnar) {
+                ColumnarFile.write(tableFile, newHeaderColumns, Collections.emptyList());
+            }
+            AtomicFile.write(tableFile, writer -> {
+                writer.write(String.join("\t", newHeaderColumns));
+                writer.newLine();
+            });
+        } catch (IOException e) {
+            return "[ERROR] Failed to create table";
+        }
+        try {
+            tableMetadata.put(tableCacheKey(session, cleanedTableName), TableMetadata.create(tableFile, columnTypes));
         } catch (IOException e) {
             return "[ERROR] Failed to create table";
         }
@@ -74,19 +160,46 @@ public class Database {
         return "[OK] Table created";
     }
 
-    public File getCurrentDatabasePath() {
-        return this.currentDatabasePath;
+    // Delete table
+    public String dropTable(Session session, String tableName) {
+        Lock lock = getTableLock(session, tableName).writeLock();
+        lock.lock();
+        try {
+            return dropTableLocked(session, tableName);
+        } finally {
+            tableChanged(session, tableName);
+            lock.unlock();
+        }
     }
 
-    // Delete table
-    public String dropTable(String tableName) {
-        if (currentDatabasePath == null) {
+    private String dropTableLocked(Session session, String tableName) {
+        if (session.getCurrentDatabasePath() == null) {
             return "[ERROR] No database selected: Database.dropTable1";
         }
-        File tableFile = new File(currentDatabasePath, tableName.toLowerCase().trim().replace(";", "") + ".tab");
+        File tableFile = new File(session.getCurrentDatabasePath(), tableName.toLowerCase().trim().replace(";", "") + ".tab");
         if (!tableFile.exists()) {
             return "[ERROR] Table does not exist";
         }
+        String cleanedTableName = tableFile.getName().replace(".tab", "");
+        try {
+            // Logged changes of the dropped table must not be applied to a new table with the same name.
+            WriteAheadLog wal = getWriteAheadLog(session);
+            wal.awaitDurable(wal.logRewritten(cleanedTableName));
+        } catch (IOException e) {
+            return "[ERROR] Failed to drop table";
+        }
+        invalidateTable(session, cleanedTableName);
+        TableMetadata metadata = tableMetadata.remove(tableCacheKey(session, cleanedTableName));
+        if (metadata != null) {
+            metadata.delete();
+        } else {
+            TableMetadata.metaFileFor(tableFile).delete();
+        }
+        for (File indexFile : SecondaryIndex.indexFilesFor(tableFile)) {
+            indexFile.delete();
+        }
+        ColumnarFile.fileFor(tableFile).delete();
+        TableStatistics.fileFor(tableFile).delete();
         if (tableFile.delete()) {
             return "[OK] Table dropped";
         } else {
@@ -95,41 +208,36 @@ public class Database {
     }
 
     // Delete column
-    public String alterTableDropColumn(String tableName, String columnName) throws IOException {
-        if (currentDatabasePath == null) {
+    public String alterTableDropColumn(Session session, String tableName, String columnName) throws IOException {
+        Lock lock = getTableLock(session, tableName).writeLock();
+        lock.lock();
+        try {
+            return alterTableDropColumnLocked(session, tableName, columnName);
+        } finally {
+            tableChanged(session, tableName);
+            lock.unlock();
+        }
+    }
+
+    private String alterTableDropColumnLocked(Session session, String tableName, String columnName) throws IOException {
+        if (session.getCurrentDatabasePath() == null) {
             return "[ERROR] No database selected: Database.alterTableDropColumn";
         }
-        File tableFile = new File(currentDatabasePath, tableName.toLowerCase().trim() + ".tab");
-        if (!tableFile.exists()) {
+        Table table = getTable(session, tableName);
+        if (table == null) {
             return "[ERROR] Table does not exist";
         }
-        List<String> lines = Files.readAllLines(tableFile.toPath());
-        if (lines.isEmpty()) {
+        List<String> columns = table.getColumns();
+        if (columns.isEmpty()) {
             return "[ERROR] Table is empty";
         }
-        // Read the original header
-        String headerLine = lines.get(0);
-        //System.out.println("[DEBUG] Original table header: " + headerLine);
-
-        // Split header columns and trim each column name.
-        String[] columns = headerLine.split("\t");
-        List<String> trimmedColumns = new ArrayList<>();
-        for (int i = 0; i < columns.length; i++) {
-            String trimmed = columns[i].trim();
-            trimmedColumns.add(trimmed);
-            //System.out.println("[DEBUG] Processed Header Column " + i + ": '" + trimmed + "'");
-        }
-        //System.out.println("[DEBUG] Full processed header: " + trimmedColumns);
 
         // Trim the incoming columnName when comparing.
         String targetColumn = columnName.trim();
-        //System.out.println("[DEBUG] Column to drop (target): '" + targetColumn + "'");
-
         int columnIndex = -1;
-        for (int i = 0; i < trimmedColumns.size(); i++) {
-            if (trimmedColumns.get(i).equalsIgnoreCase(targetColumn)) {
+        for (int i = 0; i < columns.size(); i++) {
+            if (columns.get(i).equalsIgnoreCase(targetColumn)) {
                 columnIndex = i;
-                //System.out.println("[DEBUG] Found column '" + targetColumn + "' at index: " + i);
                 break;
             }
         }
@@ -141,83 +249,200 @@ public class Database {
         if (targetColumn.equalsIgnoreCase("id")) {
             return "[ERROR] Cannot drop primary key";
         }
-        // Construct a new header that does not contain the deleted columns.
-        StringBuilder newHeader = new StringBuilder();
-        for (int i = 0; i < trimmedColumns.size(); i++) {
-            if (i == columnIndex) continue;
-            if (newHeader.length() > 0) {
-                newHeader.append("\t");
-            }
-            newHeader.append(trimmedColumns.get(i));
-        }
-        //System.out.println("[DEBUG] New table header after dropping column: " + newHeader.toString());
-
-        /**
-         * Construct new content: the first line is a new header, 
-         * and the data of the corresponding column is deleted in each other line.
-        */ 
-        List<String> newLines = new ArrayList<>();
-        newLines.add(newHeader.toString());
-        for (int j = 1; j < lines.size(); j++) {
-            String line = lines.get(j);
-            String[] values = line.split("\t");
-            StringBuilder newLine = new StringBuilder();
-            for (int i = 0; i < values.length; i++) {
-                if (i == columnIndex) continue;
-                if (newLine.length() > 0) {
-                    newLine.append("\t");
-                }
-                newLine.append(values[i].trim());
-            }
-            //System.out.println("[DEBUG] New row " + j + ": " + newLine.toString());
-            newLines.add(newLine.toString());
+        // deleteColumn shrinks the table's column list, so keep the name of the dropped column first.
+        String droppedColumn = columns.get(columnIndex);
+        table.deleteColumn(targetColumn);
+        saveTable(session, table);
+        if (table.getStatistics() != null) {
+            table.getStatistics().save();
         }
+        TableMetadata metadata = getTableMetadata(session, table.getName());
+        metadata.removeColumnType(droppedColumn);
+        metadata.save();
+        return "[OK] Column dropped";
+    }
 
-        // Write the updated content back to the file.
-        Files.write(tableFile.toPath(), newLines);
 
-        // Re-read the file to confirm whether the new header was written successfully.
-        List<String> checkLines = Files.readAllLines(tableFile.toPath());
-        if (!checkLines.isEmpty()) {
-            System.out.println("[DEBUG] Verified new table header from file: " + checkLines.get(0));
-        } else {
-            System.out.println("[DEBUG] Error: Table file is empty after writing new header.");
+
+    /**
+     * Build a persisted secondary index on a column of a table.
+     * @param tableName Table name
+     * @param indexName Index name, unique within the table
+     * @param columnName Column to index
+     * @return Result message
+     */
+    public String createIndex(Session session, String tableName, String indexName, String columnName) {
+        Lock lock = getTableLock(session, tableName).writeLock();
+        lock.lock();
+        try {
+            return createIndexLocked(session, tableName, indexName, columnName);
+        } finally {
+            lock.unlock();
         }
+    }
 
-        return "[OK] Column dropped";
+    private String createIndexLocked(Session session, String tableName, String indexName, String columnName) {
+        if (session.getCurrentDatabasePath() == null) {
+            return "[ERROR] No database selected: Database.createIndex";
+        }
+        try {
+            Table table = getTable(session, tableName);
+            if (table == null) {
+                return "[ERROR] Table does not exist";
+            }
+            String targetColumn = columnName.trim();
+            if (table.getColumnIndex(targetColumn) == -1) {
+                return "[ERROR] Column does not exist";
+            }
+            if (targetColumn.equals("id")) {
+                return "[ERROR] id is already indexed";
+            }
+            if (table.getIndex(indexName) != null) {
+                return "[ERROR] Index already exists";
+            }
+            table.createIndex(indexName, targetColumn);
+            return "[OK] Index created";
+        } catch (IOException e) {
+            invalidateTable(session, tableName);
+            return "[ERROR] Failed to create index";
+        }
     }
 
+    // Delete secondary index
+    public String dropIndex(Session session, String tableName, String indexName) {
+        Lock lock = getTableLock(session, tableName).writeLock();
+        lock.lock();
+        try {
+            if (session.getCurrentDatabasePath() == null) {
+                return "[ERROR] No database selected: Database.dropIndex";
+            }
+            Table table = getTable(session, tableName);
+            if (table == null) {
+                return "[ERROR] Table does not exist";
+            }
+            if (!table.dropIndex(indexName)) {
+                return "[ERROR] Index does not exist";
+            }
+            return "[OK] Index dropped";
+        } catch (IOException e) {
+            return "[ERROR] Failed to read table";
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Collect the statistics of every column of a table for the planner and store them next to the table.
+     * @param tableName Table name
+     * @return One row per column with its number of distinct values, empty values and smallest and largest number
+     */
+    public String analyzeTable(Session session, String tableName) {
+        // Only the statistics file is written, so queries can go on reading the table.
+        Lock lock = getTableLock(session, tableName).readLock();
+        lock.lock();
+        try {
+            if (session.getCurrentDatabasePath() == null) {
+                return "[ERROR] No database selected: Database.analyzeTable";
+            }
+            Table table = getTable(session, tableName);
+            if (table == null) {
+                return "[ERROR] Table does not exist";
+            }
+            TableStatistics statistics = TableStatistics.compute(table);
+            statistics.save();
+            table.setStatistics(statistics);
+            TextResultWriter.Builder result = new TextResultWriter.Builder();
+            result.status("[OK]");
+            result.header(List.of("column", "distinct", "empty", "min", "max"));
+            for (String column : table.getColumns()) {
+                ColumnStatistics stats = statistics.getColumn(column);
+                result.row(List.of(column, String.valueOf(stats.getDistinct()), String.valueOf(stats.getEmpty()),
+                        formatNumber(stats.getMin()), formatNumber(stats.getMax())));
+            }
+            return result.toString();
+        } catch (IOException e) {
+            return "[ERROR] Failed to analyze table";
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // A number as it would be written in a table, empty for NaN.
+    private static String formatNumber(double number) {
+        if (Double.isNaN(number)) {
+            return "";
+        }
+        return number == Math.rint(number) && Math.abs(number) < 1e15 ? String.valueOf((long) number) : String.valueOf(number);
+    }
 
+    /**
+     * Get the statistics of a table in the session's current database, from the cached table if there is one.
+     * @return The statistics, or null if the table has not been analyzed
+     */
+    public TableStatistics getTableStatistics(Session session, String tableName) {
+        if (session.getCurrentDatabasePath() == null) {
+            return null;
+        }
+        String cleanedTableName = tableName.toLowerCase().trim();
+        Table cached = tableCache.getIfPresent(tableCacheKey(session, cleanedTableName));
+        if (cached != null) {
+            return cached.getStatistics();
+        }
+        return TableStatistics.load(new File(session.getCurrentDatabasePath(), cleanedTableName + ".tab"));
+    }
 
     // Consolidated table
-    public String joinTables(String table1, String table2, String column1, String column2) throws IOException {
-        if (currentDatabasePath == null) {
+    public String joinTables(Session session, String table1, String table2, String column1, String column2) throws IOException {
+        return joinTables(session, table1, table2, column1, column2, PlanNode.Mode.NONE);
+    }
+
+    /**
+     * Join two tables of the session's current database on one column each.
+     * @param mode NONE for the joined rows, PLAN for EXPLAIN, ANALYZE for EXPLAIN ANALYZE
+     * @return The joined table, or the plan for EXPLAIN
+     */
+    public String joinTables(Session session, String table1, String table2, String column1, String column2,
+                             PlanNode.Mode mode) throws IOException {
+        // Always lock the two tables in the same order so concurrent joins cannot deadlock.
+        ReentrantReadWriteLock firstLock = getTableLock(session, table1);
+        ReentrantReadWriteLock secondLock = getTableLock(session, table2);
+        if (tableLockKey(session, table1).compareTo(tableLockKey(session, table2)) > 0) {
+            ReentrantReadWriteLock swap = firstLock;
+            firstLock = secondLock;
+            secondLock = swap;
+        }
+        firstLock.readLock().lock();
+        try {
+            secondLock.readLock().lock();
+            try {
+                return joinTablesLocked(session, table1, table2, column1, column2, mode);
+            } finally {
+                secondLock.readLock().unlock();
+            }
+        } finally {
+            firstLock.readLock().unlock();
+        }
+    }
+
+    private String joinTablesLocked(Session session, String table1, String table2, String column1, String column2,
+                                    PlanNode.Mode mode) throws IOException {
+        if (session.getCurrentDatabasePath() == null) {
             return "[ERROR] No database selected: Database.selectFromTable";
         }
-        File table1File = new File(currentDatabasePath, table1.replaceAll("[^a-zA-Z0-9_]", "").toLowerCase().trim() + ".tab");
-        File table2File = new File(currentDatabasePath, table2.replaceAll("[^a-zA-Z0-9_]", "").toLowerCase().trim() + ".tab");
-        List<String> table1Lines = Files.readAllLines(table1File.toPath());
-        List<String> table2Lines = Files.readAllLines(table2File.toPath());
-        List<String> table1Columns = List.of(table1Lines.get(0).split("\t"));
-        List<String> table2Columns = List.of(table2Lines.get(0).split("\t"));
-        table1Lines.remove(0);
-        table2Lines.remove(0);
+        long start = System.nanoTime();
+        Table leftTable = getTable(session, table1.replaceAll("[^a-zA-Z0-9_]", ""));
+        long leftNanos = System.nanoTime() - start;
+        Table rightTable = getTable(session, table2.replaceAll("[^a-zA-Z0-9_]", ""));
+        long rightNanos = System.nanoTime() - start - leftNanos;
+        if (leftTable == null || rightTable == null) {
+            return "[ERROR] Table does not exist";
+        }
+        List<String> table1Columns = leftTable.getColumns();
+        List<String> table2Columns = rightTable.getColumns();
         int column1Index = table1Columns.indexOf(column1);
         int column2Index = table2Columns.indexOf(column2);
-        int newId = 0;
-        List<Record> newRecords = new ArrayList<>();
-        for (String table1Line : table1Lines) {
-            List<String> line1Values = List.of(table1Line.split("\t"));
-            for (String table2Line : table2Lines) {
-                List<String> line2Values = List.of(table2Line.split("\t"));
-                if (line1Values.get(column1Index).equals(line2Values.get(column2Index))) {
-                    List<String> newRow = new ArrayList<>();
-                    newRow.add(String.valueOf(++newId));
-                    newRow.addAll(line1Values);
-                    newRow.addAll(line2Values);
-                    newRecords.add(new Record(newRow));
-                }
-            }
+        if (column1Index == -1 || column2Index == -1) {
+            return "[ERROR] Column does not exist";
         }
         List<String> newColumns = new ArrayList<>();
         newColumns.add("id");
@@ -227,70 +452,597 @@ public class Database {
         for (String table2Column : table2Columns) {
             newColumns.add(table2 + "." + table2Column);
         }
-        Table joinedTable = new Table(newColumns, newRecords);
+        // Work out which of the combined columns are kept before building any rows,
+        // so the dropped join and id columns are never copied.
+        List<Integer> keptPositions = new ArrayList<>();
+        for (int i = 0; i < newColumns.size(); i++) {
+            keptPositions.add(i);
+        }
         List<String> deletedColumns = new ArrayList<>();
         deletedColumns.add(table1 + "." + column1);
         deletedColumns.add(table2 + "." + column2);
         deletedColumns.add(table1 + ".id");
         deletedColumns.add(table2 + ".id");
         for (String column : deletedColumns) {
-            joinedTable.deleteColumn(column);
+            int deletedIndex = -1;
+            for (int idx = 0; idx < newColumns.size(); idx++) {
+                if (newColumns.get(idx).equalsIgnoreCase(column)) deletedIndex = idx;
+            }
+            if (deletedIndex != -1) {
+                newColumns.remove(deletedIndex);
+                keptPositions.remove(deletedIndex);
+            }
+        }
+
+        List<Record> leftRecords = leftTable.getRecords();
+        List<Record> rightRecords = rightTable.getRecords();
+        // Distinct join keys of each side, -1 if the table has not been analyzed.
+        long leftKeys = distinctValues(leftTable, column1);
+        long rightKeys = distinctValues(rightTable, column2);
+        JoinEngine engine = new JoinEngine();
+        PlanNode plan = null;
+        if (mode != PlanNode.Mode.NONE) {
+            plan = new PlanNode(engine.describe(leftRecords.size(), leftKeys, rightRecords.size(), rightKeys) + " on "
+                    + table1 + "." + column1 + " == " + table2 + "." + column2);
+            if (leftKeys > 0 && rightKeys > 0) {
+                // Each key of the side with fewer keys is assumed to appear on the other side too.
+                plan.estimateRows((double) leftRecords.size() * rightRecords.size() / Math.max(leftKeys, rightKeys));
+            } else {
+                // Without statistics on the join columns, assume each row of the larger table matches one row of the other.
+                plan.estimateRows(Math.max(leftRecords.size(), rightRecords.size()));
+            }
+            PlanNode leftScan = plan.addChild(new PlanNode("Full scan on " + leftTable.getName()));
+            leftScan.estimateRows(leftRecords.size());
+            PlanNode rightScan = plan.addChild(new PlanNode("Full scan on " + rightTable.getName()));
+            rightScan.estimateRows(rightRecords.size());
+            if (mode == PlanNode.Mode.PLAN) {
+                return plan.toResult(mode, 0);
+            }
+            leftScan.addRows(leftRecords.size());
+            leftScan.addTime(leftNanos);
+            rightScan.addRows(rightRecords.size());
+            rightScan.addTime(rightNanos);
+        }
+        long joinStart = System.nanoTime();
+        long[] matches = engine.join(leftRecords, column1Index, leftKeys, rightRecords, column2Index, rightKeys);
+        int leftWidth = table1Columns.size();
+        List<Record> newRecords = new ArrayList<>(matches.length);
+        for (int m = 0; m < matches.length; m++) {
+            List<String> line1Values = leftRecords.get(JoinEngine.leftOf(matches[m])).getValues();
+            List<String> line2Values = rightRecords.get(JoinEngine.rightOf(matches[m])).getValues();
+            List<String> newRow = new ArrayList<>(keptPositions.size());
+            for (int position : keptPositions) {
+                if (position == 0) {
+                    newRow.add(String.valueOf(m + 1));
+                } else if (position <= leftWidth) {
+                    newRow.add(line1Values.get(position - 1));
+                } else {
+                    newRow.add(line2Values.get(position - 1 - leftWidth));
+                }
+            }
+            newRecords.add(new Record(newRow));
+        }
+        if (plan != null) {
+            plan.addRows(matches.length);
+            plan.addTime(System.nanoTime() - joinStart + leftNanos + rightNanos);
+            return plan.toResult(mode, System.nanoTime() - start);
         }
+        Table joinedTable = new Table(newColumns, newRecords);
 
         return "[OK]" + System.lineSeparator() + joinedTable.getTableString();
     }
 
+    // Estimated distinct values of a column from the table's statistics, -1 if there are none.
+    private static long distinctValues(Table table, String column) {
+        TableStatistics statistics = table.getStatistics();
+        ColumnStatistics stats = statistics == null ? null : statistics.getColumn(column);
+        return stats == null ? -1 : stats.getDistinct();
+    }
+
     // polling list
-    public String selectFromTable(String tableName) {
-        if (currentDatabasePath == null) {
-            return "[ERROR] No database selected: Database.selectFromTable";
-        }
-        // Handle table names and remove illegal characters.
-        File tableFile = new File(currentDatabasePath, tableName.replaceAll("[^a-zA-Z0-9]", "").toLowerCase().trim() + ".tab");
-        if (!tableFile.exists()) {
-            return "[ERROR] Table does not exist";
+    public String selectFromTable(Session session, String tableName) {
+        Lock lock = getTableLock(session, tableName).readLock();
+        lock.lock();
+        try {
+            return selectFromTableLocked(session, tableName);
+        } finally {
+            lock.unlock();
         }
+    }
 
+    private String selectFromTableLocked(Session session, String tableName) {
+        if (session.getCurrentDatabasePath() == null) {
+            return "[ERROR] No database selected: Database.selectFromTable";
+        }
         try {
-            List<String> lines = Files.readAllLines(tableFile.toPath());
-            if (lines.isEmpty()) {
+            // Handle table names and remove illegal characters.
+            Table table = getTable(session, tableName.replaceAll("[^a-zA-Z0-9]", ""));
+            if (table == null) {
+                return "[ERROR] Table does not exist";
+            }
+            if (table.getColumns().isEmpty()) {
                 return "[ERROR] Table is empty";
             }
-            String data = String.join(System.lineSeparator(), lines);
-            return "[OK] " + data;
+            return "[OK] " + table.getTableString().trim();
         } catch (IOException e) {
             return "[ERROR] Failed to read table";
         }
     }
 
     // Insert data
-    public String insertIntoTable(String tableName, List<String> values) {
-        if (currentDatabasePath == null) {
+    public String insertIntoTable(Session session, String tableName, List<String> values) {
+        List<List<String>> rows = new ArrayList<>();
+        rows.add(values);
+        return insertIntoTable(session, tableName, rows, false);
+    }
+
+    /**
+     * Insert one or more rows with a single append to the table file, the table itself is not read.
+     * @param tableName Table name
+     * @param rows Values of each row, without the id
+     * @param sync Whether to force the batch to disk before returning
+     * @return Result message
+     */
+    public String insertIntoTable(Session session, String tableName, List<List<String>> rows, boolean sync) {
+        Lock lock = getTableLock(session, tableName).writeLock();
+        lock.lock();
+        try {
+            return insertIntoTableLocked(session, tableName, rows, sync);
+        } finally {
+            tableChanged(session, tableName);
+            lock.unlock();
+        }
+    }
+
+    private String insertIntoTableLocked(Session session, String tableName, List<List<String>> rows, boolean sync) {
+        if (session.getCurrentDatabasePath() == null) {
             return "[ERROR] No database selected: Database: insertIntoTable";
         }
         String cleanedTableName = tableName.toLowerCase().trim();
-        File tableFile = new File(currentDatabasePath, cleanedTableName + ".tab");
+        File tableFile = new File(session.getCurrentDatabasePath(), cleanedTableName + ".tab");
         if (!tableFile.exists()) {
             return "[ERROR] Table does not exist";
         }
 
         try {
-            List<String> lines = Files.readAllLines(tableFile.toPath());
-            int nextId = lines.size();
-            List<String> newRow = new ArrayList<>();
-            newRow.add(String.valueOf(nextId));
-            newRow.addAll(values);
-
-            try (BufferedWriter writer = new BufferedWriter(new FileWriter(tableFile, true))) {
-                writer.newLine();
-                writer.write(String.join("\t", newRow));
+            TableMetadata metadata = getTableMetadata(session, cleanedTableName);
+            Table cachedTable = tableCache.getIfPresent(tableCacheKey(session, cleanedTableName));
+            if (metadata.hasTypedColumns()) {
+                // Check every row before handing out ids, so a bad value rejects the whole INSERT.
+                List<ColumnType> types = metadata.getColumnTypes(
+                        cachedTable != null ? cachedTable.getColumns() : Table.readColumns(tableFile));
+                List<List<String>> typedRows = new ArrayList<>(rows.size());
+                for (List<String> values : rows) {
+                    List<String> typedValues = new ArrayList<>(values.size());
+                    for (int i = 0; i < values.size(); i++) {
+                        ColumnType type = i + 1 < types.size() ? types.get(i + 1) : ColumnType.TEXT;
+                        String value = type.normalize(values.get(i));
+                        if (value == null) {
+                            return "[ERROR] Invalid " + type + " value: " + values.get(i);
+                        }
+                        typedValues.add(value);
+                    }
+                    typedRows.add(typedValues);
+                }
+                rows = typedRows;
+            }
+            List<Record> records = new ArrayList<>(rows.size());
+            for (List<String> values : rows) {
+                List<String> newRow = new ArrayList<>(values.size() + 1);
+                newRow.add(String.valueOf(metadata.allocateId()));
+                newRow.addAll(values);
+                records.add(new Record(newRow));
+            }
+            if (cachedTable != null) {
+                cachedTable.addRecords(records, sync);
+            } else {
+                Table.appendRecords(tableFile, records, sync);
+            }
+            metadata.rowsAdded(records.size());
+            if (sync) {
+                metadata.save();
             }
             return "[OK] Insert successful";
         } catch (IOException e) {
+            invalidateTable(session, cleanedTableName);
+            tableMetadata.remove(tableCacheKey(session, cleanedTableName));
             return "[ERROR] Insert failed";
         }
     }
 
+    /**
+     * Bulk load a tab-separated file into a table. Rows are streamed from the data file
+     * straight into the table file and made durable with a single fsync at the end.
+     * @param tableName Table name
+     * @param dataFile File with one row of values (without the id) per line
+     * @return Result message
+     */
+    public String loadIntoTable(Session session, String tableName, File dataFile) {
+        Lock lock = getTableLock(session, tableName).writeLock();
+        lock.lock();
+        try {
+            return loadIntoTableLocked(session, tableName, dataFile);
+        } finally {
+            tableChanged(session, tableName);
+            lock.unlock();
+        }
+    }
+
+    private String loadIntoTableLocked(Session session, String tableName, File dataFile) {
+        if (session.getCurrentDatabasePath() == null) {
+            return "[ERROR] No database selected: Database.loadIntoTable";
+        }
+        String cleanedTableName = tableName.toLowerCase().trim();
+        File tableFile = new File(session.getCurrentDatabasePath(), cleanedTableName + ".tab");
+        if (!tableFile.exists()) {
+            return "[ERROR] Table does not exist";
+        }
+        if (!dataFile.isFile()) {
+            return "[ERROR] Data file does not exist";
+        }
+
+        String key = tableCacheKey(session, cleanedTableName);
+        try {
+            List<String> header = Table.readColumns(tableFile);
+            int valueCount = Math.max(0, header.size() - 1);
+            TableMetadata metadata = getTableMetadata(session, cleanedTableName);
+            List<ColumnType> types = metadata.getColumnTypes(header);
+            long rowsLoaded;
+            String error = null;
+            try (BufferedReader dataReader = new BufferedReader(new FileReader(dataFile));
+                 TableAppender appender = new TableAppender(tableFile)) {
+                try {
+                    String line;
+                    int lineNumber = 0;
+                    while ((line = dataReader.readLine()) != null) {
+                        lineNumber++;
+                        if (line.isBlank()) continue;
+                        String[] values = line.split("\t", -1);
+                        if (values.length != valueCount) {
+                            error = "[ERROR] Wrong number of values on line " + lineNumber + " of data file";
+                            break;
+                        }
+                        List<String> newRow = new ArrayList<>(valueCount + 1);
+                        newRow.add(null);
+                        for (int i = 0; i < values.length; i++) {
+                            String value = types.get(i + 1).normalize(values[i].trim());
+                            if (value == null) {
+                                error = "[ERROR] Invalid " + types.get(i + 1) + " value on line " + lineNumber + " of data file";
+                                break;
+                            }
+                            newRow.add(value);
+                        }
+                        if (error != null) {
+                            break;
+                        }
+                        newRow.set(0, String.valueOf(metadata.allocateId()));
+                        appender.append(new Record(newRow));
+                    }
+                } catch (IOException e) {
+                    appender.rollback();
+                    throw e;
+                }
+                if (error != null) {
+                    // A load either adds the whole file or nothing, so a failed load can simply be run again.
+                    appender.rollback();
+                } else {
+                    appender.commit();
+                }
+                rowsLoaded = appender.getRowsWritten();
+            }
+            if (error != null) {
+                // Reload the metadata, taking back the ids handed out to the discarded rows.
+                tableMetadata.remove(key);
+                return error + ", no rows loaded";
+            }
+            metadata.rowsAdded(rowsLoaded);
+            metadata.save();
+            if (ColumnarFile.fileFor(tableFile).exists()) {
+                // Move the loaded rows out of the table file into the column store straight away.
+                tableCache.invalidate(key);
+                Table table = getTable(session, cleanedTableName);
+                saveTable(session, table);
+            }
+            return "[OK] Loaded " + rowsLoaded + " rows";
+        } catch (IOException e) {
+            tableMetadata.remove(key);
+            return "[ERROR] Load failed";
+        } finally {
+            // Rows were appended behind the cache's back, so drop any cached copy.
+            tableCache.invalidate(key);
+        }
+    }
+
+    /**
+     * Get the metadata (next id and row count) of a table in the session's current database,
+     * loading it from its sidecar file on first use.
+     * @param tableName Table name
+     * @return The table metadata
+     */
+    public TableMetadata getTableMetadata(Session session, String tableName) throws IOException {
+        String cleanedTableName = tableName.toLowerCase().trim();
+        String key = tableCacheKey(session, cleanedTableName);
+        TableMetadata metadata = tableMetadata.get(key);
+        if (metadata == null) {
+            metadata = TableMetadata.load(new File(session.getCurrentDatabasePath(), cleanedTableName + ".tab"));
+            tableMetadata.put(key, metadata);
+        }
+        return metadata;
+    }
+
+    /**
+     * Get a table of the session's current database, served from the table cache when possible.
+     * @param tableName Table name
+     * @return The table, or null if no database is selected or the table does not exist
+     */
+    public Table getTable(Session session, String tableName) throws IOException {
+        if (session.getCurrentDatabasePath() == null) {
+            return null;
+        }
+        String cleanedTableName = tableName.toLowerCase().trim();
+        File tableFile = new File(session.getCurrentDatabasePath(), cleanedTableName + ".tab");
+        if (!tableFile.exists()) {
+            invalidateTable(session, cleanedTableName);
+            return null;
+        }
+        return tableCache.get(tableCacheKey(session, cleanedTableName), cleanedTableName, tableFile,
+                getWriteAheadLog(session));
+    }
+
+    /**
+     * Get a table file that a query can scan in place, reading just the columns it needs instead of loading
+     * the whole table: the column store of a columnar table, or the mapped table file of a row table of at
+     * least {@link #setMappedScanMinBytes} bytes. Smaller row tables are loaded, so the next query finds them
+     * in the cache. Only used when the file holds the current rows: the table is not cached (a cached copy is
+     * faster to read and may be newer) and the write-ahead log has no changes for it. Tables with secondary
+     * indexes are loaded instead, so the indexes can be used.
+     * Call with the table's read or write lock held.
+     * @param tableName Table name
+     * @return The file to scan, or null if the table has to be read through {@link #getTable}
+     */
+    public ScannableTableFile getScannableFile(Session session, String tableName) throws IOException {
+        if (session.getCurrentDatabasePath() == null) {
+            return null;
+        }
+        String cleanedTableName = tableName.toLowerCase().trim();
+        File tableFile = new File(session.getCurrentDatabasePath(), cleanedTableName + ".tab");
+        boolean columnar = ColumnarFile.fileFor(tableFile).exists();
+        if (!tableFile.exists() || (!columnar && tableFile.length() < mappedScanMinBytes)
+                || tableCache.getIfPresent(tableCacheKey(session, cleanedTableName)) != null
+                || getWriteAheadLog(session).hasRecords(cleanedTableName)
+                || SecondaryIndex.indexFilesFor(tableFile).length > 0) {
+            return null;
+        }
+        return columnar ? ColumnarFile.open(tableFile) : MappedTableFile.open(tableFile);
+    }
+
+    public void setMappedScanMinBytes(long mappedScanMinBytes) {
+        this.mappedScanMinBytes = mappedScanMinBytes;
+    }
+
+    /**
+     * Get the declared types of columns of a table in the session's current database.
+     * @param columns Column names
+     * @return One type per column, TEXT for columns without a declared type
+     */
+    public List<ColumnType> getColumnTypes(Session session, String tableName, List<String> columns) throws IOException {
+        return getTableMetadata(session, tableName).getColumnTypes(columns);
+    }
+
+    // Write a modified table back to disk, dropping it from the cache if the write fails.
+    public void saveTable(Session session, Table table) throws IOException {
+        try {
+            TableMetadata metadata = getTableMetadata(session, table.getName());
+            table.saveToFile();
+            metadata.setRowCount(table.getRecords().size());
+            metadata.save();
+            getWriteAheadLog(session).logRewritten(table.getName());
+        } catch (IOException e) {
+            invalidateTable(session, table.getName());
+            throw e;
+        }
+    }
+
+    /**
+     * Log rows changed by an UPDATE instead of rewriting the table file. Call with the table's write lock held,
+     * after the cached table has been changed, then wait for the returned LSN with {@link #awaitDurable}.
+     * @param table Table the rows belong to
+     * @param records Updated rows
+     * @return LSN of the last record written
+     */
+    public long logUpdates(Session session, Table table, Collection<Record> records) throws IOException {
+        tableChanged(session, table.getName());
+        try {
+            return getWriteAheadLog(session).logUpdates(table, records);
+        } catch (IOException e) {
+            // Drop the changed copy, the table is reloaded from its file and the log.
+            invalidateTable(session, table.getName());
+            throw e;
+        }
+    }
+
+    /**
+     * Log rows removed by a DELETE instead of rewriting the table file, like {@link #logUpdates}.
+     * @param table Table the rows were removed from
+     * @param records Removed rows
+     * @return LSN of the last record written
+     */
+    public long logDeletes(Session session, Table table, Collection<Record> records) throws IOException {
+        tableChanged(session, table.getName());
+        try {
+            long lsn = getWriteAheadLog(session).logDeletes(table, records);
+            getTableMetadata(session, table.getName()).setRowCount(table.getRecords().size());
+            return lsn;
+        } catch (IOException e) {
+            invalidateTable(session, table.getName());
+            throw e;
+        }
+    }
+
+    /**
+     * Wait until a logged change is on disk. Call without holding the table lock, so that sessions committing
+     * at the same time can share one fsync.
+     * @param lsn LSN returned by {@link #logUpdates} or {@link #logDeletes}
+     */
+    public void awaitDurable(Session session, long lsn) throws IOException {
+        getWriteAheadLog(session).awaitDurable(lsn);
+    }
+
+    // Get the write-ahead log of the session's current database, opening it (and recovering it) on first use.
+    public WriteAheadLog getWriteAheadLog(Session session) throws IOException {
+        File databaseDir = session.getCurrentDatabasePath();
+        synchronized (writeAheadLogs) {
+            WriteAheadLog wal = writeAheadLogs.get(databaseDir.getName());
+            if (wal == null) {
+                wal = WriteAheadLog.open(databaseDir);
+                writeAheadLogs.put(databaseDir.getName(), wal);
+            }
+            return wal;
+        }
+    }
+
+    /**
+     * Write every table with logged changes back to its file and drop the log records it now contains.
+     * Runs in the background every db.wal.checkpointMs milliseconds; only one checkpoint runs at a time.
+     */
+    public synchronized void checkpoint() throws IOException {
+        List<WriteAheadLog> logs;
+        synchronized (writeAheadLogs) {
+            logs = new ArrayList<>(writeAheadLogs.values());
+        }
+        for (WriteAheadLog wal : logs) {
+            WriteAheadLog.Checkpoint checkpoint = wal.beginCheckpoint();
+            if (checkpoint == null) continue;
+            Session session = new Session();
+            session.setCurrentDatabase(wal.getDirectory().getName(), wal.getDirectory());
+            try {
+                for (String tableName : checkpoint.getTables()) {
+                    Lock lock = getTableLock(session, tableName).writeLock();
+                    lock.lock();
+                    try {
+                        Table table = getTable(session, tableName);
+                        if (table != null) {
+                            // Rewriting the file with the rows already read does not change the table, so the
+                            // version stays the same unless the file had changed before.
+                            TableVersion version = tableVersion(session, tableName);
+                            boolean unchanged = version.fileUnchanged(table.getFile());
+                            saveTable(session, table);
+                            if (unchanged) {
+                                version.rememberFile(table.getFile());
+                            }
+                        }
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+            } catch (IOException e) {
+                wal.abortCheckpoint(checkpoint);
+                throw e;
+            }
+            wal.finishCheckpoint(checkpoint);
+        }
+    }
+
+    private void checkpointQuietly() {
+        try {
+            checkpoint();
+        } catch (IOException | RuntimeException e) {
+            // The records stay in the log and the next checkpoint tries again.
+        }
+    }
+
+    /**
+     * Get the lock guarding a table of the session's current database. Readers (SELECT, JOIN) share the
+     * read lock, so they run in parallel; anything that modifies the table takes the write lock.
+     * @param session Session whose current database holds the table
+     * @param tableName Table name
+     * @return The table's read/write lock
+     */
+    public ReentrantReadWriteLock getTableLock(Session session, String tableName) {
+        return tableLocks.computeIfAbsent(tableLockKey(session, tableName), key -> new ReentrantReadWriteLock());
+    }
+
+    private String tableLockKey(Session session, String tableName) {
+        String databaseName = session.getCurrentDatabasePath() == null ? "" : session.getCurrentDatabasePath().getName();
+        return databaseName + "/" + tableName.replaceAll("[^a-zA-Z0-9_]", "").toLowerCase();
+    }
+
+    public void invalidateTable(Session session, String tableName) {
+        tableCache.invalidate(tableCacheKey(session, tableName.toLowerCase().trim()));
+        tableChanged(session, tableName);
+    }
+
+    // Version of a table, with the state of its file when the version was last read.
+    private static class TableVersion {
+        final AtomicLong version = new AtomicLong();
+        private long lastModified = -1;
+        private long fileLength = -1;
+
+        synchronized boolean fileUnchanged(File tableFile) {
+            return tableFile.lastModified() == lastModified && tableFile.length() == fileLength;
+        }
+
+        synchronized void rememberFile(File tableFile) {
+            lastModified = tableFile.lastModified();
+            fileLength = tableFile.length();
+        }
+    }
+
+    private TableVersion tableVersion(Session session, String tableName) {
+        return tableVersions.computeIfAbsent(tableLockKey(session, tableName), key -> new TableVersion());
+    }
+
+    /**
+     * Get the version of a table in the session's current database. The version increases with every
+     * command that changes the table, and whenever its file has changed since the version was last read,
+     * which also catches changes made outside the server. A result read at one version is still valid
+     * while the table has the same version.
+     * @param tableName Table name
+     * @return Current version of the table
+     */
+    public long getTableVersion(Session session, String tableName) {
+        TableVersion version = tableVersion(session, tableName);
+        File tableFile = new File(session.getCurrentDatabasePath(), tableName.toLowerCase().trim() + ".tab");
+        synchronized (version) {
+            if (!version.fileUnchanged(tableFile)) {
+                version.rememberFile(tableFile);
+                version.version.incrementAndGet();
+            }
+            return version.version.get();
+        }
+    }
+
+    // Called for every write to a table, whether or not it succeeded; an extra increment only costs a cache miss.
+    private void tableChanged(Session session, String tableName) {
+        tableVersion(session, tableName).version.incrementAndGet();
+    }
+
+    private String tableCacheKey(Session session, String tableName) {
+        return session.getCurrentDatabasePath().getName() + "/" + tableName;
+    }
+
+    public TableCache getTableCache() {
+        return tableCache;
+    }
+
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Record a query's scan of a table in the session's current database.
+     * @param rowsScanned Rows the query looked at
+     * @param rowsReturned Rows that matched
+     * @param bytesRead Bytes read from the table file, 0 if the table was in the table cache
+     */
+    public void recordScan(Session session, String tableName, long rowsScanned, long rowsReturned, long bytesRead) {
+        if (session.getCurrentDatabasePath() == null) {
+            return;
+        }
+        metrics.tableScanned(tableCacheKey(session, tableName.toLowerCase().trim()), rowsScanned, rowsReturned,
+                bytesRead);
+    }
+
     // Check whether the database exists.
     public boolean databaseExists(String dbName) {
         File databaseDir = new File(rootPath, dbName.toLowerCase());
@@ -299,10 +1051,45 @@ public class Database {
 
     // Delete database
     public String dropDatabase(String dbName) {
+        String prefix = dbName.toLowerCase().trim().replace(";", "") + "/";
+        List<String> lockKeys = new ArrayList<>();
+        for (String key : tableLocks.keySet()) {
+            if (key.startsWith(prefix)) lockKeys.add(key);
+        }
+        Collections.sort(lockKeys);
+        List<Lock> heldLocks = new ArrayList<>();
+        try {
+            for (String key : lockKeys) {
+                Lock lock = tableLocks.get(key).writeLock();
+                lock.lock();
+                heldLocks.add(lock);
+            }
+            return dropDatabaseLocked(dbName);
+        } finally {
+            for (Lock lock : heldLocks) {
+                lock.unlock();
+            }
+        }
+    }
+
+    private String dropDatabaseLocked(String dbName) {
         File databaseDir = new File(rootPath, dbName.toLowerCase().trim().replace(";", ""));
         if (!databaseDir.exists()) {
             return "[ERROR] Database does not exist";
         }
+        tableCache.invalidatePrefix(databaseDir.getName() + "/");
+        metrics.forgetTables(databaseDir.getName() + "/");
+        // Versions are never reset, so a result of a table in the dropped database cannot match a new table.
+        tableVersions.forEach((key, version) -> {
+            if (key.startsWith(databaseDir.getName() + "/")) version.version.incrementAndGet();
+        });
+        synchronized (writeAheadLogs) {
+            WriteAheadLog wal = writeAheadLogs.remove(databaseDir.getName());
+            if (wal != null) {
+                wal.close();
+            }
+        }
+        tableMetadata.keySet().removeIf(key -> key.startsWith(databaseDir.getName() + "/"));
         if (deleteDirectory(databaseDir)) {
             return "[OK] Database dropped";
         }
@@ -319,50 +1106,52 @@ public class Database {
         return dir.delete();
     }
 
-    public String getCurrentDatabase() {
-        return currentDatabase;
+    // Add column
+    /**
+     * Add a column to a table; existing rows get an empty value.
+     * @param type Declared type of the new column
+     */
+    public String alterTableAddColumn(Session session, String tableName, String columnName, ColumnType type) {
+        Lock lock = getTableLock(session, tableName).writeLock();
+        lock.lock();
+        try {
+            return alterTableAddColumnLocked(session, tableName, columnName, type);
+        } finally {
+            tableChanged(session, tableName);
+            lock.unlock();
+        }
     }
 
-    // Add column
-    public String alterTableAddColumn(String tableName, String columnName) {
-        if (currentDatabasePath == null) {
+    private String alterTableAddColumnLocked(Session session, String tableName, String columnName, ColumnType type) {
+        if (session.getCurrentDatabasePath() == null) {
             return "[ERROR] No database selected: Database.alterTableAddColumn";
         }
-        File tableFile = new File(currentDatabasePath, tableName.toLowerCase().trim() + ".tab");
-        if (!tableFile.exists()) {
-            return "[ERROR] Table does not exist";
-        }
-        List<String> lines;
+        Table table;
         try {
-            lines = Files.readAllLines(tableFile.toPath());
+            table = getTable(session, tableName);
         } catch (IOException e) {
             return "[ERROR] Failed to read table";
         }
-        if (lines.isEmpty()) {
+        if (table == null) {
+            return "[ERROR] Table does not exist";
+        }
+        if (table.getColumns().isEmpty()) {
             return "[ERROR] Table is empty";
         }
-        String headerLine = lines.get(0);
-        String[] columns = headerLine.split("\t");
-        for (String col : columns) {
+        for (String col : table.getColumns()) {
             if (col.equalsIgnoreCase(columnName.trim())) {
                 return "[ERROR] Duplicate column name: " + columnName;
             }
         }
-        String newHeader = headerLine + "\t" + columnName.trim().toLowerCase();
-        List<String> newLines = new ArrayList<>();
-        newLines.add(newHeader);
-        for (int i = 1; i < lines.size(); i++) {
-            newLines.add(lines.get(i) + "\t ");
-        }
+        table.addColumn(columnName.trim().toLowerCase());
         try {
-            Files.write(tableFile.toPath(), newLines);
+            saveTable(session, table);
+            TableMetadata metadata = getTableMetadata(session, table.getName());
+            metadata.setColumnType(columnName.trim().toLowerCase(), type);
+            metadata.save();
         } catch (IOException e) {
             return "[ERROR] Failed to alter table";
         }
         return "[OK] Column added";
     }
 }
-
-
-
-
@@ -0,0 +1,59 @@
+package edu.uob.model;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Estimates the number of distinct values in a column in fixed memory, so
+ * ANALYZE does not need a set of every value it has seen. Each value is hashed
+ * to 64 bits; the first {@link #PRECISION} bits pick one of the registers, which
+ * keeps the longest run of leading zeros seen in the remaining bits. The standard
+ * error of the estimate is about 1.04 / sqrt(registers), here under 2%.
+ */
+class HyperLogLog {
+    private static final int PRECISION = 12;
+    private static final int REGISTERS = 1 << PRECISION;
+
+    private final byte[] registers = new byte[REGISTERS];
+
+    void add(String value) {
+        long hash = hash(value);
+        int register = (int) (hash >>> (64 - PRECISION));
+        // A marker bit stops the count at the end of the hash when the remaining bits are all zero.
+        long remaining = (hash << PRECISION) | (1L << (PRECISION - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(remaining) + 1);
+        if (rank > registers[register]) {
+            registers[register] = rank;
+        }
+    }
+
+    long estimate() {
+        double sum = 0;
+        int zeros = 0;
+        for (byte rank : registers) {
+            sum += 1.0 / (1L << rank);
+            if (rank == 0) zeros++;
+        }
+        double alpha = 0.7213 / (1 + 1.079 / REGISTERS);
+        double estimate = alpha * REGISTERS * REGISTERS / sum;
+        if (estimate <= 2.5 * REGISTERS && zeros > 0) {
+            // Few values: counting the empty registers is more accurate.
+            estimate = REGISTERS * Math.log((double) REGISTERS / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    // 64-bit FNV-1a of the UTF-8 bytes, mixed with the MurmurHash3 finalizer so every bit depends on every byte.
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,213 @@
+package edu.uob.model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the pairs of rows of two tables whose join columns are equal.
+ *
+ * <p>The input with the smaller hash table, the one with fewer distinct join keys
+ * when the tables have statistics and otherwise the smaller one, is loaded into a
+ * hash table on its join column and the other input probes it, so each side is
+ * read once. When even the smaller input has more rows than the memory budget
+ * (db.join.memoryBudgetRows, default 500000), no hash table is built: both inputs
+ * are instead sorted on the join column and merged. The budget only bounds the
+ * hash table. Either way the inputs are the tables already in memory, the sort
+ * keeps the sorted row positions and join keys of each side in arrays, and every
+ * matching pair is held until the join returns.
+ *
+ * <p>Matches are returned as (left position, right position) pairs encoded in a
+ * long and ordered by left row, then right row, which is the order the old
+ * nested loop produced, whichever strategy was used.
+ */
+class JoinEngine {
+    static final int DEFAULT_MEMORY_BUDGET_ROWS = 500_000;
+    // Size of a hash table entry relative to the chain link every build row takes.
+    private static final double HASH_ENTRY_COST = 3;
+
+    private final int memoryBudgetRows;
+    private String strategy;
+
+    JoinEngine() {
+        this(Integer.getInteger("db.join.memoryBudgetRows", DEFAULT_MEMORY_BUDGET_ROWS));
+    }
+
+    JoinEngine(int memoryBudgetRows) {
+        this.memoryBudgetRows = memoryBudgetRows;
+    }
+
+    /**
+     * Join two lists of records on one column each, using the number of distinct join keys of each side
+     * to decide which side to build the hash table on.
+     * @param left Records of the left table
+     * @param leftColumn Join column of the left table
+     * @param leftKeys Estimated distinct values of the left join column, -1 if unknown
+     * @param right Records of the right table
+     * @param rightColumn Join column of the right table
+     * @param rightKeys Estimated distinct values of the right join column, -1 if unknown
+     * @return Matching pairs; use {@link #leftOf(long)} and {@link #rightOf(long)} to decode them
+     */
+    long[] join(List<Record> left, int leftColumn, long leftKeys, List<Record> right, int rightColumn, long rightKeys) {
+        if (Math.min(left.size(), right.size()) > memoryBudgetRows) {
+            strategy = "Sort-merge join";
+            return sortMergeJoin(left, leftColumn, right, rightColumn);
+        }
+        strategy = "Hash join";
+        if (buildOnRight(left.size(), leftKeys, right.size(), rightKeys)) {
+            return hashJoin(left, leftColumn, right, rightColumn, false);
+        }
+        return hashJoin(right, rightColumn, left, leftColumn, true);
+    }
+
+    // How join pairs inputs of these sizes, as shown by EXPLAIN.
+    String describe(int leftRows, long leftKeys, int rightRows, long rightKeys) {
+        if (Math.min(leftRows, rightRows) > memoryBudgetRows) {
+            return "Sort-merge join";
+        }
+        return buildOnRight(leftRows, leftKeys, rightRows, rightKeys)
+                ? "Hash join building on the right table" : "Hash join building on the left table";
+    }
+
+    /**
+     * Every row of both sides is inserted or probed once whichever side is built, so the choice only changes
+     * the size of the hash table: one entry per distinct key, plus one chain link per build row. Without
+     * statistics every row is taken to have its own key, which builds on the smaller input.
+     */
+    private static boolean buildOnRight(int leftRows, long leftKeys, int rightRows, long rightKeys) {
+        return buildSize(rightRows, rightKeys) <= buildSize(leftRows, leftKeys);
+    }
+
+    private static double buildSize(int rows, long keys) {
+        return HASH_ENTRY_COST * (keys < 0 ? rows : keys) + rows;
+    }
+
+    // Load one input into a hash table and probe it with the other.
+    private long[] hashJoin(List<Record> probe, int probeColumn, List<Record> build, int buildColumn, boolean buildIsLeft) {
+        // Rows with the same key are chained through next[], in ascending row order.
+        Map<String, Integer> heads = new HashMap<>(build.size() * 2);
+        int[] next = new int[build.size()];
+        for (int i = build.size() - 1; i >= 0; i--) {
+            Integer head = heads.put(build.get(i).getValue(buildColumn), i);
+            next[i] = head == null ? -1 : head;
+        }
+        PairBuffer pairs = new PairBuffer();
+        for (int p = 0; p < probe.size(); p++) {
+            Integer head = heads.get(probe.get(p).getValue(probeColumn));
+            if (head == null) continue;
+            for (int b = head; b != -1; b = next[b]) {
+                pairs.add(buildIsLeft ? pair(b, p) : pair(p, b));
+            }
+        }
+        long[] result = pairs.toArray();
+        if (buildIsLeft) {
+            // Probing the right side yields right-major order.
+            Arrays.sort(result);
+        }
+        return result;
+    }
+
+    private long[] sortMergeJoin(List<Record> left, int leftColumn, List<Record> right, int rightColumn) {
+        String[] leftKeys = keys(left, leftColumn);
+        String[] rightKeys = keys(right, rightColumn);
+        int[] leftOrder = sortedPositions(leftKeys);
+        int[] rightOrder = sortedPositions(rightKeys);
+        PairBuffer pairs = new PairBuffer();
+        int l = 0;
+        int r = 0;
+        while (l < leftOrder.length && r < rightOrder.length) {
+            String leftKey = leftKeys[leftOrder[l]];
+            int compare = leftKey.compareTo(rightKeys[rightOrder[r]]);
+            if (compare < 0) {
+                l++;
+            } else if (compare > 0) {
+                r++;
+            } else {
+                int leftEnd = l;
+                while (leftEnd < leftOrder.length && leftKeys[leftOrder[leftEnd]].equals(leftKey)) leftEnd++;
+                int rightEnd = r;
+                while (rightEnd < rightOrder.length && rightKeys[rightOrder[rightEnd]].equals(leftKey)) rightEnd++;
+                for (int i = l; i < leftEnd; i++) {
+                    for (int j = r; j < rightEnd; j++) {
+                        pairs.add(pair(leftOrder[i], rightOrder[j]));
+                    }
+                }
+                l = leftEnd;
+                r = rightEnd;
+            }
+        }
+        long[] result = pairs.toArray();
+        Arrays.sort(result);
+        return result;
+    }
+
+    // The join column of every row, so sorting and merging do not look each value up again.
+    private static String[] keys(List<Record> records, int column) {
+        String[] keys = new String[records.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = records.get(i).getValue(column);
+        }
+        return keys;
+    }
+
+    // Row positions ordered by their keys, merge sorted on int arrays to avoid boxing every position.
+    private static int[] sortedPositions(String[] keys) {
+        int[] positions = new int[keys.length];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = i;
+        }
+        int[] buffer = new int[keys.length];
+        for (int width = 1; width < positions.length; width *= 2) {
+            for (int from = 0; from < positions.length - width; from += 2 * width) {
+                int middle = from + width;
+                int to = Math.min(from + 2 * width, positions.length);
+                int a = from;
+                int b = middle;
+                for (int i = from; i < to; i++) {
+                    if (b >= to || (a < middle && keys[positions[a]].compareTo(keys[positions[b]]) <= 0)) {
+                        buffer[i] = positions[a++];
+                    } else {
+                        buffer[i] = positions[b++];
+                    }
+                }
+                System.arraycopy(buffer, from, positions, from, to - from);
+            }
+        }
+        return positions;
+    }
+
+    private static long pair(int leftPosition, int rightPosition) {
+        return ((long) leftPosition << 32) | rightPosition;
+    }
+
+    static int leftOf(long pair) {
+        return (int) (pair >>> 32);
+    }
+
+    static int rightOf(long pair) {
+        return (int) pair;
+    }
+
+    // "Hash join" or "Sort-merge join", depending on what the last call to join used.
+    String getStrategy() {
+        return strategy;
+    }
+
+    // Growable array of pairs, to avoid boxing every match.
+    private static class PairBuffer {
+        private long[] values = new long[16];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package edu.uob.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Predicate;
+
+/**
+ * A tab-separated table file mapped into memory, so a full scan can walk its bytes
+ * in place instead of decoding every line into a String and splitting it.
+ *
+ * <p>The scanner finds the line and field boundaries in the mapped bytes and only
+ * creates Strings for the columns the query needs; other fields are stepped over.
+ * Fields are trimmed and short rows padded in the same way as when the table is
+ * loaded, so a scan returns the same values as {@link Table}.
+ *
+ * <p>A single mapping covers at most 2 GB, so larger files are not mapped. Nothing is
+ * mapped on Windows either: a mapping is only released when it is garbage collected,
+ * and until then Windows refuses to rename another file over the mapped one, so the
+ * next rewrite of the table would fail.
+ */
+public class MappedTableFile implements ScannableTableFile {
+    public static final long MAX_MAPPED_BYTES = Integer.MAX_VALUE;
+    private static final boolean MAPPING_SUPPORTED = !System.getProperty("os.name", "").startsWith("Windows");
+
+    private final File file;
+    private final MappedByteBuffer bytes;
+    private final List<String> columns;
+    // Offset of the first row, after the header line.
+    private final int dataStart;
+
+    private MappedTableFile(File file, MappedByteBuffer bytes, List<String> columns, int dataStart) {
+        this.file = file;
+        this.bytes = bytes;
+        this.columns = columns;
+        this.dataStart = dataStart;
+    }
+
+    /**
+     * Map a table file and read its header.
+     * @param tableFile File of the table
+     * @return The mapped file, or null if it is too large to map or files are not mapped on this platform
+     */
+    public static MappedTableFile open(File tableFile) throws IOException {
+        if (!MAPPING_SUPPORTED) {
+            return null;
+        }
+        MappedByteBuffer bytes;
+        try (FileChannel channel = FileChannel.open(tableFile.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > MAX_MAPPED_BYTES) {
+                return null;
+            }
+            // The mapping stays valid after the channel is closed.
+            bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        int headerEnd = indexOf(bytes, (byte) '\n', 0, bytes.limit());
+        int lineEnd = headerEnd == -1 ? bytes.limit() : headerEnd;
+        byte[] header = new byte[lineEnd];
+        bytes.get(0, header);
+        List<String> columns = new ArrayList<>();
+        String headerLine = new String(header, StandardCharsets.UTF_8);
+        if (!headerLine.isBlank()) {
+            for (String column : headerLine.split("\t")) {
+                columns.add(column.trim());
+            }
+        }
+        return new MappedTableFile(tableFile, bytes, columns, headerEnd == -1 ? bytes.limit() : headerEnd + 1);
+    }
+
+    @Override
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public Scanner scan(boolean[] needed, Predicate<ColumnarFile.SegmentStats> segmentFilter) {
+        return new Scanner(needed);
+    }
+
+    private static int indexOf(MappedByteBuffer bytes, byte b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (bytes.get(i) == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Reads the rows of the file one line at a time.
+     */
+    public class Scanner implements RowScanner {
+        private final boolean[] needed;
+        private int position = dataStart;
+        // Reused for decoding each needed field.
+        private byte[] field = new byte[256];
+        private List<String> nextRow;
+
+        private Scanner(boolean[] needed) {
+            this.needed = needed;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (nextRow == null) {
+                nextRow = advance();
+            }
+            return nextRow != null;
+        }
+
+        @Override
+        public List<String> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            List<String> row = nextRow;
+            nextRow = null;
+            return row;
+        }
+
+        private List<String> advance() {
+            int limit = bytes.limit();
+            while (position < limit) {
+                int lineEnd = indexOf(bytes, (byte) '\n', position, limit);
+                if (lineEnd == -1) {
+                    lineEnd = limit;
+                }
+                int lineStart = position;
+                position = lineEnd + 1;
+                // Older versions of the server could leave blank lines between rows.
+                if (isBlank(lineStart, lineEnd)) continue;
+                return parseLine(lineStart, lineEnd);
+            }
+            return null;
+        }
+
+        private List<String> parseLine(int start, int end) {
+            String[] row = new String[columns.size()];
+            int column = 0;
+            int fieldStart = start;
+            for (int i = start; i <= end && column < row.length; i++) {
+                if (i == end || bytes.get(i) == '\t') {
+                    if (needed[column]) {
+                        row[column] = decode(fieldStart, i);
+                    }
+                    column++;
+                    fieldStart = i + 1;
+                }
+            }
+            // Pad short rows so every row has one value per column.
+            for (; column < row.length; column++) {
+                if (needed[column]) row[column] = "";
+            }
+            return Arrays.asList(row);
+        }
+
+        // Decode the bytes of one field, trimmed like String.trim(); UTF-8 continuation bytes are never trimmed.
+        private String decode(int start, int end) {
+            while (start < end && (bytes.get(start) & 0xff) <= ' ') start++;
+            while (end > start && (bytes.get(end - 1) & 0xff) <= ' ') end--;
+            int length = end - start;
+            if (length == 0) {
+                return "";
+            }
+            if (length > field.length) {
+                field = new byte[Math.max(length, field.length * 2)];
+            }
+            bytes.get(start, field, 0, length);
+            return new String(field, 0, length, StandardCharsets.UTF_8);
+        }
+
+        private boolean isBlank(int start, int end) {
+            for (int i = start; i < end; i++) {
+                if ((bytes.get(i) & 0xff) > ' ') {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // Bytes of the rows walked so far, whether or not their fields were decoded.
+        @Override
+        public long getBytesRead() {
+            return Math.min(position, bytes.limit()) - dataStart;
+        }
+
+        @Override
+        public void close() {
+            // Nothing to release: the mapping is freed when it is no longer referenced.
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package edu.uob.model;
+
+import edu.uob.protocol.ResultSink;
+import edu.uob.protocol.TextResultWriter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * One operator of a query plan as shown by EXPLAIN, e.g. a scan, a filter or a
+ * join, with the operators it reads its rows from as children. EXPLAIN shows the
+ * estimated number of rows of each operator; EXPLAIN ANALYZE runs the statement
+ * and adds the rows each operator produced and the time spent in it, including
+ * the time spent in its children.
+ */
+public class PlanNode {
+
+    // How a statement is run.
+    public enum Mode {
+        // Run the statement normally.
+        NONE,
+        // Only describe the operators the statement would use.
+        PLAN,
+        // Run the statement, discarding the rows of a query, and measure every operator.
+        ANALYZE
+    }
+
+    private final String description;
+    private final List<PlanNode> children = new ArrayList<>();
+    private double estimatedRows = -1;
+    private long actualRows = -1;
+    private long nanos;
+
+    public PlanNode(String description) {
+        this.description = description;
+    }
+
+    // Add an operator this one reads from, returning the child.
+    public PlanNode addChild(PlanNode child) {
+        children.add(child);
+        return child;
+    }
+
+    public PlanNode estimateRows(double rows) {
+        this.estimatedRows = rows;
+        return this;
+    }
+
+    // Estimated rows, or -1 if there is no estimate.
+    public double getEstimatedRows() {
+        return estimatedRows;
+    }
+
+    // Time measured in this operator and its children.
+    public long getTime() {
+        return nanos;
+    }
+
+    public void addRows(long rows) {
+        actualRows = Math.max(actualRows, 0) + rows;
+    }
+
+    public void addTime(long nanos) {
+        this.nanos += nanos;
+    }
+
+    /**
+     * Count the rows passing through an iterator and the time spent producing them.
+     * @param rows Rows this operator produces
+     * @return Iterator over the same rows
+     */
+    public <T> Iterator<T> measure(Iterator<T> rows) {
+        actualRows = Math.max(actualRows, 0);
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                long start = System.nanoTime();
+                boolean hasNext = rows.hasNext();
+                nanos += System.nanoTime() - start;
+                return hasNext;
+            }
+
+            @Override
+            public T next() {
+                long start = System.nanoTime();
+                T row = rows.next();
+                nanos += System.nanoTime() - start;
+                actualRows++;
+                return row;
+            }
+        };
+    }
+
+    /**
+     * Send this plan as the result of EXPLAIN: one line per operator under the header QUERY PLAN,
+     * followed for EXPLAIN ANALYZE by the time the whole statement took.
+     */
+    public void send(ResultSink sink, Mode mode, long executionNanos) throws IOException {
+        sink.status("[OK]");
+        sink.header(List.of("QUERY PLAN"));
+        for (String line : render(mode == Mode.ANALYZE)) {
+            sink.row(List.of(line));
+        }
+        if (mode == Mode.ANALYZE) {
+            sink.row(List.of(String.format(Locale.ROOT, "Execution time: %.3f ms", executionNanos / 1e6)));
+        }
+        sink.end();
+    }
+
+    // The result of EXPLAIN as text.
+    public String toResult(Mode mode, long executionNanos) {
+        TextResultWriter.Builder result = new TextResultWriter.Builder();
+        try {
+            send(result, mode, executionNanos);
+        } catch (IOException e) {
+            // Appending to a StringBuilder cannot fail.
+            throw new UncheckedIOException(e);
+        }
+        return result.toString();
+    }
+
+    /**
+     * The plan as indented lines, one per operator, with the children of an operator below it.
+     * @param analyzed Include the measured rows and times
+     */
+    public List<String> render(boolean analyzed) {
+        List<String> lines = new ArrayList<>();
+        render(lines, "", analyzed);
+        return lines;
+    }
+
+    private void render(List<String> lines, String indent, boolean analyzed) {
+        StringBuilder line = new StringBuilder(indent.isEmpty() ? "" : indent + "-> ").append(description);
+        if (estimatedRows >= 0) {
+            line.append(String.format(Locale.ROOT, "  (estimated rows=%.0f)", Math.ceil(estimatedRows)));
+        }
+        if (analyzed && actualRows >= 0) {
+            line.append(String.format(Locale.ROOT, "  (actual rows=%d time=%.3f ms)", actualRows, nanos / 1e6));
+        }
+        lines.add(line.toString());
+        for (PlanNode child : children) {
+            child.render(lines, indent + "    ", analyzed);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package edu.uob.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * A table file that a query can read row by row in place, decoding only the
+ * columns it uses, instead of loading the whole table into the cache.
+ */
+public interface ScannableTableFile {
+
+    List<String> getColumns();
+
+    /**
+     * Scan the rows of the table.
+     * @param needed Columns to decode; the values of the others are null
+     * @param segmentFilter Says whether a segment of a column store may hold matching rows; files
+     *                      without segment statistics ignore it
+     * @return Rows in table order, as lists with one entry per column
+     */
+    RowScanner scan(boolean[] needed, Predicate<ColumnarFile.SegmentStats> segmentFilter) throws IOException;
+
+    /**
+     * Rows of a scan. Read errors are thrown as {@link java.io.UncheckedIOException}.
+     */
+    interface RowScanner extends Iterator<List<String>>, Closeable {
+
+        // Bytes of the file read so far.
+        long getBytesRead();
+    }
+}
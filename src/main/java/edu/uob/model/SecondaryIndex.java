@@ -0,0 +1,185 @@
+package edu.uob.model;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Index on one non-id column of a table, created with CREATE INDEX.
+ * Values are kept in a hash map for == lookups (case-insensitive, like the
+ * == operator) and numeric values additionally in a sorted map for < and >.
+ *
+ * <p>The index is persisted next to the table file as table.indexname.idx:
+ * the first line holds the column name and every further line an
+ * "id TAB value" pair. On load the entries are reused if the index file is
+ * at least as new as the table file and has one entry per row, otherwise the
+ * index is rebuilt from the table.
+ */
+public class SecondaryIndex {
+    private final String name;
+    private final String column;
+    private final File file;
+    private final Map<String, List<Record>> equalityIndex = new HashMap<>();
+    private final TreeMap<Double, List<Record>> rangeIndex = new TreeMap<>();
+
+    public SecondaryIndex(String name, String column, File file) {
+        this.name = name;
+        this.column = column;
+        this.file = file;
+    }
+
+    public static File indexFileFor(File tableFile, String indexName) {
+        String baseName = tableFile.getName().replace(".tab", "");
+        return new File(tableFile.getParentFile(), baseName + "." + indexName + ".idx");
+    }
+
+    // Find the index files that belong to a table.
+    public static File[] indexFilesFor(File tableFile) {
+        String prefix = tableFile.getName().replace(".tab", "") + ".";
+        File[] files = tableFile.getParentFile().listFiles((dir, fileName) ->
+                fileName.startsWith(prefix) && fileName.endsWith(".idx")
+                        && fileName.indexOf('.', prefix.length()) == fileName.length() - 4);
+        return files == null ? new File[0] : files;
+    }
+
+    /**
+     * Open a persisted index, reusing its entries when they are up to date with the table.
+     * @param indexFile Index file
+     * @param tableFile File of the table the index belongs to
+     * @param records Records of the table
+     * @param columns Columns of the table
+     * @param idIndex Primary key index of the table
+     * @return The index, or null if its column no longer exists
+     */
+    public static SecondaryIndex open(File indexFile, File tableFile, List<Record> records, List<String> columns,
+                                      Map<String, Record> idIndex) throws IOException {
+        String fileName = indexFile.getName();
+        String indexName = fileName.substring(fileName.indexOf('.') + 1, fileName.length() - 4);
+        try (BufferedReader reader = new BufferedReader(new FileReader(indexFile))) {
+            String column = reader.readLine();
+            if (column == null || !columns.contains(column.trim())) {
+                return null;
+            }
+            SecondaryIndex index = new SecondaryIndex(indexName, column.trim(), indexFile);
+            int columnIndex = columns.indexOf(index.column);
+            boolean upToDate = indexFile.lastModified() >= tableFile.lastModified();
+            int entries = 0;
+            String line;
+            while (upToDate && (line = reader.readLine()) != null) {
+                String[] entry = line.split("\t", 2);
+                Record record = idIndex.get(entry[0]);
+                if (record == null) {
+                    upToDate = false;
+                    break;
+                }
+                index.add(record, columnIndex);
+                entries++;
+            }
+            if (!upToDate || entries != records.size()) {
+                // Rows were written to the table after the index, so rebuild it.
+                index.rebuild(records, columnIndex);
+                index.save(records, columns);
+            }
+            return index;
+        }
+    }
+
+    public void rebuild(List<Record> records, int columnIndex) {
+        equalityIndex.clear();
+        rangeIndex.clear();
+        for (Record record : records) {
+            add(record, columnIndex);
+        }
+    }
+
+    public void add(Record record, int columnIndex) {
+        String value = record.getValue(columnIndex);
+        equalityIndex.computeIfAbsent(value.toLowerCase(), key -> new ArrayList<>(1)).add(record);
+        Double number = parseNumber(value);
+        if (number != null) {
+            rangeIndex.computeIfAbsent(number, key -> new ArrayList<>(1)).add(record);
+        }
+    }
+
+    // Remove a record instance from the index, using the value it is currently indexed under.
+    public void remove(Record record, String indexedValue) {
+        removeFrom(equalityIndex, indexedValue.toLowerCase(), record);
+        Double number = parseNumber(indexedValue);
+        if (number != null) {
+            removeFrom(rangeIndex, number, record);
+        }
+    }
+
+    private static <K> void removeFrom(Map<K, List<Record>> map, K key, Record record) {
+        List<Record> bucket = map.get(key);
+        if (bucket == null) return;
+        bucket.removeIf(candidate -> candidate == record);
+        if (bucket.isEmpty()) {
+            map.remove(key);
+        }
+    }
+
+    // Records whose value equals the given one, ignoring case.
+    public List<Record> lookup(String value) {
+        return equalityIndex.getOrDefault(value.toLowerCase(), Collections.emptyList());
+    }
+
+    // Records whose numeric value is strictly greater (or, if greater is false, strictly less) than the bound.
+    public List<Record> range(String bound, boolean greater) {
+        Double number = parseNumber(bound);
+        if (number == null) {
+            return Collections.emptyList();
+        }
+        SortedMap<Double, List<Record>> matching = greater ? rangeIndex.tailMap(number, false) : rangeIndex.headMap(number);
+        List<Record> result = new ArrayList<>();
+        for (List<Record> bucket : matching.values()) {
+            result.addAll(bucket);
+        }
+        return result;
+    }
+
+    private static Double parseNumber(String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // Rewrite the index file from the table's records.
+    public void save(List<Record> records, List<String> columns) throws IOException {
+        int columnIndex = columns.indexOf(column);
+        int idColumnIndex = columns.indexOf("id");
+        AtomicFile.write(file, writer -> {
+            writer.write(column);
+            writer.newLine();
+            for (Record record : records) {
+                writer.write(record.getValue(idColumnIndex) + "\t" + record.getValue(columnIndex));
+                writer.newLine();
+            }
+        });
+    }
+
+    // Append entries for newly inserted records to the index file.
+    public void append(List<Record> newRecords, List<String> columns) throws IOException {
+        int columnIndex = columns.indexOf(column);
+        int idColumnIndex = columns.indexOf("id");
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file, true))) {
+            for (Record record : newRecords) {
+                writer.write(record.getValue(idColumnIndex) + "\t" + record.getValue(columnIndex));
+                writer.newLine();
+            }
+        }
+    }
+
+    public void delete() {
+        file.delete();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getColumn() {
+        return column;
+    }
+}
@@ -0,0 +1,68 @@
+package edu.uob.model;
+
+import edu.uob.parser.Statement;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * State that belongs to a single client connection, such as the database
+ * selected with USE. The shared {@link Database} only holds the catalog and
+ * storage, so one connection switching database does not affect the others.
+ * Statements prepared with PREPARE are also private to the session.
+ */
+public class Session {
+    private String currentDatabase;
+    private File currentDatabasePath;
+    private final long startedAt = System.currentTimeMillis();
+    private long commandsExecuted;
+    private long errors;
+    private final Map<String, Statement> preparedStatements = new HashMap<>();
+
+    public String getCurrentDatabase() {
+        return currentDatabase;
+    }
+
+    public File getCurrentDatabasePath() {
+        return currentDatabasePath;
+    }
+
+    public void setCurrentDatabase(String databaseName, File databasePath) {
+        this.currentDatabase = databaseName;
+        this.currentDatabasePath = databasePath;
+    }
+
+    // Record the outcome of a command run in this session.
+    public void commandExecuted(String result) {
+        commandsExecuted++;
+        if (result == null || result.startsWith("[ERROR]")) {
+            errors++;
+        }
+    }
+
+    public void prepare(String name, Statement statement) {
+        preparedStatements.put(name.toLowerCase(), statement);
+    }
+
+    // The statement prepared under the given name, or null if there is none.
+    public Statement getPreparedStatement(String name) {
+        return preparedStatements.get(name.toLowerCase());
+    }
+
+    public boolean deallocate(String name) {
+        return preparedStatements.remove(name.toLowerCase()) != null;
+    }
+
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    public long getCommandsExecuted() {
+        return commandsExecuted;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+}
@@ -2,22 +2,39 @@ package edu.uob.model;
 
 import java.io.*;
 import java.nio.file.Files;
-import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Set;
 
 public class Table {
     private final String name;
     private final List<String> columns;
     private final List<Record> records;
     private final File file;
+    // Tables created with STORAGE=COLUMNAR keep their rows in a ColumnarFile; the table file holds the header and new rows.
+    private final boolean columnar;
+    // Primary key index: id value -> record, kept in step with the records list.
+    private final Map<String, Record> idIndex = new HashMap<>();
+    // Secondary indexes created with CREATE INDEX.
+    private final List<SecondaryIndex> indexes = new ArrayList<>();
+    // File state at the time this table was last loaded or written, used to detect external changes.
+    private long lastModified;
+    private long fileLength;
+    // Statistics collected by ANALYZE, null if the table has not been analyzed.
+    private volatile TableStatistics statistics;
 
     public Table(List<String> columns, List<Record> records) {
         this.columns = columns;
         this.records = records;
         this.name = null;
         this.file = null;
+        this.columnar = false;
+        rebuildIdIndex();
     }
 
     public Table(String tableName, File file) throws IOException {
@@ -25,37 +42,266 @@ public class Table {
         this.file = file;
         this.columns = new ArrayList<>();
         this.records = new ArrayList<>();
+        this.columnar = ColumnarFile.fileFor(file).exists();
         loadFromFile();
     }
 
     private void loadFromFile() throws IOException {
-        List<String> lines = Files.readAllLines(file.toPath());
-        if (!lines.isEmpty()) {
-            columns.addAll(List.of(lines.get(0).split("\t")));
-            for (String line : lines.subList(1, lines.size())) {
-                records.add(new Record(List.of(line.split("\t"))));
+        if (columnar) {
+            // The header of the column store is used, as the header line of the table file is out of date
+            // if saveToFile was interrupted between writing the two files. Also reads the rows inserted since
+            // the last rewrite from the table file.
+            ColumnarFile columnStore = ColumnarFile.open(file);
+            columns.addAll(columnStore.getColumns());
+            records.addAll(columnStore.readAll());
+        } else {
+            List<String> lines = Files.readAllLines(file.toPath());
+            if (!lines.isEmpty()) {
+                for (String column : lines.get(0).split("\t")) {
+                    columns.add(column.trim());
+                }
+                for (String line : lines.subList(1, lines.size())) {
+                    // Older versions of the server could leave blank lines between rows.
+                    if (line.isBlank()) continue;
+                    records.add(parseRecord(line));
+                }
             }
         }
+        rebuildIdIndex();
+        rememberFileState();
+        statistics = TableStatistics.load(file);
+        for (File indexFile : SecondaryIndex.indexFilesFor(file)) {
+            SecondaryIndex index = SecondaryIndex.open(indexFile, file, records, columns, idIndex);
+            if (index != null) {
+                indexes.add(index);
+            } else {
+                // The indexed column was dropped.
+                indexFile.delete();
+            }
+        }
+    }
+
+    private Record parseRecord(String line) {
+        String[] values = line.split("\t", -1);
+        List<String> recordValues = new ArrayList<>(columns.size());
+        for (String value : values) {
+            recordValues.add(value.trim());
+        }
+        // Pad short rows so every record has one value per column.
+        while (recordValues.size() < columns.size()) {
+            recordValues.add("");
+        }
+        return new Record(recordValues);
+    }
+
+    private void rememberFileState() {
+        lastModified = file.lastModified();
+        fileLength = file.length();
+    }
+
+    /**
+     * Whether the file on disk no longer matches what this table was loaded from,
+     * e.g. because it was deleted or modified outside this server.
+     */
+    public boolean isStale() {
+        return file != null && (!file.exists() || file.lastModified() != lastModified || file.length() != fileLength);
+    }
+
+    // Append records to the end of the table file without rewriting it.
+    public void addRecords(List<Record> newRecords, boolean sync) throws IOException {
+        appendRecords(file, newRecords, sync);
+        for (Record record : newRecords) {
+            while (record.getValues().size() < columns.size()) {
+                record.getValues().add("");
+            }
+            records.add(record);
+            indexRecord(record);
+            for (SecondaryIndex index : indexes) {
+                index.add(record, columns.indexOf(index.getColumn()));
+            }
+        }
+        rememberFileState();
+        for (SecondaryIndex index : indexes) {
+            index.append(newRecords, columns);
+        }
+    }
+
+    // Read the columns from the header line of a table file without loading the table.
+    public static List<String> readColumns(File tableFile) throws IOException {
+        if (ColumnarFile.fileFor(tableFile).exists()) {
+            // Columnar tables take their columns from the column store, as in loadFromFile.
+            return new ArrayList<>(ColumnarFile.open(tableFile).getColumns());
+        }
+        List<String> columns = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(tableFile))) {
+            String headerLine = reader.readLine();
+            if (headerLine != null && !headerLine.isBlank()) {
+                for (String column : headerLine.split("\t")) {
+                    columns.add(column.trim());
+                }
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * Append records to a table file without loading the table.
+     * @param tableFile Table file
+     * @param newRecords Records to append
+     * @param sync Whether to force the batch to disk before returning
+     */
+    public static void appendRecords(File tableFile, List<Record> newRecords, boolean sync) throws IOException {
+        try (TableAppender appender = new TableAppender(tableFile)) {
+            for (Record record : newRecords) {
+                appender.append(record);
+            }
+            if (sync) {
+                appender.commit();
+            }
+        }
+    }
+
+    // Remove the given record instances (compared by identity, not by value).
+    public void removeRecords(Collection<Record> removedRecords) {
+        Set<Record> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+        removed.addAll(removedRecords);
+        records.removeIf(removed::contains);
+        for (Record record : removed) {
+            idIndex.remove(getId(record));
+            for (SecondaryIndex index : indexes) {
+                index.remove(record, record.getValue(columns.indexOf(index.getColumn())));
+            }
+        }
+    }
+
+    // Change one value of a record, keeping any index on that column up to date.
+    public void setValue(Record record, int columnIndex, String newValue) {
+        String column = columns.get(columnIndex);
+        for (SecondaryIndex index : indexes) {
+            if (index.getColumn().equals(column)) {
+                index.remove(record, record.getValue(columnIndex));
+            }
+        }
+        record.setValue(columnIndex, newValue);
+        for (SecondaryIndex index : indexes) {
+            if (index.getColumn().equals(column)) {
+                index.add(record, columnIndex);
+            }
+        }
+    }
+
+    public void replaceRecords(List<Record> newRecords) {
+        records.clear();
+        records.addAll(newRecords);
+        rebuildIdIndex();
+        for (SecondaryIndex index : indexes) {
+            index.rebuild(records, columns.indexOf(index.getColumn()));
+        }
+    }
+
+    /**
+     * Look up a record by its primary key without scanning the table.
+     * @param id Value of the id column
+     * @return The record, or null if there is no record with that id
+     */
+    public Record getRecordById(String id) {
+        return idIndex.get(id);
+    }
+
+    /**
+     * Whether a record is still in the table, e.g. for a reader that unlocked the table part way through.
+     * @param record Record that was read from the table earlier
+     * @return False if the record has been deleted since
+     */
+    public boolean containsRecord(Record record) {
+        String id = getId(record);
+        return id == null || idIndex.get(id) == record;
     }
 
-    public void addRecord(Record record) throws IOException {
-        records.add(record);
-        saveToFile();
+    /**
+     * Build a secondary index on a column and persist it next to the table file.
+     * @param indexName Index name
+     * @param column Indexed column
+     */
+    public void createIndex(String indexName, String column) throws IOException {
+        SecondaryIndex index = new SecondaryIndex(indexName, column, SecondaryIndex.indexFileFor(file, indexName));
+        index.rebuild(records, columns.indexOf(column));
+        index.save(records, columns);
+        indexes.add(index);
     }
 
-    public void removeRecord(Record record) throws IOException {
-        records.remove(record);
-        saveToFile();
+    public boolean dropIndex(String indexName) {
+        for (SecondaryIndex index : indexes) {
+            if (index.getName().equals(indexName)) {
+                index.delete();
+                indexes.remove(index);
+                return true;
+            }
+        }
+        return false;
     }
 
-    private void saveToFile() throws IOException {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+    public SecondaryIndex getIndex(String indexName) {
+        for (SecondaryIndex index : indexes) {
+            if (index.getName().equals(indexName)) {
+                return index;
+            }
+        }
+        return null;
+    }
+
+    // Get an index on the given column, or null if the column is not indexed.
+    public SecondaryIndex getIndexOnColumn(String column) {
+        for (SecondaryIndex index : indexes) {
+            if (index.getColumn().equals(column)) {
+                return index;
+            }
+        }
+        return null;
+    }
+
+    private void rebuildIdIndex() {
+        idIndex.clear();
+        for (Record record : records) {
+            indexRecord(record);
+        }
+    }
+
+    private void indexRecord(Record record) {
+        String id = getId(record);
+        if (id != null) {
+            idIndex.put(id, record);
+        }
+    }
+
+    private String getId(Record record) {
+        int idIndexColumn = columns.indexOf("id");
+        if (idIndexColumn == -1 || idIndexColumn >= record.getValues().size()) {
+            return null;
+        }
+        return record.getValue(idIndexColumn);
+    }
+
+    // Rewrite the whole table file from the in-memory columns and records, replacing the old file in one step.
+    public void saveToFile() throws IOException {
+        if (columnar) {
+            // Move every row into the column store, then leave only the header in the table file. The column
+            // store holds the header too and is the one read back, so a crash between the two writes loses nothing.
+            ColumnarFile.write(file, columns, records);
+        }
+        AtomicFile.write(file, writer -> {
             writer.write(String.join("\t", columns));
             writer.newLine();
-            for (Record record : records) {
-                writer.write(record.toTSV());
-                writer.newLine();
+            if (!columnar) {
+                for (Record record : records) {
+                    writer.write(record.toTSV());
+                    writer.newLine();
+                }
             }
+        });
+        rememberFileState();
+        for (SecondaryIndex index : indexes) {
+            index.save(records, columns);
         }
     }
 
@@ -71,16 +317,59 @@ public class Table {
         return name;
     }
 
+    public File getFile() {
+        return file;
+    }
+
+    public TableStatistics getStatistics() {
+        return statistics;
+    }
+
+    public void setStatistics(TableStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    public boolean isColumnar() {
+        return columnar;
+    }
+
+    public int getColumnIndex(String column) {
+        return columns.indexOf(column);
+    }
+
+    public void addColumn(String column) {
+        columns.add(column);
+        for (Record record : records) {
+            record.getValues().add("");
+        }
+    }
+
     public void deleteColumn(String column) {
         int deletedIndex = -1;
         for (int idx=0; idx<columns.size(); idx++) {
             if (columns.get(idx).equalsIgnoreCase(column)) deletedIndex = idx;
         }
         if (deletedIndex != -1) {
+            String deletedColumn = columns.get(deletedIndex);
+            boolean deletingId = deletedColumn.equals("id");
+            // Indexes on a dropped column are dropped with it.
+            indexes.removeIf(index -> {
+                if (index.getColumn().equals(deletedColumn)) {
+                    index.delete();
+                    return true;
+                }
+                return false;
+            });
+            if (statistics != null) {
+                statistics.removeColumn(deletedColumn);
+            }
             columns.remove(deletedIndex);
             for (Record record : records) {
                 record.deleteValue(deletedIndex);
             }
+            if (deletingId) {
+                rebuildIdIndex();
+            }
         }
     }
 
@@ -0,0 +1,75 @@
+package edu.uob.model;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appends rows to the end of a table file through a single buffered channel.
+ * Rows written between two calls to {@link #commit()} form one batch; commit
+ * flushes the buffer and forces the file to disk once for the whole batch.
+ * {@link #rollback()} instead cuts the file back to the length it had when the
+ * appender was opened.
+ */
+public class TableAppender implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final BufferedWriter writer;
+    private final long originalLength;
+    private long rowsWritten;
+
+    public TableAppender(File tableFile) throws IOException {
+        boolean needsNewline = !endsWithNewline(tableFile);
+        this.channel = FileChannel.open(tableFile.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.originalLength = channel.size();
+        this.writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8), BUFFER_SIZE);
+        if (needsNewline) {
+            writer.newLine();
+        }
+    }
+
+    private static boolean endsWithNewline(File tableFile) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(tableFile, "r")) {
+            if (raf.length() == 0) return true;
+            raf.seek(raf.length() - 1);
+            return raf.read() == '\n';
+        }
+    }
+
+    public void append(Record record) throws IOException {
+        writer.write(record.toTSV());
+        writer.newLine();
+        rowsWritten++;
+    }
+
+    // Flush buffered rows and make them durable with a single fsync.
+    public void commit() throws IOException {
+        writer.flush();
+        channel.force(true);
+    }
+
+    // Drop every row written by this appender, including rows already flushed or committed.
+    public void rollback() throws IOException {
+        // Flush first, so closing the writer afterwards has nothing left to append.
+        writer.flush();
+        channel.truncate(originalLength);
+        channel.force(true);
+        rowsWritten = 0;
+    }
+
+    public long getRowsWritten() {
+        return rowsWritten;
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
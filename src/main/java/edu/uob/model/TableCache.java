@@ -0,0 +1,157 @@
+package edu.uob.model;
+
+import edu.uob.metrics.ServerMetrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Keeps recently used tables in memory so that commands do not have to re-read
+ * and re-parse the .tab file every time. Entries are kept in LRU order and the
+ * least recently used tables are evicted once the total number of cached rows
+ * exceeds the configured budget. A cached table is reloaded when its file has
+ * changed on disk since it was loaded. Changes to a table that are only in the
+ * write-ahead log are applied again whenever the table is loaded.
+ */
+public class TableCache {
+    public static final int DEFAULT_MAX_ROWS = 1_000_000;
+
+    private final int maxRows;
+    // Receives the bytes read from table files when a table is loaded.
+    private final ServerMetrics metrics;
+    private final LinkedHashMap<String, Table> tables = new LinkedHashMap<>(16, 0.75f, true);
+    // Loads in progress, so callers that miss on the same table share one read of its file.
+    private final Map<String, CompletableFuture<Table>> loading = new HashMap<>();
+    private long hits;
+    private long misses;
+
+    public TableCache() {
+        this(DEFAULT_MAX_ROWS);
+    }
+
+    public TableCache(int maxRows) {
+        this(maxRows, new ServerMetrics());
+    }
+
+    public TableCache(int maxRows, ServerMetrics metrics) {
+        this.maxRows = maxRows;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Get the table stored in the given file, loading it if it is not cached or the cached copy is stale.
+     * The file is read outside the cache's lock, so loading one table does not hold up lookups of others;
+     * callers that miss on a table that is already being loaded wait for that load instead of starting
+     * their own.
+     * @param key Cache key (database and table name)
+     * @param tableName Table name
+     * @param tableFile Table file
+     * @param wal Write-ahead log of the table's database
+     * @return The cached table
+     */
+    public Table get(String key, String tableName, File tableFile, WriteAheadLog wal) throws IOException {
+        CompletableFuture<Table> load;
+        boolean loader = false;
+        synchronized (this) {
+            Table table = tables.get(key);
+            if (table != null && !table.isStale()) {
+                hits++;
+                return table;
+            }
+            load = loading.get(key);
+            if (load != null) {
+                hits++;
+            } else {
+                misses++;
+                load = new CompletableFuture<>();
+                loading.put(key, load);
+                loader = true;
+            }
+        }
+        if (!loader) {
+            return await(load);
+        }
+        try {
+            Table table = new Table(tableName, tableFile);
+            File columnarFile = ColumnarFile.fileFor(tableFile);
+            metrics.tableBytesRead(key, tableFile.length() + (columnarFile.exists() ? columnarFile.length() : 0));
+            wal.replay(table);
+            synchronized (this) {
+                // A table invalidated while it was loading may already be out of date, so it is not cached.
+                if (loading.remove(key, load)) {
+                    tables.put(key, table);
+                    evictIfNeeded(key);
+                }
+            }
+            load.complete(table);
+            return table;
+        } catch (IOException | RuntimeException e) {
+            synchronized (this) {
+                loading.remove(key, load);
+            }
+            load.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    // Wait for a load started by another caller, failing the same way it did.
+    private static Table await(CompletableFuture<Table> load) throws IOException {
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    // Get a cached table without loading it, or null if it is not cached or has gone stale.
+    public synchronized Table getIfPresent(String key) {
+        Table table = tables.get(key);
+        if (table != null && table.isStale()) {
+            tables.remove(key);
+            return null;
+        }
+        return table;
+    }
+
+    private void evictIfNeeded(String keepKey) {
+        long cachedRows = 0;
+        for (Table table : tables.values()) {
+            cachedRows += table.getRecords().size();
+        }
+        Iterator<Map.Entry<String, Table>> iterator = tables.entrySet().iterator();
+        while (cachedRows > maxRows && iterator.hasNext()) {
+            Map.Entry<String, Table> entry = iterator.next();
+            if (entry.getKey().equals(keepKey)) continue;
+            cachedRows -= entry.getValue().getRecords().size();
+            iterator.remove();
+        }
+    }
+
+    public synchronized void invalidate(String key) {
+        tables.remove(key);
+        loading.remove(key);
+    }
+
+    // Drop every cached table whose key starts with the given prefix, e.g. all tables of one database.
+    public synchronized void invalidatePrefix(String prefix) {
+        tables.keySet().removeIf(key -> key.startsWith(prefix));
+        loading.keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+}
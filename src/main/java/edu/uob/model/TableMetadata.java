@@ -0,0 +1,204 @@
+package edu.uob.model;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Per-table bookkeeping stored in a small sidecar file next to the .tab file
+ * (e.g. marks.meta for marks.tab). It holds the next id to hand out and the
+ * number of rows, so INSERT can append a row without reading the table, and the
+ * declared {@link ColumnType} of each typed column.
+ *
+ * <p>Single-row inserts only update the in-memory copy. Because appended ids are
+ * always increasing, the sidecar can be brought up to date on the next load by
+ * looking at the id of the last row in the table file.
+ */
+public class TableMetadata {
+    private static final String NEXT_ID = "nextId";
+    private static final String ROW_COUNT = "rowCount";
+    // Followed by the column name, e.g. type.mark=INT.
+    private static final String TYPE_PREFIX = "type.";
+
+    private final File metaFile;
+    private long nextId;
+    private long rowCount;
+    private final Map<String, ColumnType> columnTypes = new HashMap<>();
+
+    private TableMetadata(File metaFile, long nextId, long rowCount) {
+        this.metaFile = metaFile;
+        this.nextId = nextId;
+        this.rowCount = rowCount;
+    }
+
+    public static File metaFileFor(File tableFile) {
+        String fileName = tableFile.getName();
+        String baseName = fileName.endsWith(".tab") ? fileName.substring(0, fileName.length() - 4) : fileName;
+        return new File(tableFile.getParentFile(), baseName + ".meta");
+    }
+
+    /**
+     * Metadata for a freshly created, empty table.
+     * @param columnTypes Declared types of the typed columns
+     */
+    public static TableMetadata create(File tableFile, Map<String, ColumnType> columnTypes) throws IOException {
+        TableMetadata metadata = new TableMetadata(metaFileFor(tableFile), 1, 0);
+        metadata.columnTypes.putAll(columnTypes);
+        metadata.save();
+        return metadata;
+    }
+
+    /**
+     * Load the metadata of a table, reconciling it with rows appended since it was last saved.
+     * Tables written by older versions of the server have no sidecar, in which case it is rebuilt
+     * with a single pass over the table file.
+     */
+    public static TableMetadata load(File tableFile) throws IOException {
+        File metaFile = metaFileFor(tableFile);
+        long lastId = readLastId(tableFile);
+        if (!metaFile.exists()) {
+            TableMetadata metadata = new TableMetadata(metaFile, lastId + 1, countRows(tableFile));
+            metadata.save();
+            return metadata;
+        }
+        Properties properties = new Properties();
+        try (Reader reader = new BufferedReader(new FileReader(metaFile))) {
+            properties.load(reader);
+        }
+        long nextId;
+        long rowCount;
+        try {
+            nextId = Long.parseLong(properties.getProperty(NEXT_ID, "1"));
+            rowCount = Long.parseLong(properties.getProperty(ROW_COUNT, "0"));
+        } catch (NumberFormatException e) {
+            nextId = lastId + 1;
+            rowCount = countRows(tableFile);
+        }
+        if (lastId >= nextId) {
+            // Rows were appended after the sidecar was last written.
+            rowCount += lastId - nextId + 1;
+            nextId = lastId + 1;
+        }
+        TableMetadata metadata = new TableMetadata(metaFile, nextId, rowCount);
+        for (String name : properties.stringPropertyNames()) {
+            ColumnType type = name.startsWith(TYPE_PREFIX) ? ColumnType.parse(properties.getProperty(name)) : null;
+            if (type != null) {
+                metadata.columnTypes.put(name.substring(TYPE_PREFIX.length()), type);
+            }
+        }
+        return metadata;
+    }
+
+    // Read the id of the last row in the table file, or 0 if the table has no rows.
+    private static long readLastId(File tableFile) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(tableFile, "r")) {
+            long position = raf.length() - 1;
+            // Skip trailing line breaks and blank lines.
+            while (position >= 0) {
+                raf.seek(position);
+                int c = raf.read();
+                if (c != '\n' && c != '\r' && c != ' ' && c != '\t') break;
+                position--;
+            }
+            long lineEnd = position;
+            while (position >= 0) {
+                raf.seek(position);
+                if (raf.read() == '\n') break;
+                position--;
+            }
+            if (position < 0) {
+                // Only the header line is present.
+                return 0;
+            }
+            byte[] lastLine = new byte[(int) (lineEnd - position)];
+            raf.seek(position + 1);
+            raf.readFully(lastLine);
+            String firstField = new String(lastLine).split("\t", 2)[0].trim();
+            try {
+                return Long.parseLong(firstField);
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+    }
+
+    private static long countRows(File tableFile) throws IOException {
+        long rows = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(tableFile))) {
+            reader.readLine();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank()) rows++;
+            }
+        }
+        return rows;
+    }
+
+    public void save() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(NEXT_ID, String.valueOf(nextId));
+        properties.setProperty(ROW_COUNT, String.valueOf(rowCount));
+        for (Map.Entry<String, ColumnType> entry : columnTypes.entrySet()) {
+            properties.setProperty(TYPE_PREFIX + entry.getKey(), entry.getValue().name());
+        }
+        AtomicFile.write(metaFile, writer -> properties.store(writer, null));
+    }
+
+    // Hand out the next id. Ids are never reused, even after rows are deleted.
+    public long allocateId() {
+        return nextId++;
+    }
+
+    public void rowsAdded(long count) {
+        rowCount += count;
+    }
+
+    public void setRowCount(long rowCount) {
+        this.rowCount = rowCount;
+    }
+
+    public long getNextId() {
+        return nextId;
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    // Declared type of a column; TEXT if it has none.
+    public ColumnType getColumnType(String column) {
+        return columnTypes.getOrDefault(column, ColumnType.TEXT);
+    }
+
+    public boolean hasTypedColumns() {
+        return !columnTypes.isEmpty();
+    }
+
+    // Types of the given columns, in the same order.
+    public List<ColumnType> getColumnTypes(List<String> columns) {
+        List<ColumnType> types = new ArrayList<>(columns.size());
+        for (String column : columns) {
+            types.add(getColumnType(column));
+        }
+        return types;
+    }
+
+    public void setColumnType(String column, ColumnType type) {
+        if (type == ColumnType.TEXT) {
+            columnTypes.remove(column);
+        } else {
+            columnTypes.put(column, type);
+        }
+    }
+
+    public void removeColumnType(String column) {
+        columnTypes.remove(column);
+    }
+
+    public void delete() {
+        metaFile.delete();
+    }
+}
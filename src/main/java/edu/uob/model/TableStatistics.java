@@ -0,0 +1,125 @@
+package edu.uob.model;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Statistics of a table collected by ANALYZE, stored in a sidecar next to the
+ * table file (e.g. marks.stats for marks.tab) so they survive a restart. They
+ * describe the table as it was when it was analyzed; the planner applies the
+ * fractions they give to the current number of rows, so they stay useful while
+ * the table changes, until ANALYZE is run again.
+ */
+public class TableStatistics {
+    private static final String ROW_COUNT = "rowCount";
+    // Followed by the column name and the statistic, e.g. column.mark.distinct=12.
+    private static final String COLUMN_PREFIX = "column.";
+
+    private final File statsFile;
+    private final long rowCount;
+    private final Map<String, ColumnStatistics> columns;
+
+    private TableStatistics(File statsFile, long rowCount, Map<String, ColumnStatistics> columns) {
+        this.statsFile = statsFile;
+        this.rowCount = rowCount;
+        this.columns = columns;
+    }
+
+    public static File fileFor(File tableFile) {
+        String fileName = tableFile.getName();
+        String baseName = fileName.endsWith(".tab") ? fileName.substring(0, fileName.length() - 4) : fileName;
+        return new File(tableFile.getParentFile(), baseName + ".stats");
+    }
+
+    // Collect the statistics of every column of a table in one pass per column.
+    public static TableStatistics compute(Table table) {
+        Map<String, ColumnStatistics> columns = new HashMap<>();
+        List<String> names = table.getColumns();
+        for (int column = 0; column < names.size(); column++) {
+            columns.put(names.get(column), ColumnStatistics.compute(table.getRecords(), column));
+        }
+        return new TableStatistics(fileFor(table.getFile()), table.getRecords().size(), columns);
+    }
+
+    /**
+     * Load the statistics of a table.
+     * @return The statistics, or null if the table has not been analyzed or the file cannot be read
+     */
+    public static TableStatistics load(File tableFile) {
+        File statsFile = fileFor(tableFile);
+        if (!statsFile.exists()) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (Reader reader = new BufferedReader(new FileReader(statsFile))) {
+            properties.load(reader);
+            long rowCount = Long.parseLong(properties.getProperty(ROW_COUNT, "0"));
+            Map<String, ColumnStatistics> columns = new HashMap<>();
+            for (String name : properties.stringPropertyNames()) {
+                if (name.startsWith(COLUMN_PREFIX) && name.endsWith(".distinct")) {
+                    String column = name.substring(COLUMN_PREFIX.length(), name.length() - ".distinct".length());
+                    columns.put(column, loadColumn(properties, COLUMN_PREFIX + column + ".", rowCount));
+                }
+            }
+            return new TableStatistics(statsFile, rowCount, columns);
+        } catch (IOException | RuntimeException e) {
+            // Statistics only guide the planner, so a damaged file is treated as missing.
+            return null;
+        }
+    }
+
+    private static ColumnStatistics loadColumn(Properties properties, String prefix, long rowCount) {
+        String bounds = properties.getProperty(prefix + "histogram", "");
+        String[] values = bounds.isEmpty() ? new String[0] : bounds.split(",");
+        double[] histogram = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            histogram[i] = Double.parseDouble(values[i]);
+        }
+        return new ColumnStatistics(rowCount, Long.parseLong(properties.getProperty(prefix + "distinct")),
+                Long.parseLong(properties.getProperty(prefix + "empty", "0")),
+                Long.parseLong(properties.getProperty(prefix + "numeric", "0")), histogram);
+    }
+
+    public void save() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(ROW_COUNT, String.valueOf(rowCount));
+        for (Map.Entry<String, ColumnStatistics> entry : columns.entrySet()) {
+            String prefix = COLUMN_PREFIX + entry.getKey() + ".";
+            ColumnStatistics stats = entry.getValue();
+            properties.setProperty(prefix + "distinct", String.valueOf(stats.getDistinct()));
+            properties.setProperty(prefix + "empty", String.valueOf(stats.getEmpty()));
+            properties.setProperty(prefix + "numeric", String.valueOf(stats.getNumeric()));
+            StringBuilder histogram = new StringBuilder();
+            for (double bound : stats.getHistogram()) {
+                histogram.append(histogram.length() == 0 ? "" : ",").append(bound);
+            }
+            properties.setProperty(prefix + "histogram", histogram.toString());
+        }
+        AtomicFile.write(statsFile, writer -> properties.store(writer, null));
+    }
+
+    // Statistics of a column, or null if it was added after the table was analyzed.
+    public ColumnStatistics getColumn(String column) {
+        return columns.get(column);
+    }
+
+    // Forget a dropped column, so a new column with the same name does not inherit its statistics.
+    public void removeColumn(String column) {
+        columns.remove(column);
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public void delete() {
+        statsFile.delete();
+    }
+}
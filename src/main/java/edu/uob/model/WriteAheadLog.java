@@ -0,0 +1,403 @@
+package edu.uob.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead log of one database, stored as wal.log in the database folder.
+ *
+ * <p>UPDATE and DELETE change the cached table in memory and append one record per
+ * changed row here instead of rewriting the table file. The table files are brought
+ * up to date later by a checkpoint, after which the log records they now contain are
+ * dropped. When a table is loaded, the records logged for it since its file was last
+ * written are applied again, which is also how changes survive a crash.
+ *
+ * <p>Every record is one line: a CRC32 of the rest of the line, the log sequence
+ * number (LSN), the record type, the table name and the fields of the type, all
+ * separated by tabs:
+ * <pre>
+ *   U  id, values...  the row with this id now holds these values (all columns)
+ *   D  id             the row with this id was deleted
+ *   C                 the whole table file was rewritten, earlier records of the table are in it
+ * </pre>
+ * Records describe the state of a row rather than a change to it, so applying one
+ * again has no effect. A crash can leave a torn record at the end of the file; it
+ * fails its checksum and is cut off, together with anything after it, when the log
+ * is opened.
+ *
+ * <p>Appending only writes to the file. Callers then wait in {@link #awaitDurable(long)}
+ * until the record has been forced to disk: while one session forces the file, the
+ * others queue behind it and are all covered by the next force (group commit).
+ */
+public class WriteAheadLog {
+    public static final String FILE_NAME = "wal.log";
+
+    private static final char UPDATE = 'U';
+    private static final char DELETE = 'D';
+    private static final char REWRITTEN = 'C';
+
+    private final File directory;
+    private final File file;
+    private FileChannel channel;
+    // Records appended since the last checkpoint, in LSN order.
+    private final List<Entry> entries = new ArrayList<>();
+    // Tables with records that are not yet in their table file.
+    private final Set<String> dirtyTables = new HashSet<>();
+    private long lastLsn;
+    private boolean closed;
+
+    // Only one thread forces the file at a time; the others wait here and usually find their record covered.
+    private final Object syncLock = new Object();
+    private volatile long durableLsn;
+    private long syncCount;
+
+    private WriteAheadLog(File directory) {
+        this.directory = directory;
+        this.file = new File(directory, FILE_NAME);
+    }
+
+    /**
+     * Open the log of a database, reading the records left by the previous run.
+     * @param directory Database folder
+     * @return The log
+     */
+    public static WriteAheadLog open(File directory) throws IOException {
+        WriteAheadLog log = new WriteAheadLog(directory);
+        long validLength = log.recover();
+        log.channel = FileChannel.open(log.file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (log.channel.size() > validLength) {
+            // Cut off a record torn by a crash, so new records are not appended after it.
+            log.channel.truncate(validLength);
+            log.channel.force(true);
+        }
+        log.channel.position(validLength);
+        log.durableLsn = log.lastLsn;
+        return log;
+    }
+
+    // Read the records on disk, stopping at the first incomplete or damaged one, and return where it starts.
+    private long recover() throws IOException {
+        if (!file.exists()) {
+            return 0;
+        }
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        int start = 0;
+        while (start < bytes.length) {
+            int end = start;
+            while (end < bytes.length && bytes[end] != '\n') end++;
+            if (end == bytes.length) break;
+            Entry entry = Entry.parse(new String(bytes, start, end - start, StandardCharsets.UTF_8));
+            if (entry == null) break;
+            entries.add(entry);
+            if (entry.type != REWRITTEN) {
+                dirtyTables.add(entry.table);
+            }
+            lastLsn = Math.max(lastLsn, entry.lsn);
+            start = end + 1;
+        }
+        return start;
+    }
+
+    /**
+     * Log the new values of updated rows.
+     * @return LSN to wait for with {@link #awaitDurable(long)}
+     */
+    public long logUpdates(Table table, Collection<Record> records) throws IOException {
+        int idIndex = table.getColumnIndex("id");
+        List<String[]> fields = new ArrayList<>(records.size());
+        for (Record record : records) {
+            String[] row = new String[record.getValues().size()];
+            row[0] = record.getValue(idIndex);
+            int i = 1;
+            for (int column = 0; column < row.length; column++) {
+                if (column != idIndex) row[i++] = record.getValue(column);
+            }
+            fields.add(row);
+        }
+        return append(UPDATE, table.getName(), fields);
+    }
+
+    /**
+     * Log the ids of deleted rows.
+     * @return LSN to wait for with {@link #awaitDurable(long)}
+     */
+    public long logDeletes(Table table, Collection<Record> records) throws IOException {
+        int idIndex = table.getColumnIndex("id");
+        List<String[]> fields = new ArrayList<>(records.size());
+        for (Record record : records) {
+            fields.add(new String[]{record.getValue(idIndex)});
+        }
+        return append(DELETE, table.getName(), fields);
+    }
+
+    /**
+     * Log that a table file was rewritten (or deleted), so the earlier records of the table are not applied again.
+     * @return LSN to wait for with {@link #awaitDurable(long)}
+     */
+    public long logRewritten(String tableName) throws IOException {
+        return append(REWRITTEN, tableName, Collections.singletonList(new String[0]));
+    }
+
+    private synchronized long append(char type, String tableName, List<String[]> fields) throws IOException {
+        if (closed) {
+            throw new IOException("Write-ahead log is closed");
+        }
+        StringBuilder lines = new StringBuilder();
+        List<Entry> appended = new ArrayList<>(fields.size());
+        long lsn = lastLsn;
+        for (String[] recordFields : fields) {
+            Entry entry = new Entry(++lsn, type, tableName, recordFields);
+            lines.append(entry.toLine()).append('\n');
+            appended.add(entry);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        lastLsn = lsn;
+        entries.addAll(appended);
+        if (type != REWRITTEN) {
+            dirtyTables.add(tableName);
+        }
+        return lsn;
+    }
+
+    /**
+     * Wait until the record with the given LSN, and every record before it, is on disk.
+     */
+    public void awaitDurable(long lsn) throws IOException {
+        if (durableLsn >= lsn) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (durableLsn >= lsn) {
+                // Forced by another session while this one was waiting.
+                return;
+            }
+            long target;
+            FileChannel forced;
+            synchronized (this) {
+                target = lastLsn;
+                forced = channel;
+            }
+            forced.force(false);
+            durableLsn = target;
+            syncCount++;
+        }
+    }
+
+    /**
+     * Apply the records logged for a table since its file was last rewritten to a table just loaded from that file.
+     */
+    public synchronized void replay(Table table) {
+        String tableName = table.getName();
+        int from = 0;
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            Entry entry = entries.get(i);
+            if (entry.type == REWRITTEN && entry.table.equals(tableName)) {
+                from = i + 1;
+                break;
+            }
+        }
+        int idIndex = table.getColumnIndex("id");
+        if (idIndex == -1) {
+            return;
+        }
+        for (Entry entry : entries.subList(from, entries.size())) {
+            if (!entry.table.equals(tableName)) continue;
+            Record record = table.getRecordById(entry.fields[0]);
+            if (record == null) continue;
+            if (entry.type == DELETE) {
+                table.removeRecords(Collections.singletonList(record));
+            } else if (entry.fields.length == table.getColumns().size()) {
+                // A row image of another width predates an ALTER TABLE that has already rewritten the file.
+                int field = 1;
+                for (int column = 0; column < entry.fields.length; column++) {
+                    if (column == idIndex) continue;
+                    if (!record.getValue(column).equals(entry.fields[field])) {
+                        table.setValue(record, column, entry.fields[field]);
+                    }
+                    field++;
+                }
+            }
+        }
+    }
+
+    // Whether the log holds changes to a table that are not yet in its file.
+    public synchronized boolean hasRecords(String tableName) {
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            Entry entry = entries.get(i);
+            if (entry.table.equals(tableName)) {
+                return entry.type != REWRITTEN;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Start a checkpoint: every record logged so far will be in a table file once the returned tables
+     * have been rewritten.
+     * @return The checkpoint, or null if no table has records waiting
+     */
+    public synchronized Checkpoint beginCheckpoint() {
+        if (dirtyTables.isEmpty() || closed) {
+            return null;
+        }
+        Checkpoint checkpoint = new Checkpoint(lastLsn, new ArrayList<>(dirtyTables));
+        dirtyTables.clear();
+        return checkpoint;
+    }
+
+    // A table could not be rewritten, so its records have to stay until the next checkpoint.
+    public synchronized void abortCheckpoint(Checkpoint checkpoint) {
+        dirtyTables.addAll(checkpoint.tables);
+    }
+
+    /**
+     * Finish a checkpoint once its tables have been rewritten, dropping the records now in the table files.
+     */
+    public void finishCheckpoint(Checkpoint checkpoint) throws IOException {
+        // The same lock order as awaitDurable, which may be forcing the channel about to be replaced.
+        synchronized (syncLock) {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                List<Entry> remaining = new ArrayList<>();
+                Set<String> tablesWithRecords = new HashSet<>();
+                for (Entry entry : entries) {
+                    if (entry.lsn <= checkpoint.lsn) continue;
+                    // A rewrite marker only matters when it hides earlier records that are being kept.
+                    if (entry.type != REWRITTEN) {
+                        tablesWithRecords.add(entry.table);
+                    } else if (!tablesWithRecords.contains(entry.table)) {
+                        continue;
+                    }
+                    remaining.add(entry);
+                }
+                if (remaining.isEmpty()) {
+                    channel.truncate(0);
+                    channel.force(true);
+                } else {
+                    // Records were added during the checkpoint: keep them in a new file that replaces the log in one step.
+                    AtomicFile.write(file, writer -> {
+                        for (Entry entry : remaining) {
+                            writer.write(entry.toLine());
+                            writer.write('\n');
+                        }
+                    });
+                    channel.close();
+                    channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+                    channel.position(channel.size());
+                    // Everything in the new file was forced above.
+                    durableLsn = lastLsn;
+                }
+                entries.clear();
+                entries.addAll(remaining);
+            }
+        }
+    }
+
+    // Stop using the log, e.g. because its database is being dropped.
+    public void close() {
+        synchronized (syncLock) {
+            synchronized (this) {
+                closed = true;
+                entries.clear();
+                dirtyTables.clear();
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // Nothing left to write.
+                }
+            }
+        }
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    // Number of records not yet dropped by a checkpoint.
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    // Number of times the log was forced to disk; lower than the number of commits when commits were grouped.
+    public long getSyncCount() {
+        synchronized (syncLock) {
+            return syncCount;
+        }
+    }
+
+    /**
+     * Records up to an LSN that will be in the table files once the listed tables have been rewritten.
+     */
+    public static class Checkpoint {
+        private final long lsn;
+        private final List<String> tables;
+
+        private Checkpoint(long lsn, List<String> tables) {
+            this.lsn = lsn;
+            this.tables = tables;
+        }
+
+        public List<String> getTables() {
+            return tables;
+        }
+    }
+
+    private static class Entry {
+        private final long lsn;
+        private final char type;
+        private final String table;
+        private final String[] fields;
+
+        Entry(long lsn, char type, String table, String[] fields) {
+            this.lsn = lsn;
+            this.type = type;
+            this.table = table;
+            this.fields = fields;
+        }
+
+        String toLine() {
+            StringBuilder payload = new StringBuilder();
+            payload.append(lsn).append('\t').append(type).append('\t').append(table);
+            for (String field : fields) {
+                payload.append('\t').append(field);
+            }
+            return Long.toHexString(checksum(payload.toString())) + "\t" + payload;
+        }
+
+        // Parse a line written by toLine, or return null if it is damaged.
+        static Entry parse(String line) {
+            int tab = line.indexOf('\t');
+            if (tab == -1) return null;
+            String payload = line.substring(tab + 1);
+            try {
+                if (Long.parseLong(line.substring(0, tab), 16) != checksum(payload)) return null;
+                String[] parts = payload.split("\t", -1);
+                if (parts.length < 3 || parts[1].length() != 1) return null;
+                char type = parts[1].charAt(0);
+                String[] fields = Arrays.copyOfRange(parts, 3, parts.length);
+                if (type != REWRITTEN && fields.length == 0) return null;
+                return new Entry(Long.parseLong(parts[0]), type, parts[2], fields);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        private static long checksum(String payload) {
+            CRC32 crc = new CRC32();
+            crc.update(payload.getBytes(StandardCharsets.UTF_8));
+            return crc.getValue();
+        }
+    }
+}
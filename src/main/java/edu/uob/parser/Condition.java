@@ -0,0 +1,198 @@
+package edu.uob.parser;
+
+import edu.uob.model.ColumnType;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Syntax tree of a WHERE clause: either a single comparison or an AND/OR of
+ * nested conditions. A condition is compiled into a {@link Predicate} against the
+ * header of the table it is evaluated on.
+ */
+public abstract class Condition {
+
+    /**
+     * Compile the condition. The operands of every AND and OR are ordered by their estimated
+     * selectivity, so the operand most likely to decide the result is evaluated first: the
+     * most selective one for AND, the least selective one for OR.
+     * @param headerList Columns of the table
+     * @param types Declared types of the columns, in the same order
+     * @param selectivity Estimated fraction of rows a comparison matches
+     * @return The compiled condition, or null if it uses an unsupported operator
+     */
+    public abstract Predicate compile(List<String> headerList, List<ColumnType> types,
+                                      ToDoubleFunction<Comparison> selectivity);
+
+    // Estimated fraction of rows this condition matches, assuming independent comparisons.
+    public abstract double selectivity(ToDoubleFunction<Comparison> selectivity);
+
+    // The condition with the operands of every AND and OR in the order compile evaluates them, as shown by EXPLAIN.
+    public abstract String describe(ToDoubleFunction<Comparison> selectivity);
+
+    // All comparisons in this condition, in the order they were written.
+    public List<Comparison> getComparisons() {
+        List<Comparison> comparisons = new ArrayList<>();
+        collectComparisons(comparisons);
+        return comparisons;
+    }
+
+    abstract void collectComparisons(List<Comparison> comparisons);
+
+    // A copy of this condition with every ? replaced by the parameter value at its position.
+    public abstract Condition bind(List<String> parameters);
+
+    /**
+     * column operator value, e.g. mark &gt; 60. In a prepared statement the value can be
+     * a parameter (mark &gt; ?), which is filled in by {@link #bind(List)}.
+     */
+    public static class Comparison extends Condition {
+        private final String column;
+        private final String operator;
+        private final String value;
+        private final int parameterIndex;
+
+        public Comparison(String column, String operator, String value) {
+            this(column, operator, value, -1);
+        }
+
+        // A comparison against the parameter at the given position, or against the value if the position is -1.
+        public Comparison(String column, String operator, String value, int parameterIndex) {
+            this.column = column;
+            this.operator = operator;
+            this.value = value;
+            this.parameterIndex = parameterIndex;
+        }
+
+        @Override
+        public Condition bind(List<String> parameters) {
+            return parameterIndex == -1 ? this : new Comparison(column, operator, parameters.get(parameterIndex));
+        }
+
+        @Override
+        public Predicate compile(List<String> headerList, List<ColumnType> types,
+                                 ToDoubleFunction<Comparison> selectivity) {
+            return Predicate.compile(new String[]{column, operator, value}, headerList, types);
+        }
+
+        @Override
+        public double selectivity(ToDoubleFunction<Comparison> selectivity) {
+            return selectivity.applyAsDouble(this);
+        }
+
+        @Override
+        public String describe(ToDoubleFunction<Comparison> selectivity) {
+            return toString();
+        }
+
+        @Override
+        void collectComparisons(List<Comparison> comparisons) {
+            comparisons.add(this);
+        }
+
+        public String getColumn() {
+            return column;
+        }
+
+        public String getOperator() {
+            return operator;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        @Override
+        public String toString() {
+            return column + " " + operator + " " + (parameterIndex == -1 ? value : "?");
+        }
+    }
+
+    /**
+     * Two or more conditions joined by AND or by OR.
+     */
+    public static class Logical extends Condition {
+        private final boolean and;
+        private final List<Condition> operands;
+
+        public Logical(boolean and, List<Condition> operands) {
+            this.and = and;
+            this.operands = operands;
+        }
+
+        @Override
+        public Predicate compile(List<String> headerList, List<ColumnType> types,
+                                 ToDoubleFunction<Comparison> selectivity) {
+            List<Predicate> predicates = new ArrayList<>();
+            for (Condition operand : evaluationOrder(selectivity)) {
+                Predicate predicate = operand.compile(headerList, types, selectivity);
+                if (predicate == null) {
+                    return null;
+                }
+                predicates.add(predicate);
+            }
+            return and ? Predicate.and(predicates) : Predicate.or(predicates);
+        }
+
+        private List<Condition> evaluationOrder(ToDoubleFunction<Comparison> selectivity) {
+            List<Condition> ordered = new ArrayList<>(operands);
+            Comparator<Condition> bySelectivity = Comparator.comparingDouble(operand -> operand.selectivity(selectivity));
+            ordered.sort(and ? bySelectivity : bySelectivity.reversed());
+            return ordered;
+        }
+
+        @Override
+        public String describe(ToDoubleFunction<Comparison> selectivity) {
+            List<String> parts = new ArrayList<>();
+            for (Condition operand : evaluationOrder(selectivity)) {
+                parts.add("(" + operand.describe(selectivity) + ")");
+            }
+            return String.join(and ? " AND " : " OR ", parts);
+        }
+
+        @Override
+        public double selectivity(ToDoubleFunction<Comparison> selectivity) {
+            double result = and ? 1.0 : 0.0;
+            for (Condition operand : operands) {
+                double s = operand.selectivity(selectivity);
+                result = and ? result * s : 1.0 - (1.0 - result) * (1.0 - s);
+            }
+            return result;
+        }
+
+        @Override
+        public Condition bind(List<String> parameters) {
+            List<Condition> bound = new ArrayList<>(operands.size());
+            for (Condition operand : operands) {
+                bound.add(operand.bind(parameters));
+            }
+            return new Logical(and, bound);
+        }
+
+        @Override
+        void collectComparisons(List<Comparison> comparisons) {
+            for (Condition operand : operands) {
+                operand.collectComparisons(comparisons);
+            }
+        }
+
+        public boolean isAnd() {
+            return and;
+        }
+
+        public List<Condition> getOperands() {
+            return operands;
+        }
+
+        @Override
+        public String toString() {
+            List<String> parts = new ArrayList<>();
+            for (Condition operand : operands) {
+                parts.add("(" + operand + ")");
+            }
+            return String.join(and ? " AND " : " OR ", parts);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package edu.uob.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Recursive-descent parser for WHERE clauses:
+ * <pre>
+ *   condition  ::= andCondition { OR andCondition }
+ *   andCondition ::= primary { AND primary }
+ *   primary    ::= "(" condition ")" | column operator value
+ *   operator   ::= == | != | &gt; | &lt; | &gt;= | &lt;= | LIKE
+ *   value      ::= word | 'string' | ?
+ * </pre>
+ * AND binds tighter than OR; brackets can be nested to any depth.
+ */
+public class ConditionParser {
+    private static final String[] OPERATORS = {"==", "!=", ">", "<", ">=", "<="};
+
+    private final List<Token> tokens;
+    private int position;
+    private int nextParameter;
+
+    private ConditionParser(List<Token> tokens, int firstParameter) {
+        this.tokens = tokens;
+        this.nextParameter = firstParameter;
+    }
+
+    public static Condition parse(String whereClause) throws QuerySyntaxException {
+        return parse(Tokenizer.tokenize(whereClause));
+    }
+
+    /**
+     * Parse the tokens of a WHERE clause, not including the WHERE keyword. A trailing ";" is ignored.
+     * @param tokens Tokens of the clause
+     * @return The syntax tree of the clause
+     */
+    public static Condition parse(List<Token> tokens) throws QuerySyntaxException {
+        return parse(tokens, 0);
+    }
+
+    /**
+     * Parse the tokens of a WHERE clause that may contain parameters (?).
+     * @param tokens Tokens of the clause
+     * @param firstParameter Position of the first parameter in the clause among the statement's parameters
+     * @return The syntax tree of the clause
+     */
+    public static Condition parse(List<Token> tokens, int firstParameter) throws QuerySyntaxException {
+        int end = tokens.size();
+        while (end > 0 && tokens.get(end - 1).isSymbol(";")) {
+            end--;
+        }
+        ConditionParser parser = new ConditionParser(tokens.subList(0, end), firstParameter);
+        Condition condition = parser.parseOr();
+        if (parser.position < parser.tokens.size()) {
+            throw new QuerySyntaxException("Unexpected " + parser.tokens.get(parser.position) + " in WHERE clause");
+        }
+        return condition;
+    }
+
+    private Condition parseOr() throws QuerySyntaxException {
+        List<Condition> operands = new ArrayList<>();
+        operands.add(parseAnd());
+        while (peekKeyword("OR")) {
+            position++;
+            operands.add(parseAnd());
+        }
+        return operands.size() == 1 ? operands.get(0) : new Condition.Logical(false, operands);
+    }
+
+    private Condition parseAnd() throws QuerySyntaxException {
+        List<Condition> operands = new ArrayList<>();
+        operands.add(parsePrimary());
+        while (peekKeyword("AND")) {
+            position++;
+            operands.add(parsePrimary());
+        }
+        return operands.size() == 1 ? operands.get(0) : new Condition.Logical(true, operands);
+    }
+
+    private Condition parsePrimary() throws QuerySyntaxException {
+        Token token = next("a condition");
+        if (token.isSymbol("(")) {
+            Condition condition = parseOr();
+            if (!next("\")\"").isSymbol(")")) {
+                throw new QuerySyntaxException("Missing \")\" in WHERE clause");
+            }
+            return condition;
+        }
+        if (token.getType() != Token.Type.WORD || token.isKeyword("AND") || token.isKeyword("OR")) {
+            throw new QuerySyntaxException("Expected a column name but found " + token);
+        }
+        String column = token.getText();
+        Token operator = next("an operator");
+        String op;
+        if (operator.isKeyword("LIKE")) {
+            op = "LIKE";
+        } else if (operator.getType() == Token.Type.SYMBOL && isComparisonOperator(operator.getText())) {
+            op = operator.getText();
+        } else {
+            throw new QuerySyntaxException("Invalid operator " + operator + " in WHERE clause");
+        }
+        Token value = next("a value");
+        if (value.isSymbol("?")) {
+            return new Condition.Comparison(column, op, null, nextParameter++);
+        }
+        if (value.getType() == Token.Type.SYMBOL) {
+            throw new QuerySyntaxException("Expected a value but found " + value);
+        }
+        return new Condition.Comparison(column, op, value.getText());
+    }
+
+    private static boolean isComparisonOperator(String text) {
+        for (String operator : OPERATORS) {
+            if (operator.equals(text)) return true;
+        }
+        return false;
+    }
+
+    private boolean peekKeyword(String keyword) {
+        return position < tokens.size() && tokens.get(position).isKeyword(keyword);
+    }
+
+    private Token next(String expected) throws QuerySyntaxException {
+        if (position >= tokens.size()) {
+            throw new QuerySyntaxException("Expected " + expected + " at the end of the WHERE clause");
+        }
+        return tokens.get(position++);
+    }
+}
@@ -0,0 +1,28 @@
+package edu.uob.parser;
+
+import java.util.List;
+
+/**
+ * DELETE FROM table WHERE condition. The FROM keyword is optional.
+ */
+public class DeleteStatement extends Statement {
+    private final Condition where;
+
+    public DeleteStatement(String tableName, Condition where) {
+        this(tableName, where, 0);
+    }
+
+    public DeleteStatement(String tableName, Condition where, int parameterCount) {
+        super(tableName, parameterCount);
+        this.where = where;
+    }
+
+    @Override
+    public DeleteStatement bind(List<String> parameters) {
+        return new DeleteStatement(getTableName(), where.bind(parameters));
+    }
+
+    public Condition getWhere() {
+        return where;
+    }
+}
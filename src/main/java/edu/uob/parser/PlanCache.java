@@ -0,0 +1,101 @@
+package edu.uob.parser;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps recently parsed statements, keyed by their normalized text, so a
+ * command that was seen before is executed without tokenizing or parsing it
+ * again. The least recently used statement is evicted once the cache is full.
+ */
+public class PlanCache {
+    public static final int DEFAULT_CAPACITY = 512;
+
+    private final Map<String, Statement> statements;
+    private long hits;
+    private long misses;
+
+    public PlanCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public PlanCache(int capacity) {
+        this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Statement> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Get the parsed form of a command, parsing it on a miss.
+     * @param command SELECT, UPDATE or DELETE command
+     * @return The parsed statement
+     */
+    public Statement get(String command) throws QuerySyntaxException {
+        String key = normalize(command);
+        synchronized (this) {
+            Statement statement = statements.get(key);
+            if (statement != null) {
+                hits++;
+                return statement;
+            }
+            misses++;
+        }
+        // Parse outside the lock; two sessions parsing the same new command at once is harmless.
+        Statement statement = StatementParser.parse(command);
+        synchronized (this) {
+            statements.put(key, statement);
+        }
+        return statement;
+    }
+
+    /**
+     * Collapse runs of whitespace outside string literals and drop the trailing ";", so commands that
+     * only differ in layout share one entry. Literals and letter case are kept, because values are
+     * compared as written.
+     */
+    static String normalize(String command) {
+        StringBuilder normalized = new StringBuilder(command.length());
+        char quote = 0;
+        boolean pendingSpace = false;
+        for (int i = 0; i < command.length(); i++) {
+            char c = command.charAt(i);
+            if (quote == 0 && Character.isWhitespace(c)) {
+                pendingSpace = normalized.length() > 0;
+                continue;
+            }
+            if (pendingSpace) {
+                normalized.append(' ');
+                pendingSpace = false;
+            }
+            if (quote == 0 && (c == '\'' || c == '"')) {
+                quote = c;
+            } else if (c == quote) {
+                quote = 0;
+            }
+            normalized.append(c);
+        }
+        int end = normalized.length();
+        while (end > 0 && (normalized.charAt(end - 1) == ';' || normalized.charAt(end - 1) == ' ')) {
+            end--;
+        }
+        normalized.setLength(end);
+        return normalized.toString();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized int size() {
+        return statements.size();
+    }
+}
@@ -0,0 +1,156 @@
+package edu.uob.parser;
+
+import edu.uob.model.ColumnType;
+
+import java.util.List;
+
+/**
+ * A WHERE clause compiled against a table header. Column names are resolved to
+ * indexes, numeric constants are parsed and LIKE patterns are prepared once per
+ * query, so testing a row does no lookups, parsing of the constant or allocation.
+ *
+ * <p>Columns declared INT or FLOAT only hold numbers (or are empty), so they are
+ * compared as doubles without first checking whether each value is a number, and
+ * == and != compare them as numbers too, so 65 == 65.0.
+ */
+@FunctionalInterface
+public interface Predicate {
+
+    boolean test(List<String> rowValues);
+
+    /**
+     * Compile a single condition.
+     * @param cond Condition as (column, operator, value); the value is already unquoted
+     * @param headerList Columns of the table the condition is evaluated against
+     * @param types Declared types of the columns, in the same order
+     * @return The compiled condition, or null if the operator is not supported
+     */
+    static Predicate compile(String[] cond, List<String> headerList, List<ColumnType> types) {
+        int columnIndex = headerList.indexOf(cond[0]);
+        String value = cond[2];
+        if (columnIndex < types.size() && types.get(columnIndex).isNumeric() && !cond[1].equals("LIKE")
+                && parseNumber(value) != null) {
+            return typedNumeric(columnIndex, cond[1], parseNumber(value));
+        }
+        switch (cond[1]) {
+            case "==":
+                return row -> columnIndex < row.size() && row.get(columnIndex).equalsIgnoreCase(value);
+            case "!=":
+                return row -> columnIndex < row.size() && !row.get(columnIndex).equalsIgnoreCase(value);
+            case ">":
+                return numeric(columnIndex, value, (actual, limit) -> actual > limit);
+            case "<":
+                return numeric(columnIndex, value, (actual, limit) -> actual < limit);
+            case ">=":
+                return numeric(columnIndex, value, (actual, limit) -> actual >= limit);
+            case "<=":
+                return numeric(columnIndex, value, (actual, limit) -> actual <= limit);
+            case "LIKE":
+                return row -> columnIndex < row.size() && containsIgnoreCase(row.get(columnIndex), value);
+            default:
+                return null;
+        }
+    }
+
+    // Compare the column as a number; rows whose value is not a number, or a non-numeric bound, never match.
+    private static Predicate numeric(int columnIndex, String value, DoubleComparison comparison) {
+        Double bound = parseNumber(value);
+        if (bound == null) return row -> false;
+        double limit = bound;
+        return row -> {
+            Double actual = columnIndex < row.size() ? parseNumber(row.get(columnIndex)) : null;
+            return actual != null && comparison.test(actual, limit);
+        };
+    }
+
+    // Compare a numeric column, whose values are all numbers or empty, with a numeric bound.
+    private static Predicate typedNumeric(int columnIndex, String operator, double limit) {
+        DoubleComparison comparison;
+        switch (operator) {
+            case "==":
+                comparison = (actual, bound) -> actual == bound;
+                break;
+            case "!=":
+                comparison = (actual, bound) -> actual != bound;
+                break;
+            case ">":
+                comparison = (actual, bound) -> actual > bound;
+                break;
+            case "<":
+                comparison = (actual, bound) -> actual < bound;
+                break;
+            case ">=":
+                comparison = (actual, bound) -> actual >= bound;
+                break;
+            case "<=":
+                comparison = (actual, bound) -> actual <= bound;
+                break;
+            default:
+                return null;
+        }
+        // A missing value is only != a number, as for untyped columns.
+        boolean emptyMatches = operator.equals("!=");
+        return row -> {
+            if (columnIndex >= row.size()) return false;
+            String actual = row.get(columnIndex);
+            if (actual.isEmpty()) return emptyMatches;
+            try {
+                return comparison.test(Double.parseDouble(actual), limit);
+            } catch (NumberFormatException e) {
+                // Only possible if the table file was edited by hand.
+                return false;
+            }
+        };
+    }
+
+    @FunctionalInterface
+    interface DoubleComparison {
+        boolean test(double actual, double limit);
+    }
+
+    // All of the predicates must hold; stops at the first one that does not.
+    static Predicate and(List<Predicate> predicates) {
+        Predicate[] parts = predicates.toArray(new Predicate[0]);
+        return row -> {
+            for (Predicate part : parts) {
+                if (!part.test(row)) return false;
+            }
+            return true;
+        };
+    }
+
+    // Any of the predicates must hold; stops at the first one that does.
+    static Predicate or(List<Predicate> predicates) {
+        Predicate[] parts = predicates.toArray(new Predicate[0]);
+        return row -> {
+            for (Predicate part : parts) {
+                if (part.test(row)) return true;
+            }
+            return false;
+        };
+    }
+
+    private static Double parseNumber(String value) {
+        // Skip the exception for values that cannot be numbers, which is the common case for text columns.
+        if (value.isEmpty()) return null;
+        char first = value.charAt(0);
+        if (first > ' ' && !Character.isDigit(first) && first != '-' && first != '+' && first != '.'
+                && first != 'N' && first != 'I') {
+            return null;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // Same result as haystack.toLowerCase().contains(needle.toLowerCase()) for ASCII, without the copies.
+    private static boolean containsIgnoreCase(String haystack, String needle) {
+        int last = haystack.length() - needle.length();
+        for (int i = 0; i <= last; i++) {
+            if (haystack.regionMatches(true, i, needle, 0, needle.length())) return true;
+        }
+        return false;
+    }
+}
@@ -1,79 +1,407 @@
-package edu.uob.parser;
-
-import edu.uob.commands.*;
-import edu.uob.model.Database;
-
-import java.io.File;
-import java.io.IOException;
-import java.nio.file.Paths;
-
-public class QueryExecuter {
-//    private String command;
-    private String storageFolderPath;
-    private Database database;
-
-    public QueryExecuter() {
-        storageFolderPath = Paths.get("databases").toAbsolutePath().toString();
-        database = new Database(storageFolderPath);
-    }
-
-    public String execute(String command) throws IOException {
-        command = command.trim();
-        if (command.isEmpty()) {
-            return "[ERROR] command is empty.";
-        }
-        String[] commandTokens = command.split("\\s+");
-        String commandType = commandTokens[0].toUpperCase();
-        String result;
-        switch (commandType) {
-            case "SELECT" -> result = executeSelectCommand(command);
-            case "USE" -> result = executeUseCommand(command);
-            case "CREATE" -> result = executeCreateCommand(commandTokens);
-            case "DROP" -> result = executeDropCommand(commandTokens);
-            case "ALTER" -> result = new AlterTableCommand(database).execute(commandTokens);
-            case "INSERT" -> result = new InsertCommand(database).execute(commandTokens);
-            case "UPDATE" -> result = new UpdateCommand(database).execute(commandTokens);
-            case "DELETE" -> result = new DeleteCommand(database).execute(commandTokens);
-            case "JOIN" -> result = new JoinCommand(database).execute(commandTokens);
-            default -> result = "[ERROR] Unsupported command.";
-        }
-        return result;
-    }
-
-    private String executeSelectCommand(String command) {
-        if (database.getCurrentDatabase().isEmpty()) {
-            return "[ERROR] No database selected: QueryExecuter.executeSelectCommand";
-        } else {
-            File currentDatabaseFolder = database.getCurrentDatabasePath();
-            return new SelectCommand(database).execute(command, currentDatabaseFolder);
-        }
-    }
-
-    private String executeUseCommand(String command) throws IOException {
-        String[] tokens = command.split("\\s+");
-        database.useDatabase(tokens[1].replace(";", ""));
-        return "[OK]";
-    }
-
-    private String executeCreateCommand(String[] commandTokens) {
-        String createType = commandTokens[1].toUpperCase();
-        if (createType.equals("DATABASE")) {
-            return new CreateDatabaseCommand(storageFolderPath).execute(commandTokens);
-        } else if (createType.equals("TABLE")) {
-            return new CreateTableCommand(database).execute(commandTokens);
-        } else {
-            return "[ERROR] Unsupported command.";
-        }
-    }
-
-    private String executeDropCommand(String[] commandTokens) {
-        String dropType = commandTokens[1].toUpperCase();
-        if (dropType.equals("DATABASE")) {
-            return new DropDatabaseCommand(database).execute(commandTokens);
-        } else if (dropType.equals("TABLE")) {
-            return new DropTableCommand(database).execute(commandTokens);
-        } else {
-            return "[ERROR] Unsupported command.";
-        }
-    }
-}
+package edu.uob.parser;
+
+import edu.uob.commands.*;
+import edu.uob.metrics.ServerMetrics;
+import edu.uob.model.ColumnType;
+import edu.uob.model.Database;
+import edu.uob.model.PlanNode;
+import edu.uob.model.Session;
+import edu.uob.protocol.ResultSink;
+import edu.uob.protocol.TextResultWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+public class QueryExecuter {
+//    private String command;
+    private String storageFolderPath;
+    private Database database;
+    // Session used by callers that do not track their own, e.g. DBServer.handleCommand(String).
+    private final Session defaultSession = new Session();
+    // Parsed SELECT, UPDATE and DELETE statements, shared by all sessions.
+    private final PlanCache planCache = new PlanCache();
+    // Results of plain SELECTs, shared by all sessions and dropped when their table changes.
+    private final ResultCache resultCache = new ResultCache();
+
+    public QueryExecuter() {
+        this(new Database(Paths.get("databases").toAbsolutePath().toString()));
+    }
+
+    public QueryExecuter(Database database) {
+        this.database = database;
+        this.storageFolderPath = database.getRootPath().getAbsolutePath();
+        ServerMetrics metrics = database.getMetrics();
+        metrics.gauge("cache.plan.hits", planCache::getHits);
+        metrics.gauge("cache.plan.misses", planCache::getMisses);
+        metrics.gauge("cache.plan.hit_ratio", () -> ServerMetrics.hitRatio(planCache.getHits(), planCache.getMisses()));
+        metrics.gauge("cache.plan.size", planCache::size);
+        metrics.gauge("cache.result.hits", resultCache::getHits);
+        metrics.gauge("cache.result.misses", resultCache::getMisses);
+        metrics.gauge("cache.result.hit_ratio",
+                () -> ServerMetrics.hitRatio(resultCache.getHits(), resultCache.getMisses()));
+        metrics.gauge("cache.result.size", resultCache::size);
+        metrics.gauge("cache.result.bytes", resultCache::getBytes);
+    }
+
+    public String execute(String command) throws IOException {
+        return execute(defaultSession, command);
+    }
+
+    /**
+     * Execute a command on behalf of one client session.
+     * @param session Session of the client that sent the command
+     * @param command SQL command string
+     * @return Result message
+     */
+    public String execute(Session session, String command) throws IOException {
+        long start = System.nanoTime();
+        command = command.trim();
+        if (command.isEmpty()) {
+            return "[ERROR] command is empty.";
+        }
+        String commandType = firstWord(command).toUpperCase();
+        String result;
+        switch (commandType) {
+            case "SELECT", "UPDATE", "DELETE" -> result = executeStatement(session, command, PlanNode.Mode.NONE);
+            case "EXPLAIN" -> result = executeExplainCommand(session, command);
+            case "PREPARE" -> result = executePrepareCommand(session, command);
+            case "EXECUTE" -> result = executeExecuteCommand(session, command);
+            case "DEALLOCATE" -> result = executeDeallocateCommand(session, command);
+            case "LOAD" -> result = new LoadCommand(database, session, storageFolderPath).execute(command);
+            default -> result = executeTokenizedCommand(session, commandType, command.split("\\s+"));
+        }
+        session.commandExecuted(result);
+        database.getMetrics().commandExecuted(ServerMetrics.commandType(commandType), System.nanoTime() - start,
+                result.startsWith("[ERROR]"));
+        return result;
+    }
+
+    /**
+     * Run a plain SELECT, passing its rows to the sink as they are found instead of building the whole
+     * result first. Other commands, and SELECTs that fail before reaching a table (no database selected,
+     * syntax errors, parameters), are left to {@link #execute(Session, String)}.
+     * @param session Session of the client that sent the command
+     * @param command SQL command string
+     * @param sink Receives the result
+     * @return The status line sent to the sink, or null if nothing was sent because the command has to go
+     *         through execute instead
+     * @throws IOException If the sink fails, or the SELECT failed after part of its result was sent, in
+     *         which case the client cannot tell where the result ends and the connection has to be closed
+     */
+    public String stream(Session session, String command, ResultSink sink) throws IOException {
+        long start = System.nanoTime();
+        command = command.trim();
+        if (!firstWord(command).equalsIgnoreCase("SELECT")
+                || session.getCurrentDatabase() == null || session.getCurrentDatabase().isEmpty()) {
+            return null;
+        }
+        Statement statement;
+        try {
+            statement = parse(command);
+        } catch (QuerySyntaxException e) {
+            return null;
+        }
+        if (!(statement instanceof SelectStatement select) || statement.getParameterCount() > 0) {
+            return null;
+        }
+        OutputTracker output = new OutputTracker(sink);
+        String status;
+        try {
+            status = select(session, command, select, output);
+        } catch (RuntimeException e) {
+            if (output.started) {
+                throw new IOException("SELECT failed after part of its result was sent", e);
+            }
+            status = "[ERROR] " + e.getMessage();
+            sink.status(status);
+            sink.end();
+        }
+        session.commandExecuted(status);
+        // The rows were written to the sink while they were found, so this includes sending them.
+        database.getMetrics().commandExecuted("SELECT", System.nanoTime() - start, status.startsWith("[ERROR]"));
+        return status;
+    }
+
+    /**
+     * Run a plain SELECT, answering it from the result cache when its table has not changed since the same
+     * query was last run in the same database.
+     * @param command Command text, the key of the result together with the database
+     * @param sink Receives the result
+     * @return The status line sent to the sink
+     */
+    private String select(Session session, String command, SelectStatement select, ResultSink sink) throws IOException {
+        if (!resultCache.isEnabled()) {
+            return new SelectCommand(database, session).execute(select, PlanNode.Mode.NONE, sink);
+        }
+        String key = ResultCache.key(session.getCurrentDatabase(), command);
+        // Read before the query runs, so a change made while it runs makes its result out of date at once.
+        long tableVersion = database.getTableVersion(session, select.getTableName());
+        ResultCache.Result cached = resultCache.get(key, tableVersion);
+        if (cached != null) {
+            cached.sendTo(sink);
+            return "[OK]";
+        }
+        return new SelectCommand(database, session).execute(select, PlanNode.Mode.NONE,
+                resultCache.recordTo(key, tableVersion, sink));
+    }
+
+    // Get the parsed statement from the plan cache, timed as the parse phase of its statement type.
+    private Statement parse(String command) throws QuerySyntaxException {
+        long start = System.nanoTime();
+        try {
+            return planCache.get(command);
+        } finally {
+            database.getMetrics().record(ServerMetrics.commandType(command), ServerMetrics.Phase.PARSE,
+                    System.nanoTime() - start);
+        }
+    }
+
+    private static String firstWord(String command) {
+        int end = 0;
+        while (end < command.length() && !Character.isWhitespace(command.charAt(end))) {
+            end++;
+        }
+        return command.substring(0, end);
+    }
+
+    // Commands that are not cached are still split into whitespace-separated tokens.
+    private String executeTokenizedCommand(Session session, String commandType, String[] commandTokens) throws IOException {
+        return switch (commandType) {
+            case "USE" -> executeUseCommand(session, commandTokens);
+            case "CREATE" -> executeCreateCommand(session, commandTokens);
+            case "DROP" -> executeDropCommand(session, commandTokens);
+            case "ALTER" -> new AlterTableCommand(database, session).execute(commandTokens);
+            case "INSERT" -> new InsertCommand(database, session).execute(commandTokens);
+            case "JOIN" -> new JoinCommand(database, session).execute(commandTokens);
+            case "SHOW" -> new ShowStatsCommand(database.getMetrics()).execute(commandTokens);
+            case "ANALYZE" -> new AnalyzeCommand(database, session).execute(commandTokens);
+            default -> "[ERROR] Unsupported command.";
+        };
+    }
+
+    /**
+     * Run a SELECT, UPDATE or DELETE. Statements are parsed once and then served from the plan cache.
+     * @param session Session of the client that sent the command
+     * @param command Command text
+     * @param mode NONE to run the statement, PLAN or ANALYZE to explain it
+     * @return Result message
+     */
+    private String executeStatement(Session session, String command, PlanNode.Mode mode) {
+        if (session.getCurrentDatabase() == null || session.getCurrentDatabase().isEmpty()) {
+            return "[ERROR] No database selected: QueryExecuter.executeStatement";
+        }
+        Statement statement;
+        try {
+            statement = parse(command);
+        } catch (QuerySyntaxException e) {
+            return "[ERROR] " + e.getMessage();
+        }
+        if (statement.getParameterCount() > 0) {
+            return "[ERROR] Parameters (?) can only be used with PREPARE";
+        }
+        if (statement instanceof SelectStatement select && mode == PlanNode.Mode.NONE) {
+            TextResultWriter.Builder result = new TextResultWriter.Builder();
+            try {
+                select(session, command, select, result);
+            } catch (IOException e) {
+                // Appending to a StringBuilder cannot fail, so the table changed while the rows were read.
+                return "[ERROR] " + e.getMessage();
+            }
+            return result.toString();
+        }
+        return runStatement(session, statement, mode);
+    }
+
+    private String runStatement(Session session, Statement statement, PlanNode.Mode mode) {
+        if (statement instanceof SelectStatement select) {
+            return new SelectCommand(database, session).execute(select, mode);
+        } else if (statement instanceof UpdateStatement update) {
+            return new UpdateCommand(database, session).execute(update, mode);
+        } else {
+            return new DeleteCommand(database, session).execute((DeleteStatement) statement, mode);
+        }
+    }
+
+    // EXPLAIN [ANALYZE] <SELECT, UPDATE, DELETE or JOIN>; ANALYZE runs the statement and measures each operator
+    private String executeExplainCommand(Session session, String command) throws IOException {
+        String explained = command.substring("EXPLAIN".length()).trim();
+        PlanNode.Mode mode = PlanNode.Mode.PLAN;
+        if (firstWord(explained).equalsIgnoreCase("ANALYZE")) {
+            mode = PlanNode.Mode.ANALYZE;
+            explained = explained.substring("ANALYZE".length()).trim();
+        }
+        return switch (firstWord(explained).toUpperCase()) {
+            case "SELECT", "UPDATE", "DELETE" -> executeStatement(session, explained, mode);
+            case "JOIN" -> new JoinCommand(database, session).execute(explained.split("\\s+"), mode);
+            default -> "[ERROR] Only SELECT, UPDATE, DELETE and JOIN can be explained";
+        };
+    }
+
+    // PREPARE name AS SELECT | UPDATE | DELETE ... with ? for each parameter
+    private String executePrepareCommand(Session session, String command) {
+        List<Token> tokens;
+        try {
+            tokens = Tokenizer.tokenize(command);
+        } catch (QuerySyntaxException e) {
+            return "[ERROR] " + e.getMessage();
+        }
+        if (tokens.size() < 4 || tokens.get(1).getType() != Token.Type.WORD || !tokens.get(2).isKeyword("AS")) {
+            return "[ERROR] Invalid PREPARE syntax. Use: PREPARE name AS <SELECT, UPDATE or DELETE>;";
+        }
+        String name = tokens.get(1).getText();
+        // The statement is everything after "PREPARE name AS".
+        String body = command.trim();
+        for (int word = 0; word < 3; word++) {
+            body = body.substring(firstWord(body).length()).trim();
+        }
+        String bodyType = firstWord(body).toUpperCase();
+        if (!bodyType.equals("SELECT") && !bodyType.equals("UPDATE") && !bodyType.equals("DELETE")) {
+            return "[ERROR] Only SELECT, UPDATE and DELETE can be prepared";
+        }
+        try {
+            session.prepare(name, parse(body));
+        } catch (QuerySyntaxException e) {
+            return "[ERROR] " + e.getMessage();
+        }
+        return "[OK] Statement prepared";
+    }
+
+    // EXECUTE name [(value, ...)]
+    private String executeExecuteCommand(Session session, String command) {
+        if (session.getCurrentDatabase() == null || session.getCurrentDatabase().isEmpty()) {
+            return "[ERROR] No database selected: QueryExecuter.executeExecuteCommand";
+        }
+        List<Token> tokens;
+        try {
+            tokens = Tokenizer.tokenize(command);
+        } catch (QuerySyntaxException e) {
+            return "[ERROR] " + e.getMessage();
+        }
+        int end = tokens.size();
+        while (end > 0 && tokens.get(end - 1).isSymbol(";")) {
+            end--;
+        }
+        if (end < 2 || tokens.get(1).getType() != Token.Type.WORD) {
+            return "[ERROR] Invalid EXECUTE syntax. Use: EXECUTE name (value, ...);";
+        }
+        Statement statement = session.getPreparedStatement(tokens.get(1).getText());
+        if (statement == null) {
+            return "[ERROR] Prepared statement does not exist";
+        }
+        List<String> parameters = new ArrayList<>();
+        if (end > 2) {
+            if (!tokens.get(2).isSymbol("(") || !tokens.get(end - 1).isSymbol(")") || (end > 4 && end % 2 == 0)) {
+                return "[ERROR] Invalid EXECUTE syntax. Use: EXECUTE name (value, ...);";
+            }
+            for (int i = 3; i < end - 1; i++) {
+                Token value = tokens.get(i);
+                boolean expectValue = (i - 3) % 2 == 0;
+                if (expectValue ? value.getType() == Token.Type.SYMBOL : !value.isSymbol(",")) {
+                    return "[ERROR] Invalid EXECUTE syntax. Use: EXECUTE name (value, ...);";
+                }
+                if (expectValue) {
+                    parameters.add(value.getText());
+                }
+            }
+        }
+        if (parameters.size() != statement.getParameterCount()) {
+            return "[ERROR] Expected " + statement.getParameterCount() + " parameters but got " + parameters.size();
+        }
+        return runStatement(session, statement.bind(parameters), PlanNode.Mode.NONE);
+    }
+
+    // DEALLOCATE name
+    private String executeDeallocateCommand(Session session, String command) {
+        String[] tokens = command.replace(";", " ").trim().split("\\s+");
+        if (tokens.length != 2) {
+            return "[ERROR] Invalid DEALLOCATE syntax";
+        }
+        return session.deallocate(tokens[1]) ? "[OK] Statement deallocated" : "[ERROR] Prepared statement does not exist";
+    }
+
+    public PlanCache getPlanCache() {
+        return planCache;
+    }
+
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    public Database getDatabase() {
+        return database;
+    }
+
+    private String executeUseCommand(Session session, String[] tokens) throws IOException {
+        database.useDatabase(session, tokens[1].replace(";", ""));
+        return "[OK]";
+    }
+
+    private String executeCreateCommand(Session session, String[] commandTokens) {
+        String createType = commandTokens[1].toUpperCase();
+        if (createType.equals("DATABASE")) {
+            return new CreateDatabaseCommand(database).execute(commandTokens);
+        } else if (createType.equals("TABLE")) {
+            return new CreateTableCommand(database, session).execute(commandTokens);
+        } else if (createType.equals("INDEX")) {
+            return new CreateIndexCommand(database, session).execute(commandTokens);
+        } else {
+            return "[ERROR] Unsupported command.";
+        }
+    }
+
+    private String executeDropCommand(Session session, String[] commandTokens) {
+        String dropType = commandTokens[1].toUpperCase();
+        if (dropType.equals("DATABASE")) {
+            return new DropDatabaseCommand(database).execute(commandTokens);
+        } else if (dropType.equals("TABLE")) {
+            return new DropTableCommand(database, session).execute(commandTokens);
+        } else if (dropType.equals("INDEX")) {
+            return new DropIndexCommand(database, session).execute(commandTokens);
+        } else {
+            return "[ERROR] Unsupported command.";
+        }
+    }
+
+    // Passes a result on, noting whether any of it has been sent yet.
+    private static class OutputTracker implements ResultSink {
+        private final ResultSink sink;
+        private boolean started;
+
+        OutputTracker(ResultSink sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public void status(String status) throws IOException {
+            started = true;
+            sink.status(status);
+        }
+
+        @Override
+        public void header(List<String> columns) throws IOException {
+            started = true;
+            sink.header(columns);
+        }
+
+        @Override
+        public void header(List<String> columns, List<ColumnType> types) throws IOException {
+            started = true;
+            sink.header(columns, types);
+        }
+
+        @Override
+        public void row(List<String> values) throws IOException {
+            started = true;
+            sink.row(values);
+        }
+
+        @Override
+        public void end() throws IOException {
+            started = true;
+            sink.end();
+        }
+    }
+}
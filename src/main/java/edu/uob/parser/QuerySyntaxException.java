@@ -0,0 +1,13 @@
+package edu.uob.parser;
+
+/**
+ * Thrown when a command cannot be tokenized or parsed. The message describes
+ * what was wrong and is shown to the client after "[ERROR] ".
+ */
+public class QuerySyntaxException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    public QuerySyntaxException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,211 @@
+package edu.uob.parser;
+
+import edu.uob.model.ColumnType;
+import edu.uob.protocol.ResultSink;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the results of recent SELECTs, keyed by database and normalized query
+ * text, so a query that is repeated while its table is unchanged is answered
+ * without reading the table again. Each result remembers the version of its
+ * table it was read at (see {@link edu.uob.model.Database#getTableVersion}) and
+ * is discarded as soon as the table has a newer one, which includes the table
+ * file being changed outside the server. The estimated size of all
+ * results is kept under a bound, evicting the least recently used result first;
+ * a bound of 0 turns the cache off.
+ */
+public class ResultCache {
+    public static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+    // No result may take more than this fraction of the cache, so one large scan cannot flush everything else.
+    private static final int MAX_ENTRY_FRACTION = 8;
+    // Rough sizes of the objects around the values, in bytes.
+    private static final int ENTRY_OVERHEAD = 128;
+    private static final int ROW_OVERHEAD = 48;
+    private static final int VALUE_OVERHEAD = 40;
+
+    private final long maxBytes;
+    private final Map<String, Result> results = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private long hits;
+    private long misses;
+
+    public ResultCache() {
+        this(Long.getLong("db.resultCache.maxBytes", DEFAULT_MAX_BYTES));
+    }
+
+    public ResultCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * A cached result: the status, the header and the rows as they were sent.
+     */
+    public static class Result {
+        private final long tableVersion;
+        private final String status;
+        private final List<String> columns;
+        private final List<ColumnType> types;
+        private final List<List<String>> rows;
+        private final long bytes;
+
+        private Result(long tableVersion, String status, List<String> columns, List<ColumnType> types,
+                       List<List<String>> rows, long bytes) {
+            this.tableVersion = tableVersion;
+            this.status = status;
+            this.columns = columns;
+            this.types = types;
+            this.rows = rows;
+            this.bytes = bytes;
+        }
+
+        // Send the result again, exactly as the query sent it.
+        public void sendTo(ResultSink sink) throws IOException {
+            sink.status(status);
+            sink.header(columns, types);
+            for (List<String> row : rows) {
+                sink.row(row);
+            }
+            sink.end();
+        }
+    }
+
+    public static String key(String database, String command) {
+        return database + "/" + PlanCache.normalize(command);
+    }
+
+    public boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    /**
+     * Get the result of a query, if it was cached at the current version of its table.
+     * @param key Key of the query, see {@link #key}
+     * @param tableVersion Current version of the table the query reads
+     * @return The result, or null on a miss
+     */
+    public synchronized Result get(String key, long tableVersion) {
+        Result result = results.get(key);
+        if (result != null && result.tableVersion == tableVersion) {
+            hits++;
+            return result;
+        }
+        if (result != null) {
+            // The table changed since, so the result is never valid again.
+            results.remove(key);
+            bytes -= result.bytes;
+        }
+        misses++;
+        return null;
+    }
+
+    /**
+     * Wrap the sink a query sends its result to, keeping a copy of the result and caching it once the
+     * query has finished. Results that are errors, or too large to cache, are only passed on.
+     * @param key Key of the query, see {@link #key}
+     * @param tableVersion Version of the table, read before the query started
+     * @param sink Sink the result is passed on to
+     * @return Sink for the query to send its result to
+     */
+    public ResultSink recordTo(String key, long tableVersion, ResultSink sink) {
+        return new ResultSink() {
+            private final long maxEntryBytes = maxBytes / MAX_ENTRY_FRACTION;
+            private String status;
+            private List<String> columns;
+            private List<ColumnType> types;
+            private List<List<String>> rows = new ArrayList<>();
+            private long size = ENTRY_OVERHEAD;
+
+            @Override
+            public void status(String status) throws IOException {
+                sink.status(status);
+                this.status = status;
+            }
+
+            @Override
+            public void header(List<String> columns) throws IOException {
+                sink.header(columns);
+                recordHeader(columns, null);
+            }
+
+            @Override
+            public void header(List<String> columns, List<ColumnType> types) throws IOException {
+                sink.header(columns, types);
+                recordHeader(columns, types);
+            }
+
+            private void recordHeader(List<String> columns, List<ColumnType> types) {
+                this.columns = new ArrayList<>(columns);
+                this.types = types == null ? null : new ArrayList<>(types);
+                size += sizeOf(columns);
+            }
+
+            @Override
+            public void row(List<String> values) throws IOException {
+                sink.row(values);
+                if (rows == null) {
+                    return;
+                }
+                size += sizeOf(values);
+                if (size > maxEntryBytes) {
+                    rows = null;
+                } else {
+                    // Rows may be views of the table, so keep a copy.
+                    rows.add(new ArrayList<>(values));
+                }
+            }
+
+            @Override
+            public void end() throws IOException {
+                sink.end();
+                if (rows != null && columns != null && "[OK]".equals(status)) {
+                    put(key, new Result(tableVersion, status, columns,
+                            types != null ? types : Collections.nCopies(columns.size(), ColumnType.TEXT), rows, size));
+                }
+            }
+        };
+    }
+
+    private static long sizeOf(List<String> values) {
+        long size = ROW_OVERHEAD;
+        for (String value : values) {
+            size += VALUE_OVERHEAD + 2L * value.length();
+        }
+        return size;
+    }
+
+    private synchronized void put(String key, Result result) {
+        Result previous = results.put(key, result);
+        if (previous != null) {
+            bytes -= previous.bytes;
+        }
+        bytes += result.bytes;
+        Iterator<Result> eldest = results.values().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            bytes -= eldest.next().bytes;
+            eldest.remove();
+        }
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized int size() {
+        return results.size();
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+}
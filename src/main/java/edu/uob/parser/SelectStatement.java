@@ -0,0 +1,40 @@
+package edu.uob.parser;
+
+import java.util.List;
+
+/**
+ * SELECT columns FROM table [WHERE condition]. The column list is either the
+ * single entry "*" or the selected column names in order.
+ */
+public class SelectStatement extends Statement {
+    private final List<String> columns;
+    private final Condition where;
+
+    public SelectStatement(String tableName, List<String> columns, Condition where) {
+        this(tableName, columns, where, 0);
+    }
+
+    public SelectStatement(String tableName, List<String> columns, Condition where, int parameterCount) {
+        super(tableName, parameterCount);
+        this.columns = List.copyOf(columns);
+        this.where = where;
+    }
+
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    public boolean selectsAllColumns() {
+        return columns.contains("*");
+    }
+
+    @Override
+    public SelectStatement bind(List<String> parameters) {
+        return new SelectStatement(getTableName(), columns, where == null ? null : where.bind(parameters));
+    }
+
+    // The WHERE clause, or null if there is none.
+    public Condition getWhere() {
+        return where;
+    }
+}
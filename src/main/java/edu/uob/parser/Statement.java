@@ -0,0 +1,35 @@
+package edu.uob.parser;
+
+import java.util.List;
+
+/**
+ * A parsed command. Statements are immutable, so one parsed statement can be
+ * cached and executed by any number of sessions at the same time.
+ *
+ * <p>A statement prepared with PREPARE can contain parameters (?), numbered in
+ * the order they appear. {@link #bind(List)} fills them in for one EXECUTE.
+ */
+public abstract class Statement {
+    private final String tableName;
+    private final int parameterCount;
+
+    protected Statement(String tableName, int parameterCount) {
+        this.tableName = tableName;
+        this.parameterCount = parameterCount;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public int getParameterCount() {
+        return parameterCount;
+    }
+
+    /**
+     * A copy of this statement with its parameters replaced by values.
+     * @param parameters One value per parameter, in order
+     * @return The bound statement, which has no parameters left
+     */
+    public abstract Statement bind(List<String> parameters);
+}
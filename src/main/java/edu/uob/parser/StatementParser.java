@@ -0,0 +1,160 @@
+package edu.uob.parser;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses SELECT, UPDATE and DELETE commands from the token stream produced by
+ * {@link Tokenizer}, so the command text is scanned once. The WHERE clause is
+ * handed to {@link ConditionParser}.
+ */
+public class StatementParser {
+    private final List<Token> tokens;
+    private int position;
+    private int parameterCount;
+
+    private StatementParser(List<Token> tokens) {
+        int end = tokens.size();
+        while (end > 0 && tokens.get(end - 1).isSymbol(";")) {
+            end--;
+        }
+        this.tokens = tokens.subList(0, end);
+    }
+
+    /**
+     * Parse a SELECT, UPDATE or DELETE command.
+     * @param command Command text
+     * @return The parsed statement
+     * @throws QuerySyntaxException If the command is not valid; the message is the error shown to the client
+     */
+    public static Statement parse(String command) throws QuerySyntaxException {
+        StatementParser parser = new StatementParser(Tokenizer.tokenize(command));
+        if (parser.peekKeyword("SELECT")) {
+            return parser.parseSelect();
+        } else if (parser.peekKeyword("UPDATE")) {
+            return parser.parseUpdate();
+        } else if (parser.peekKeyword("DELETE")) {
+            return parser.parseDelete();
+        }
+        throw new QuerySyntaxException("Unsupported command.");
+    }
+
+    // SELECT * | column {, column} FROM table [WHERE condition]
+    private SelectStatement parseSelect() throws QuerySyntaxException {
+        position++;
+        List<String> columns = new ArrayList<>();
+        if (peekSymbol("*")) {
+            position++;
+            columns.add("*");
+        } else {
+            do {
+                Token column = next("Invalid SELECT syntax");
+                if (column.getType() != Token.Type.WORD || column.isKeyword("FROM")) {
+                    throw new QuerySyntaxException("Invalid SELECT syntax");
+                }
+                columns.add(column.getText());
+            } while (skipSymbol(","));
+        }
+        if (!next("Invalid SELECT syntax").isKeyword("FROM")) {
+            throw new QuerySyntaxException("Invalid SELECT syntax");
+        }
+        String tableName = parseTableName();
+        Condition where = parseOptionalWhere("Invalid SELECT syntax");
+        return new SelectStatement(tableName, columns, where, parameterCount);
+    }
+
+    // UPDATE table SET column = value {, column = value} [WHERE condition]
+    private UpdateStatement parseUpdate() throws QuerySyntaxException {
+        position++;
+        String tableName = parseTableName();
+        if (!next("Invalid UPDATE syntax: missing SET").isKeyword("SET")) {
+            throw new QuerySyntaxException("Invalid UPDATE syntax: missing SET");
+        }
+        Map<String, String> assignments = new LinkedHashMap<>();
+        Map<String, Integer> assignmentParameters = new LinkedHashMap<>();
+        do {
+            Token column = next("Invalid SET syntax");
+            Token equals = next("Invalid SET syntax");
+            Token value = next("Invalid SET syntax");
+            if (column.getType() != Token.Type.WORD || !equals.isSymbol("=")
+                    || (value.getType() == Token.Type.SYMBOL && !value.isSymbol("?"))) {
+                throw new QuerySyntaxException("Invalid SET syntax");
+            }
+            if (value.isSymbol("?")) {
+                assignments.put(column.getText(), null);
+                assignmentParameters.put(column.getText(), parameterCount++);
+            } else {
+                assignments.put(column.getText(), value.getText());
+                assignmentParameters.remove(column.getText());
+            }
+        } while (skipSymbol(","));
+        Condition where = parseOptionalWhere("Invalid UPDATE syntax");
+        return new UpdateStatement(tableName, assignments, assignmentParameters, where, parameterCount);
+    }
+
+    // DELETE [FROM] table WHERE condition
+    private DeleteStatement parseDelete() throws QuerySyntaxException {
+        position++;
+        if (peekKeyword("FROM")) {
+            position++;
+        }
+        String tableName = parseTableName();
+        Condition where = parseOptionalWhere("Invalid DELETE syntax");
+        if (where == null) {
+            throw new QuerySyntaxException("DELETE command must contain a WHERE clause");
+        }
+        return new DeleteStatement(tableName, where, parameterCount);
+    }
+
+    private String parseTableName() throws QuerySyntaxException {
+        Token table = next("Invalid table name");
+        if (table.getType() != Token.Type.WORD || !table.getText().matches("^[a-zA-Z_][a-zA-Z0-9_]*$")) {
+            throw new QuerySyntaxException("Invalid table name");
+        }
+        return table.getText().toLowerCase();
+    }
+
+    private Condition parseOptionalWhere(String trailingTokensError) throws QuerySyntaxException {
+        if (position == tokens.size()) {
+            return null;
+        }
+        if (!tokens.get(position).isKeyword("WHERE")) {
+            throw new QuerySyntaxException(trailingTokensError);
+        }
+        List<Token> whereTokens = tokens.subList(position + 1, tokens.size());
+        try {
+            Condition where = ConditionParser.parse(whereTokens, parameterCount);
+            for (Token token : whereTokens) {
+                if (token.isSymbol("?")) parameterCount++;
+            }
+            return where;
+        } catch (QuerySyntaxException e) {
+            throw new QuerySyntaxException("Invalid WHERE clause: " + e.getMessage());
+        }
+    }
+
+    private boolean peekKeyword(String keyword) {
+        return position < tokens.size() && tokens.get(position).isKeyword(keyword);
+    }
+
+    private boolean peekSymbol(String symbol) {
+        return position < tokens.size() && tokens.get(position).isSymbol(symbol);
+    }
+
+    private boolean skipSymbol(String symbol) {
+        if (peekSymbol(symbol)) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private Token next(String errorIfMissing) throws QuerySyntaxException {
+        if (position >= tokens.size()) {
+            throw new QuerySyntaxException(errorIfMissing);
+        }
+        return tokens.get(position++);
+    }
+}
@@ -0,0 +1,39 @@
+package edu.uob.parser;
+
+/**
+ * One token of a command: a word (keyword, name or unquoted value), a quoted
+ * string literal with the quotes removed, or a symbol such as ( ) , ; == or &gt;=.
+ */
+public class Token {
+    public enum Type { WORD, STRING, SYMBOL }
+
+    private final Type type;
+    private final String text;
+
+    public Token(Type type, String text) {
+        this.type = type;
+        this.text = text;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    // Whether this is the given keyword, ignoring case. String literals are never keywords.
+    public boolean isKeyword(String keyword) {
+        return type == Type.WORD && text.equalsIgnoreCase(keyword);
+    }
+
+    public boolean isSymbol(String symbol) {
+        return type == Type.SYMBOL && text.equals(symbol);
+    }
+
+    @Override
+    public String toString() {
+        return type == Type.STRING ? "'" + text + "'" : text;
+    }
+}
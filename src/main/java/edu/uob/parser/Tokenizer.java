@@ -0,0 +1,62 @@
+package edu.uob.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a command into tokens in a single pass. Whitespace separates words,
+ * symbols end a word without needing whitespace around them (so mark&gt;60 is
+ * three tokens), and anything between single or double quotes is one string
+ * literal, whatever it contains.
+ */
+public class Tokenizer {
+    private static final String[] SYMBOLS = {"==", "!=", ">=", "<=", ">", "<", "=", "(", ")", ",", ";", "*", "?"};
+
+    private Tokenizer() {
+    }
+
+    public static List<Token> tokenize(String command) throws QuerySyntaxException {
+        List<Token> tokens = new ArrayList<>();
+        int length = command.length();
+        int i = 0;
+        while (i < length) {
+            char c = command.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '\'' || c == '"') {
+                int end = command.indexOf(c, i + 1);
+                if (end == -1) {
+                    throw new QuerySyntaxException("Unterminated string literal");
+                }
+                tokens.add(new Token(Token.Type.STRING, command.substring(i + 1, end)));
+                i = end + 1;
+            } else {
+                String symbol = symbolAt(command, i);
+                if (symbol != null) {
+                    tokens.add(new Token(Token.Type.SYMBOL, symbol));
+                    i += symbol.length();
+                } else if (c == '!') {
+                    throw new QuerySyntaxException("Unexpected character '!'");
+                } else {
+                    int start = i;
+                    while (i < length && !Character.isWhitespace(command.charAt(i))
+                            && command.charAt(i) != '\'' && command.charAt(i) != '"'
+                            && command.charAt(i) != '!' && symbolAt(command, i) == null) {
+                        i++;
+                    }
+                    tokens.add(new Token(Token.Type.WORD, command.substring(start, i)));
+                }
+            }
+        }
+        return tokens;
+    }
+
+    private static String symbolAt(String command, int position) {
+        for (String symbol : SYMBOLS) {
+            if (command.startsWith(symbol, position)) {
+                return symbol;
+            }
+        }
+        return null;
+    }
+}
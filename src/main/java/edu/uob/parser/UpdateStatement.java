@@ -0,0 +1,48 @@
+package edu.uob.parser;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * UPDATE table SET column = value, ... [WHERE condition]. In a prepared
+ * statement a new value can be a parameter (?).
+ */
+public class UpdateStatement extends Statement {
+    private final Map<String, String> assignments;
+    // Parameter position of each assigned column whose new value is a parameter.
+    private final Map<String, Integer> assignmentParameters;
+    private final Condition where;
+
+    public UpdateStatement(String tableName, Map<String, String> assignments, Condition where) {
+        this(tableName, assignments, Collections.emptyMap(), where, 0);
+    }
+
+    public UpdateStatement(String tableName, Map<String, String> assignments, Map<String, Integer> assignmentParameters,
+                           Condition where, int parameterCount) {
+        super(tableName, parameterCount);
+        this.assignments = Collections.unmodifiableMap(new LinkedHashMap<>(assignments));
+        this.assignmentParameters = Map.copyOf(assignmentParameters);
+        this.where = where;
+    }
+
+    @Override
+    public UpdateStatement bind(List<String> parameters) {
+        Map<String, String> bound = new LinkedHashMap<>(assignments);
+        for (Map.Entry<String, Integer> parameter : assignmentParameters.entrySet()) {
+            bound.put(parameter.getKey(), parameters.get(parameter.getValue()));
+        }
+        return new UpdateStatement(getTableName(), bound, where == null ? null : where.bind(parameters));
+    }
+
+    // New values by column name, in the order they were written.
+    public Map<String, String> getAssignments() {
+        return assignments;
+    }
+
+    // The WHERE clause, or null if every row is updated.
+    public Condition getWhere() {
+        return where;
+    }
+}
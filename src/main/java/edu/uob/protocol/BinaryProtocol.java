@@ -0,0 +1,170 @@
+package edu.uob.protocol;
+
+import edu.uob.model.ColumnType;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Length-prefixed binary framing, offered as an alternative to the text protocol
+ * (result text followed by a line holding the EOT character).
+ *
+ * <p>A client asks for it by sending {@link #HANDSHAKE} as its first line. A server
+ * that supports it answers with the same line and both sides switch to frames;
+ * an older server answers with an ordinary [ERROR] response and the client stays
+ * on the text protocol. Every frame is a type byte, a 4-byte big-endian payload
+ * length and the payload:
+ * <pre>
+ *   Q  query     client to server: UTF-8 command text
+ *   S  status    "[OK]" or "[ERROR] message"; the first frame of every response
+ *   H  header    column count (2 bytes), then per column a type byte and a string
+ *   R  rows      row count (4 bytes), then per row a value count (2 bytes) and the values
+ *   E  end       total number of rows (8 bytes); the last frame of every response
+ * </pre>
+ * A column's type byte is its declared {@link ColumnType}: I (INT), F (FLOAT), B (BOOLEAN)
+ * or T (TEXT, and any column without a declared type); values are always sent as strings.
+ * Strings are a 4-byte length followed by UTF-8 bytes. Rows are sent in batches,
+ * so a client can process the first rows before the last ones arrive, and values
+ * may contain any character, including EOT and line breaks.
+ */
+public class BinaryProtocol {
+    public static final String HANDSHAKE = "PROTOCOL BINARY 1";
+
+    public static final byte QUERY = 'Q';
+    public static final byte STATUS = 'S';
+    public static final byte HEADER = 'H';
+    public static final byte ROWS = 'R';
+    public static final byte END = 'E';
+
+    public static final byte TYPE_TEXT = 'T';
+    public static final byte TYPE_INT = 'I';
+    public static final byte TYPE_FLOAT = 'F';
+    public static final byte TYPE_BOOLEAN = 'B';
+
+    // A row batch is sent once it holds this many rows or bytes, whichever comes first.
+    static final int BATCH_ROWS = 512;
+    static final int BATCH_BYTES = 64 * 1024;
+
+    private BinaryProtocol() {
+    }
+
+    static byte typeCode(ColumnType type) {
+        switch (type) {
+            case INT:
+                return TYPE_INT;
+            case FLOAT:
+                return TYPE_FLOAT;
+            case BOOLEAN:
+                return TYPE_BOOLEAN;
+            default:
+                return TYPE_TEXT;
+        }
+    }
+
+    public static void writeQuery(DataOutputStream out, String command) throws IOException {
+        writeFrame(out, QUERY, command.getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    /**
+     * Read the next query frame.
+     * @return The command, or null if the client closed the connection
+     */
+    public static String readQuery(DataInputStream in) throws IOException {
+        int type = in.read();
+        if (type == -1) {
+            return null;
+        }
+        byte[] payload = readPayload(in);
+        if (type != QUERY) {
+            throw new IOException("Expected a query frame but got frame type " + (char) type);
+        }
+        return new String(payload, StandardCharsets.UTF_8);
+    }
+
+    static void writeFrame(DataOutputStream out, byte type, byte[] payload) throws IOException {
+        writeFrame(out, type, payload, payload.length);
+    }
+
+    static void writeFrame(DataOutputStream out, byte type, byte[] payload, int length) throws IOException {
+        out.writeByte(type);
+        out.writeInt(length);
+        out.write(payload, 0, length);
+    }
+
+    private static byte[] readPayload(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Invalid frame length " + length);
+        }
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        return payload;
+    }
+
+    /**
+     * Receives the frames of one response, for clients.
+     */
+    public interface ResponseHandler {
+        void status(String status) throws IOException;
+
+        void header(List<String> columns) throws IOException;
+
+        void rows(List<List<String>> rows) throws IOException;
+    }
+
+    /**
+     * Read one complete response, passing each frame to the handler as soon as it arrives.
+     * @return Total number of rows in the response
+     */
+    public static long readResponse(DataInputStream in, ResponseHandler handler) throws IOException {
+        while (true) {
+            int type = in.read();
+            if (type == -1) {
+                throw new EOFException("Server disconnected (end-of-stream)");
+            }
+            DataInputStream payload = new DataInputStream(new ByteArrayInputStream(readPayload(in)));
+            switch (type) {
+                case STATUS -> handler.status(new String(payload.readAllBytes(), StandardCharsets.UTF_8));
+                case HEADER -> {
+                    int columnCount = payload.readUnsignedShort();
+                    List<String> columns = new ArrayList<>(columnCount);
+                    for (int i = 0; i < columnCount; i++) {
+                        payload.readByte();
+                        columns.add(readString(payload));
+                    }
+                    handler.header(columns);
+                }
+                case ROWS -> {
+                    int rowCount = payload.readInt();
+                    List<List<String>> rows = new ArrayList<>(rowCount);
+                    for (int r = 0; r < rowCount; r++) {
+                        int columnCount = payload.readUnsignedShort();
+                        List<String> row = new ArrayList<>(columnCount);
+                        for (int c = 0; c < columnCount; c++) {
+                            row.add(readString(payload));
+                        }
+                        rows.add(row);
+                    }
+                    handler.rows(rows);
+                }
+                case END -> {
+                    return payload.readLong();
+                }
+                default -> throw new IOException("Unknown frame type " + (char) type);
+            }
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,98 @@
+package edu.uob.protocol;
+
+import edu.uob.model.ColumnType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Writes results to a connection that negotiated {@link BinaryProtocol}. Rows
+ * are collected into batches and each full batch is written as one frame.
+ */
+public class BinaryResultWriter implements ResultSink {
+    private final DataOutputStream out;
+    private final ByteArrayOutputStream batchBytes = new ByteArrayOutputStream(BinaryProtocol.BATCH_BYTES);
+    private final DataOutputStream batch = new DataOutputStream(batchBytes);
+    private int batchRows;
+    private long totalRows;
+
+    public BinaryResultWriter(DataOutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void status(String status) throws IOException {
+        totalRows = 0;
+        BinaryProtocol.writeFrame(out, BinaryProtocol.STATUS, status.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void header(List<String> columns) throws IOException {
+        header(columns, Collections.nCopies(columns.size(), ColumnType.TEXT));
+    }
+
+    @Override
+    public void header(List<String> columns, List<ColumnType> types) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(bytes);
+        header.writeShort(columns.size());
+        for (int i = 0; i < columns.size(); i++) {
+            header.writeByte(BinaryProtocol.typeCode(types.get(i)));
+            writeString(header, columns.get(i));
+        }
+        BinaryProtocol.writeFrame(out, BinaryProtocol.HEADER, bytes.toByteArray());
+    }
+
+    @Override
+    public void row(List<String> values) throws IOException {
+        batch.writeShort(values.size());
+        for (String value : values) {
+            writeString(batch, value);
+        }
+        batchRows++;
+        totalRows++;
+        if (batchRows >= BinaryProtocol.BATCH_ROWS || batchBytes.size() >= BinaryProtocol.BATCH_BYTES) {
+            flushBatch();
+        }
+    }
+
+    @Override
+    public void end() throws IOException {
+        flushBatch();
+        BinaryProtocol.writeFrame(out, BinaryProtocol.END, longBytes(totalRows));
+        out.flush();
+    }
+
+    private void flushBatch() throws IOException {
+        if (batchRows == 0) {
+            return;
+        }
+        out.writeByte(BinaryProtocol.ROWS);
+        out.writeInt(4 + batchBytes.size());
+        out.writeInt(batchRows);
+        batchBytes.writeTo(out);
+        // Let the client start on this batch while the next one is being built.
+        out.flush();
+        batchBytes.reset();
+        batchRows = 0;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] longBytes(long value) {
+        byte[] bytes = new byte[8];
+        for (int i = 7; i >= 0; i--) {
+            bytes[i] = (byte) value;
+            value >>>= 8;
+        }
+        return bytes;
+    }
+}
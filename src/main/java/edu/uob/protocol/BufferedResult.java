@@ -0,0 +1,65 @@
+package edu.uob.protocol;
+
+import edu.uob.model.ColumnType;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A sink that keeps the whole result, so it can be sent on later, e.g. after
+ * the lock that was needed to read it has been released.
+ */
+public class BufferedResult implements ResultSink {
+    private String status;
+    private List<String> columns;
+    private List<ColumnType> types;
+    private final List<List<String>> rows = new ArrayList<>();
+
+    @Override
+    public void status(String status) {
+        this.status = status;
+    }
+
+    @Override
+    public void header(List<String> columns) {
+        header(columns, null);
+    }
+
+    @Override
+    public void header(List<String> columns, List<ColumnType> types) {
+        this.columns = new ArrayList<>(columns);
+        this.types = types == null ? null : new ArrayList<>(types);
+    }
+
+    @Override
+    public void row(List<String> values) {
+        // Rows may be views of the table, which can change once the lock is released.
+        rows.add(new ArrayList<>(values));
+    }
+
+    @Override
+    public void end() {
+    }
+
+    /**
+     * Send the result on, exactly as it was received.
+     * @param sink Where to send the result
+     * @return The status line of the result
+     */
+    public String sendTo(ResultSink sink) throws IOException {
+        sink.status(status);
+        if (columns != null) {
+            if (types != null) {
+                sink.header(columns, types);
+            } else {
+                sink.header(columns);
+            }
+            for (List<String> row : rows) {
+                sink.row(row);
+            }
+        }
+        sink.end();
+        return status;
+    }
+}
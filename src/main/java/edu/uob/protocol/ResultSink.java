@@ -0,0 +1,59 @@
+package edu.uob.protocol;
+
+import edu.uob.model.ColumnType;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Receives the result of one command in pieces: a status line, then for results
+ * that are tables the column names and the rows, then the end of the result.
+ * Each wire protocol has its own sink.
+ */
+public interface ResultSink {
+
+    void status(String status) throws IOException;
+
+    void header(List<String> columns) throws IOException;
+
+    /**
+     * Send the column names with their declared types. Sinks that do not send types only get the names.
+     * @param types One type per column
+     */
+    default void header(List<String> columns, List<ColumnType> types) throws IOException {
+        header(columns);
+    }
+
+    void row(List<String> values) throws IOException;
+
+    void end() throws IOException;
+
+    /**
+     * Send a complete result that was built as text.
+     * @param result Result text
+     */
+    default void result(String result) throws IOException {
+        replay(result, this);
+    }
+
+    /**
+     * Pass a result in the text format returned by the commands to a sink. A table result is "[OK]", a
+     * line of tab-separated column names and one line per row; anything else is sent as a status only.
+     * @param result Result text
+     * @param sink Where to send the result
+     */
+    static void replay(String result, ResultSink sink) throws IOException {
+        String[] lines = result.split("\\R");
+        sink.status(lines[0]);
+        if (lines.length > 1 && lines[0].equals("[OK]")) {
+            sink.header(Arrays.asList(lines[1].split("\t", -1)));
+            for (int i = 2; i < lines.length; i++) {
+                if (!lines[i].isEmpty()) {
+                    sink.row(Arrays.asList(lines[i].split("\t", -1)));
+                }
+            }
+        }
+        sink.end();
+    }
+}
@@ -0,0 +1,72 @@
+package edu.uob.protocol;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Writes results in the text format: the status line, then the column names
+ * and the rows as lines of tab-separated values. Lines are separated by the
+ * platform line separator with no separator after the last one, so a streamed
+ * result is identical to one returned as a single string.
+ */
+public class TextResultWriter implements ResultSink {
+    private final Appendable out;
+
+    public TextResultWriter(Appendable out) {
+        this.out = out;
+    }
+
+    @Override
+    public void status(String status) throws IOException {
+        out.append(status);
+    }
+
+    @Override
+    public void header(List<String> columns) throws IOException {
+        writeLine(columns);
+    }
+
+    @Override
+    public void row(List<String> values) throws IOException {
+        writeLine(values);
+    }
+
+    @Override
+    public void end() {
+    }
+
+    // Already in the text format, so it is written unchanged.
+    @Override
+    public void result(String result) throws IOException {
+        out.append(result);
+    }
+
+    private void writeLine(List<String> values) throws IOException {
+        out.append(System.lineSeparator());
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) out.append('\t');
+            out.append(values.get(i));
+        }
+    }
+
+    /**
+     * Build a result as a single string, for callers that need the whole result at once.
+     */
+    public static class Builder extends TextResultWriter {
+        private final StringBuilder text;
+
+        public Builder() {
+            this(new StringBuilder());
+        }
+
+        private Builder(StringBuilder text) {
+            super(text);
+            this.text = text;
+        }
+
+        @Override
+        public String toString() {
+            return text.toString();
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package edu.uob;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import edu.uob.model.Session;
+import edu.uob.protocol.BinaryProtocol;
+import edu.uob.protocol.ResultSink;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ProtocolTests {
+
+    private int port;
+    private DBServer server;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        server = new DBServer();
+        Thread listener = new Thread(() -> {
+            try {
+                server.blockingListenOn(port);
+            } catch (IOException ignored) {
+            }
+        });
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    private String generateRandomName() {
+        StringBuilder randomName = new StringBuilder();
+        for (int i = 0; i < 10; i++) randomName.append((char) (97 + (Math.random() * 25.0)));
+        return randomName.toString();
+    }
+
+    private Socket connect() throws Exception {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return new Socket("localhost", port);
+            } catch (IOException e) {
+                if (attempt == 50) throw e;
+                Thread.sleep(20);
+            }
+        }
+    }
+
+    // Text clients keep working, and binary clients get the same result split into frames
+    @Test
+    public void testTextAndBinaryProtocols() {
+        assertTimeoutPreemptively(Duration.ofMillis(5000), () -> {
+            String randomName = generateRandomName();
+            try (Socket socket = connect()) {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+                BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
+                for (String command : new String[]{"CREATE DATABASE " + randomName + ";", "USE " + randomName + ";",
+                        "CREATE TABLE marks (name, mark);", "INSERT INTO marks VALUES ('Simon', 65), ('Sion', 55);"}) {
+                    writer.write(command + "\n");
+                    writer.flush();
+                    String line = reader.readLine();
+                    assertTrue(line.startsWith("[OK]"), "Text protocol command failed: " + command);
+                    while (!line.equals("" + (char) 4)) line = reader.readLine();
+                }
+            }
+            try (Socket socket = connect()) {
+                socket.getOutputStream().write((BinaryProtocol.HANDSHAKE + "\n").getBytes());
+                DataInputStream in = new DataInputStream(socket.getInputStream());
+                byte[] ack = new byte[BinaryProtocol.HANDSHAKE.length() + 1];
+                in.readFully(ack);
+                assertEquals(BinaryProtocol.HANDSHAKE + "\n", new String(ack), "The server should accept the binary protocol");
+                DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                BinaryProtocol.writeQuery(out, "USE " + randomName + ";");
+                List<String> statuses = new ArrayList<>();
+                List<String> header = new ArrayList<>();
+                List<List<String>> rows = new ArrayList<>();
+                BinaryProtocol.ResponseHandler handler = new BinaryProtocol.ResponseHandler() {
+                    @Override
+                    public void status(String status) {
+                        statuses.add(status);
+                    }
+
+                    @Override
+                    public void header(List<String> columns) {
+                        header.addAll(columns);
+                    }
+
+                    @Override
+                    public void rows(List<List<String>> batch) {
+                        rows.addAll(batch);
+                    }
+                };
+                assertEquals(0, BinaryProtocol.readResponse(in, handler), "USE should not return rows");
+                BinaryProtocol.writeQuery(out, "SELECT * FROM marks;");
+                assertEquals(2, BinaryProtocol.readResponse(in, handler), "SELECT should return two rows");
+                assertEquals("[OK]", statuses.get(1), "Each response should start with a status frame");
+                assertEquals(List.of("id", "name", "mark"), header, "The header frame should hold the column names");
+                assertEquals(List.of("2", "Sion", "55"), rows.get(1), "Row frames should hold the values of each row");
+            }
+        });
+    }
+
+    // Streamed SELECT results arrive over the text protocol exactly as handleCommand returns them
+    @Test
+    public void testStreamedSelect() {
+        assertTimeoutPreemptively(Duration.ofMillis(10000), () -> {
+            String randomName = generateRandomName();
+            StringBuilder insert = new StringBuilder("INSERT INTO marks VALUES ");
+            for (int i = 0; i < 3000; i++) {
+                insert.append(i == 0 ? "" : ", ").append("('Student").append(i).append("', ").append(i % 100).append(")");
+            }
+            String[] setup = {"CREATE DATABASE " + randomName + ";", "USE " + randomName + ";",
+                    "CREATE TABLE marks (name, mark);", insert + ";"};
+            for (String command : setup) {
+                assertTrue(server.handleCommand(command).startsWith("[OK]"), "Setup command failed: " + command);
+            }
+            try (Socket socket = connect()) {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+                BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
+                for (String command : new String[]{"USE " + randomName + ";", "SELECT * FROM marks;",
+                        "SELECT name FROM marks WHERE mark > 90;", "SELECT nothing FROM marks;"}) {
+                    writer.write(command + "\n");
+                    writer.flush();
+                    List<String> lines = new ArrayList<>();
+                    for (String line = reader.readLine(); !line.equals("" + (char) 4); line = reader.readLine()) {
+                        lines.add(line);
+                    }
+                    assertEquals(server.handleCommand(command), String.join(System.lineSeparator(), lines),
+                            "Streamed result differs for: " + command);
+                }
+            }
+        });
+    }
+
+    // A client that never reads its SELECT result must not keep writers to the table waiting
+    @Test
+    public void testStalledReaderDoesNotBlockWriters() {
+        assertTimeoutPreemptively(Duration.ofMillis(10000), () -> {
+            String randomName = generateRandomName();
+            String[] setup = {"CREATE DATABASE " + randomName + ";", "USE " + randomName + ";",
+                    "CREATE TABLE notes (text);"};
+            for (String command : setup) {
+                assertTrue(server.handleCommand(command).startsWith("[OK]"), "Setup command failed: " + command);
+            }
+            // Far more than the socket buffers hold, so sending the result would block.
+            String text = "x".repeat(1000);
+            for (int batch = 0; batch < 10; batch++) {
+                StringBuilder insert = new StringBuilder("INSERT INTO notes VALUES ");
+                for (int i = 0; i < 1000; i++) {
+                    insert.append(i == 0 ? "" : ", ").append("('").append(text).append("')");
+                }
+                assertTrue(server.handleCommand(insert + ";").startsWith("[OK]"), "Insert failed");
+            }
+            // Wait for the server to listen, then connect with a small receive buffer.
+            connect().close();
+            try (Socket socket = new Socket()) {
+                socket.setReceiveBufferSize(4096);
+                socket.connect(new InetSocketAddress("localhost", port));
+                BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
+                writer.write("USE " + randomName + ";\nSELECT * FROM notes;\n");
+                writer.flush();
+                // Give the server time to start sending the result.
+                Thread.sleep(500);
+                assertTrue(server.handleCommand("INSERT INTO notes VALUES ('late');").startsWith("[OK]"),
+                        "A writer should not wait for a client that does not read");
+            }
+        });
+    }
+
+    // A large SELECT reads its rows a chunk at a time with the table unlocked in between, so rows deleted
+    // while the first chunk is being sent are never read
+    @Test
+    public void testSelectStreamsInChunks() {
+        assertTimeoutPreemptively(Duration.ofMillis(10000), () -> {
+            String randomName = generateRandomName();
+            StringBuilder insert = new StringBuilder("INSERT INTO marks VALUES ");
+            for (int i = 0; i < 5000; i++) {
+                insert.append(i == 0 ? "" : ", ").append("('Student").append(i).append("', ").append(i % 100).append(")");
+            }
+            String[] setup = {"CREATE DATABASE " + randomName + ";", "USE " + randomName + ";",
+                    "CREATE TABLE marks (name, mark);", insert + ";"};
+            for (String command : setup) {
+                assertTrue(server.handleCommand(command).startsWith("[OK]"), "Setup command failed: " + command);
+            }
+            Session reader = new Session();
+            Session writer = new Session();
+            server.handleCommand(reader, "USE " + randomName + ";");
+            server.handleCommand(writer, "USE " + randomName + ";");
+            List<String> deleted = new ArrayList<>();
+            List<List<String>> rows = new ArrayList<>();
+            ResultSink sink = new ResultSink() {
+                @Override
+                public void status(String status) {
+                }
+
+                @Override
+                public void header(List<String> columns) {
+                }
+
+                @Override
+                public void row(List<String> values) throws IOException {
+                    if (rows.isEmpty()) {
+                        // Runs on another thread, so it would wait forever if the table were still locked.
+                        Thread delete = new Thread(() -> deleted.add(
+                                server.handleCommand(writer, "DELETE FROM marks WHERE id > 2000;")));
+                        delete.start();
+                        try {
+                            delete.join();
+                        } catch (InterruptedException e) {
+                            throw new IOException(e);
+                        }
+                    }
+                    rows.add(values);
+                }
+
+                @Override
+                public void end() {
+                }
+            };
+            server.handleCommand(reader, "SELECT * FROM marks;", sink);
+            assertTrue(deleted.get(0).startsWith("[OK]"), "The DELETE should run while the rows are sent");
+            assertEquals(2000, rows.size(), "Rows deleted before they were read should not be sent");
+            assertEquals(List.of("1", "Student0", "0"), rows.get(0));
+        });
+    }
+
+    // A SELECT that fails after part of its result was sent fails the connection instead of sending a second result
+    @Test
+    public void testFailedStreamIsNotRunAgain() {
+        assertTimeoutPreemptively(Duration.ofMillis(5000), () -> {
+            String randomName = generateRandomName();
+            String[] setup = {"CREATE DATABASE " + randomName + ";", "USE " + randomName + ";",
+                    "CREATE TABLE marks (name, mark);", "INSERT INTO marks VALUES ('Simon', 65), ('Sion', 55);"};
+            for (String command : setup) {
+                assertTrue(server.handleCommand(command).startsWith("[OK]"), "Setup command failed: " + command);
+            }
+            Session session = new Session();
+            server.handleCommand(session, "USE " + randomName + ";");
+            List<String> statuses = new ArrayList<>();
+            ResultSink sink = new ResultSink() {
+                @Override
+                public void status(String status) {
+                    statuses.add(status);
+                }
+
+                @Override
+                public void header(List<String> columns) {
+                }
+
+                @Override
+                public void row(List<String> values) {
+                    throw new IllegalStateException("Row could not be encoded");
+                }
+
+                @Override
+                public void end() {
+                }
+            };
+            assertThrows(IOException.class, () -> server.handleCommand(session, "SELECT * FROM marks;", sink),
+                    "The connection should fail once part of the result was sent");
+            assertEquals(List.of("[OK]"), statuses, "The SELECT should not be run a second time");
+        });
+    }
+}
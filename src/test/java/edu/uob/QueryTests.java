@@ -0,0 +1,369 @@
+package edu.uob;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import edu.uob.log.QueryLog;
+import edu.uob.metrics.StatsMBean;
+import edu.uob.model.Session;
+import edu.uob.protocol.TextResultWriter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+
+public class QueryTests {
+
+    private DBServer server;
+
+    @BeforeEach
+    public void setup() {
+        server = new DBServer();
+    }
+
+    private String generateRandomName() {
+        StringBuilder randomName = new StringBuilder();
+        for (int i = 0; i < 10; i++) randomName.append((char) (97 + (Math.random() * 25.0)));
+        return randomName.toString();
+    }
+
+    private String sendCommandToServer(String command) {
+        return assertTimeoutPreemptively(Duration.ofMillis(1000), () -> server.handleCommand(command),
+                "Server took too long to respond (probably stuck in an infinite loop)");
+    }
+
+    private void createMarksTable() {
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        sendCommandToServer("CREATE TABLE marks (name, mark, pass);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Simon', 65, TRUE), ('Sion', 55, TRUE), ('Rob', 35, FALSE), ('Chris', 20, FALSE);");
+    }
+
+    // SELECT, UPDATE and DELETE share the same WHERE evaluation, so they support the same operators
+    @Test
+    public void testOperatorsInEveryCommand() {
+        createMarksTable();
+        String response = sendCommandToServer("SELECT name FROM marks WHERE name LIKE 'SI';");
+        assertTrue(response.contains("Simon") && response.contains("Sion"), "LIKE should match case-insensitively");
+        assertFalse(response.contains("Rob"), "LIKE returned a row that does not contain the pattern");
+        response = sendCommandToServer("SELECT name FROM marks WHERE mark > abc;");
+        assertFalse(response.contains("Simon"), "Comparing against a non-numeric value should not match any row");
+        assertTrue(sendCommandToServer("SELECT * FROM marks WHERE mark >> 3;").contains("[ERROR]"),
+                "An unknown operator should be rejected");
+        sendCommandToServer("UPDATE marks SET pass = TRUE WHERE name LIKE 'ro';");
+        response = sendCommandToServer("SELECT * FROM marks WHERE name == 'Rob';");
+        assertTrue(response.contains("Rob\t35\tTRUE"), "UPDATE with LIKE should update Rob");
+        sendCommandToServer("DELETE FROM marks WHERE mark < 30;");
+        response = sendCommandToServer("SELECT * FROM marks;");
+        assertFalse(response.contains("Chris"), "DELETE with < should delete Chris");
+        assertTrue(response.contains("Simon"), "DELETE with < should keep Simon");
+    }
+
+    // AND and OR can be mixed and nested, and are only recognised as whole words
+    @Test
+    public void testNestedConditions() {
+        createMarksTable();
+        sendCommandToServer("INSERT INTO marks VALUES ('Orla', 80, TRUE);");
+        String response = sendCommandToServer("SELECT name FROM marks WHERE (pass == FALSE AND mark > 30) OR name == 'Orla';");
+        assertTrue(response.contains("Rob") && response.contains("Orla"), "Nested AND/OR should match Rob and Orla");
+        assertFalse(response.contains("Chris") || response.contains("Simon"), "Nested AND/OR returned rows that do not match");
+        response = sendCommandToServer("SELECT name FROM marks WHERE pass == TRUE AND (mark < 60 OR mark > 70);");
+        assertTrue(response.contains("Sion") && response.contains("Orla"), "AND of an OR should match Sion and Orla");
+        assertFalse(response.contains("Simon"), "Simon's mark is between 60 and 70");
+        response = sendCommandToServer("SELECT name FROM marks WHERE name==Orla;");
+        assertTrue(response.contains("Orla"), "Operators do not need spaces around them");
+        assertTrue(sendCommandToServer("SELECT * FROM marks WHERE (mark > 30 AND (pass == TRUE);").contains("[ERROR]"),
+                "Unbalanced brackets should be rejected");
+        assertTrue(sendCommandToServer("SELECT * FROM marks WHERE mark > 30 AND;").contains("[ERROR]"),
+                "A missing operand should be rejected");
+
+        sendCommandToServer("UPDATE marks SET pass = TRUE WHERE pass == FALSE AND mark >= 35;");
+        response = sendCommandToServer("SELECT * FROM marks WHERE pass == FALSE;");
+        assertTrue(response.contains("Chris") && !response.contains("Rob"), "UPDATE with two conditions should only update Rob");
+        sendCommandToServer("DELETE FROM marks WHERE name == 'Chris' OR name == 'Orla';");
+        response = sendCommandToServer("SELECT * FROM marks;");
+        assertFalse(response.contains("Chris") || response.contains("Orla"), "DELETE with OR should delete both rows");
+        assertTrue(response.contains("Simon"), "DELETE with OR should keep the other rows");
+    }
+
+    // Repeated statements are parsed once; differences in whitespace or the trailing ; do not matter
+    @Test
+    public void testPlanCache() {
+        createMarksTable();
+        long misses = server.queryExecuter.getPlanCache().getMisses();
+        String first = sendCommandToServer("SELECT name FROM marks WHERE mark > 50;");
+        String second = sendCommandToServer("SELECT  name FROM marks\tWHERE mark > 50");
+        assertTrue(first.equals(second), "A cached statement should return the same result");
+        assertTrue(server.queryExecuter.getPlanCache().getMisses() == misses + 1, "The second SELECT should be served from the plan cache");
+        sendCommandToServer("INSERT INTO marks VALUES ('Anna', 90, TRUE);");
+        assertTrue(sendCommandToServer("SELECT name FROM marks WHERE mark > 50;").contains("Anna"),
+                "A cached statement must still see rows inserted after it was cached");
+        sendCommandToServer("UPDATE marks SET name = 'Mary Ann' WHERE name == 'Anna';");
+        assertTrue(sendCommandToServer("SELECT id FROM marks WHERE name == 'Mary Ann';").contains("5"),
+                "Quoted values keep their spaces in SET and WHERE");
+    }
+
+    // Commands are logged in the background, with failed and slow commands as WARN and long results cut short
+    @Test
+    public void testQueryLog() {
+        StringWriter output = new StringWriter();
+        server.queryLog = new QueryLog(QueryLog.Level.DEBUG, 0, 20, 16, output);
+        createMarksTable();
+        sendCommandToServer("SELECT * FROM marks;");
+        sendCommandToServer("SELECT height FROM marks;");
+        server.queryLog.close();
+        String log = output.toString();
+        assertTrue(log.contains("SLOW"), "Every command should be slow with a threshold of 0");
+        assertTrue(log.contains("SELECT * FROM marks; -> [OK] | id\tname\tmark\tpa... ("), "Long results should be truncated");
+        assertTrue(log.contains("WARN  SLOW") && log.contains("-> [ERROR] Column 'heig"), "Failed commands should be logged");
+        QueryLog quiet = new QueryLog(QueryLog.Level.ERROR, 1000, 20, 16, output);
+        server.queryLog = quiet;
+        sendCommandToServer("SELECT * FROM marks;");
+        quiet.close();
+        assertTrue(output.toString().equals(log), "Commands below the log level should not be logged");
+    }
+
+    // An unknown log level falls back to INFO, and the log is closed when the server stops
+    @Test
+    public void testQueryLogLifecycle() throws Exception {
+        System.setProperty("db.log.level", "LOUD");
+        try {
+            server = new DBServer();
+        } finally {
+            System.clearProperty("db.log.level");
+        }
+        assertTrue(server.queryLog.isEnabled(QueryLog.Level.INFO), "An unknown level should log at INFO");
+        assertFalse(server.queryLog.isEnabled(QueryLog.Level.DEBUG), "An unknown level should log at INFO");
+        server.queryLog.close();
+
+        StringWriter output = new StringWriter();
+        QueryLog log = new QueryLog(QueryLog.Level.INFO, 1000, 20, 16, output);
+        server.queryLog = log;
+        // The port is taken, so the server stops at once.
+        try (ServerSocket taken = new ServerSocket(0)) {
+            assertThrows(IOException.class, () -> server.blockingListenOn(taken.getLocalPort()));
+        }
+        log.event(QueryLog.Level.WARN, "Logged after the server stopped");
+        log.flush();
+        assertFalse(output.toString().contains("after the server stopped"), "The log should be closed with the server");
+    }
+
+    // Typed columns only accept values of their type, store them in one form and compare numbers as numbers
+    @Test
+    public void testTypedColumns() {
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        assertTrue(sendCommandToServer("CREATE TABLE other (day DATE);").contains("[ERROR]"), "Unknown types should be rejected");
+        assertTrue(sendCommandToServer("CREATE TABLE people (name TEXT, age INT, height FLOAT, member BOOLEAN);").startsWith("[OK]"));
+        assertTrue(sendCommandToServer("INSERT INTO people VALUES ('Ann', 30, 1.5, true);").startsWith("[OK]"));
+        assertTrue(sendCommandToServer("INSERT INTO people VALUES ('Bob', 40, 1.8, FALSE), ('Cat', old, 1.6, TRUE);").contains("[ERROR]"),
+                "A value that is not an INT should be rejected");
+        assertTrue(sendCommandToServer("INSERT INTO people VALUES ('Dan', +41, 2, FALSE);").startsWith("[OK]"));
+        String response = sendCommandToServer("SELECT * FROM people;");
+        assertTrue(response.contains("1\tAnn\t30\t1.5\tTRUE") && response.contains("2\tDan\t41\t2.0\tFALSE"),
+                "Values should be stored in the canonical form of their type");
+        assertFalse(response.contains("Bob"), "A rejected INSERT should not insert any of its rows");
+        assertTrue(sendCommandToServer("SELECT name FROM people WHERE height == 2;").contains("Dan"), "Numeric columns compare as numbers");
+
+        assertTrue(sendCommandToServer("UPDATE people SET member = maybe WHERE name == 'Ann';").contains("[ERROR]"));
+        assertTrue(sendCommandToServer("ALTER TABLE people ADD score INT;").startsWith("[OK]"));
+        assertTrue(sendCommandToServer("UPDATE people SET score = ten WHERE name == 'Ann';").contains("[ERROR]"),
+                "Columns added with a type should be checked as well");
+        sendCommandToServer("UPDATE people SET score = 10 WHERE name == 'Ann';");
+        assertTrue(sendCommandToServer("SELECT name FROM people WHERE score >= 10;").contains("Ann"));
+
+        server = new DBServer();
+        sendCommandToServer("USE " + randomName + ";");
+        assertTrue(sendCommandToServer("INSERT INTO people VALUES ('Eve', 25, tall, TRUE, 3);").contains("[ERROR]"),
+                "Column types should be kept after a restart");
+        assertTrue(sendCommandToServer("ALTER TABLE people DROP age;").startsWith("[OK]"));
+        assertTrue(sendCommandToServer("INSERT INTO people VALUES ('Eve', tall, TRUE, 3);").contains("[ERROR]")
+                && sendCommandToServer("INSERT INTO people VALUES ('Eve', 1.7, maybe, 3);").contains("[ERROR]"),
+                "Dropping a column should keep the types of the columns after it");
+        assertTrue(sendCommandToServer("ALTER TABLE people DROP score;").startsWith("[OK]"), "The last column can be dropped");
+        assertTrue(sendCommandToServer("INSERT INTO people VALUES ('Eve', 1.7, maybe);").contains("[ERROR]"),
+                "Dropping the last column should keep the types of the other columns");
+        sendCommandToServer("ALTER TABLE people ADD age;");
+        assertTrue(sendCommandToServer("UPDATE people SET age = old WHERE name == 'Dan';").startsWith("[OK]"),
+                "A column added again without a type should accept any value");
+    }
+
+    // SHOW STATS reports per-command timings, table scans and cache hits, and JMX reads the same values
+    @Test
+    public void testShowStats() throws Exception {
+        createMarksTable();
+        sendCommandToServer("SELECT name FROM marks WHERE mark > 50;");
+        sendCommandToServer("SELECT name FROM marks WHERE mark > 50;");
+        sendCommandToServer("SELECT * FROM nothere;");
+        String response = sendCommandToServer("SHOW STATS;");
+        assertTrue(response.startsWith("[OK]") && response.contains("stat\tvalue"), "SHOW STATS should return a table of values");
+        assertTrue(response.contains("command.SELECT.count\t3"), "Every SELECT should be counted");
+        assertTrue(response.contains("command.SELECT.errors\t1"), "Failed commands should be counted as errors");
+        assertTrue(response.contains("command.SELECT.parse.p99_ms") && response.contains("command.SELECT.plan.count\t1")
+                && response.contains("command.SELECT.execute.p50_ms"), "Each phase should have its own histogram");
+        assertTrue(response.contains("/marks.rows_scanned\t4") && response.contains("/marks.rows_returned\t2"),
+                "Rows scanned and returned should be counted per table");
+        assertTrue(response.contains("cache.plan.hits\t1"), "The second SELECT should be a plan cache hit");
+        assertTrue(response.contains("cache.result.hits\t1"), "The second SELECT should not scan the table again");
+        assertTrue(response.contains("cache.table.hit_ratio"));
+        assertTrue(sendCommandToServer("SHOW TABLES;").contains("[ERROR]"), "Only SHOW STATS is supported");
+
+        StatsMBean bean = new StatsMBean(server.queryExecuter.getDatabase().getMetrics());
+        assertEquals(3L, bean.getAttribute("command.SELECT.count"), "The JMX bean should expose the same values");
+        assertTrue(bean.getMBeanInfo().getAttributes().length > 0);
+    }
+
+    // EXPLAIN shows the operator tree of each statement; EXPLAIN ANALYZE runs it and adds row counts and times
+    @Test
+    public void testExplainAnalyze() {
+        createMarksTable();
+        String response = sendCommandToServer("EXPLAIN SELECT name FROM marks WHERE mark > 50 AND name == 'Sion';");
+        assertTrue(response.startsWith("[OK]") && response.contains("QUERY PLAN"), "EXPLAIN should return the plan");
+        assertTrue(response.indexOf("Project name") < response.indexOf("-> Filter (name == Sion) AND (mark > 50)")
+                && response.indexOf("-> Filter") < response.indexOf("-> Full scan on marks  (estimated rows=4)"),
+                "The plan should list the projection, the filter in evaluation order, then the scan");
+        assertFalse(response.contains("actual rows"), "EXPLAIN should not run the query");
+
+        response = sendCommandToServer("EXPLAIN ANALYZE SELECT name FROM marks WHERE mark > 50;");
+        assertTrue(response.contains("Full scan on marks  (estimated rows=4)  (actual rows=4 time="),
+                "EXPLAIN ANALYZE should count the rows each operator produced");
+        assertTrue(response.contains("(actual rows=2 time=") && response.contains("Execution time:"));
+        assertFalse(response.contains("Simon"), "EXPLAIN ANALYZE should not return the rows");
+
+        sendCommandToServer("CREATE INDEX byname ON marks (name);");
+        response = sendCommandToServer("EXPLAIN UPDATE marks SET mark = 40 WHERE name == 'Rob';");
+        assertTrue(response.contains("Update marks set mark = 40") && response.contains("Index lookup on marks using byname"));
+        assertTrue(sendCommandToServer("SELECT * FROM marks WHERE name == 'Rob';").contains("Rob\t35"), "EXPLAIN should not update");
+        response = sendCommandToServer("EXPLAIN ANALYZE DELETE FROM marks WHERE mark < 30;");
+        assertTrue(response.contains("Delete from marks") && response.contains("(actual rows=1 time="));
+        assertFalse(sendCommandToServer("SELECT * FROM marks;").contains("Chris"), "EXPLAIN ANALYZE should run the delete");
+
+        sendCommandToServer("CREATE TABLE courses (student, course);");
+        sendCommandToServer("INSERT INTO courses VALUES ('Simon', 'Java'), ('Simon', 'C'), ('Rob', 'Java');");
+        response = sendCommandToServer("EXPLAIN ANALYZE JOIN marks AND courses ON name AND student;");
+        assertTrue(response.contains("Hash join building on the right table on marks.name == courses.student"),
+                "EXPLAIN JOIN should show how the rows are paired");
+        assertTrue(response.contains("(actual rows=3 time=") && response.contains("-> Full scan on courses"));
+        assertTrue(sendCommandToServer("EXPLAIN INSERT INTO marks VALUES ('Ann', 1, TRUE);").contains("[ERROR]"));
+    }
+
+    // ANALYZE collects statistics that survive a restart and let the planner base its choices on the data
+    @Test
+    public void testAnalyzeStatistics() {
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        sendCommandToServer("CREATE TABLE marks (name, mark, pass);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Simon', 65, TRUE), ('Sion', 55, TRUE), ('Rob', 35, FALSE), ('Chris', 20, FALSE);");
+        sendCommandToServer("CREATE INDEX bymark ON marks (mark);");
+        sendCommandToServer("CREATE TABLE courses (student, course);");
+        sendCommandToServer("INSERT INTO courses VALUES ('Simon', 'Java'), ('Simon', 'C'), ('Rob', 'Java'), ('Rob', 'C'), "
+                + "('Simon', 'Go'), ('Rob', 'Go'), ('Simon', 'ML');");
+        String joined = sendCommandToServer("JOIN marks AND courses ON name AND student;");
+        assertTrue(sendCommandToServer("EXPLAIN SELECT * FROM marks WHERE mark > 30;").contains("Index range scan"));
+        assertTrue(sendCommandToServer("EXPLAIN SELECT * FROM marks WHERE pass == TRUE AND name == 'Rob';")
+                .contains("Filter (pass == TRUE) AND (name == Rob)"));
+        assertTrue(sendCommandToServer("EXPLAIN JOIN marks AND courses ON name AND student;")
+                .contains("Hash join building on the left table"), "Without statistics the smaller table is built on");
+
+        String response = sendCommandToServer("ANALYZE marks;");
+        assertTrue(response.startsWith("[OK]") && response.contains("column\tdistinct\tempty\tmin\tmax"));
+        assertTrue(response.contains("mark\t4\t0\t20\t65") && response.contains("pass\t2\t0\t\t"),
+                "ANALYZE should show the statistics of every column");
+        assertTrue(sendCommandToServer("ANALYZE courses;").contains("student\t2\t0"));
+        assertTrue(sendCommandToServer("ANALYZE missing;").contains("[ERROR]"));
+
+        // Statistics are read back from disk by a new server.
+        server = new DBServer();
+        sendCommandToServer("USE " + randomName + ";");
+        response = sendCommandToServer("EXPLAIN SELECT * FROM marks WHERE mark > 30;");
+        assertTrue(response.contains("Full scan on marks"), "An index should not be used for a predicate most rows match");
+        assertTrue(response.contains("Filter mark > 30  (estimated rows=3)"), "The estimate should come from the histogram");
+        assertTrue(sendCommandToServer("EXPLAIN SELECT * FROM marks WHERE mark > 60;").contains("Index range scan"),
+                "An index should still be used for a selective predicate");
+        assertTrue(sendCommandToServer("EXPLAIN SELECT * FROM marks WHERE pass == TRUE AND name == 'Rob';")
+                .contains("Filter (name == Rob) AND (pass == TRUE)"), "The comparison with more distinct values should go first");
+        response = sendCommandToServer("EXPLAIN JOIN marks AND courses ON name AND student;");
+        assertTrue(response.contains("Hash join building on the right table"), "The side with fewer join keys should be built on");
+        assertTrue(response.contains("(estimated rows=7)"));
+        assertEquals(joined, sendCommandToServer("JOIN marks AND courses ON name AND student;"),
+                "The build side should not change the result");
+
+        assertTrue(sendCommandToServer("ALTER TABLE marks DROP mark;").startsWith("[OK]"));
+        sendCommandToServer("ALTER TABLE marks ADD mark;");
+        assertTrue(sendCommandToServer("EXPLAIN SELECT * FROM marks WHERE mark > 30;")
+                .contains("Filter mark > 30  (estimated rows=2)"), "A dropped column should lose its statistics");
+    }
+
+    // Repeated SELECTs are answered from the result cache until a write changes their table
+    @Test
+    public void testResultCache() throws Exception {
+        createMarksTable();
+        String query = "SELECT name, mark FROM marks WHERE pass == TRUE;";
+        String first = sendCommandToServer(query);
+        assertEquals(first, sendCommandToServer("SELECT  name, mark FROM marks   WHERE pass == TRUE"),
+                "A query that only differs in layout should get the same result");
+        assertEquals(1, server.queryExecuter.getResultCache().getHits());
+
+        sendCommandToServer("INSERT INTO marks VALUES ('Zoe', 80, TRUE);");
+        assertTrue(sendCommandToServer(query).contains("Zoe\t80"), "INSERT should invalidate the cached result");
+        sendCommandToServer("UPDATE marks SET mark = 90 WHERE name == 'Zoe';");
+        assertTrue(sendCommandToServer(query).contains("Zoe\t90"), "UPDATE should invalidate the cached result");
+        sendCommandToServer("DELETE FROM marks WHERE name == 'Zoe';");
+        assertFalse(sendCommandToServer(query).contains("Zoe"), "DELETE should invalidate the cached result");
+        sendCommandToServer("ALTER TABLE marks DROP mark;");
+        assertTrue(sendCommandToServer(query).contains("[ERROR]"), "ALTER TABLE should invalidate the cached result");
+        sendCommandToServer("ALTER TABLE marks ADD mark;");
+        assertTrue(sendCommandToServer(query).contains("Simon\t"));
+        sendCommandToServer("DROP TABLE marks;");
+        sendCommandToServer("CREATE TABLE marks (name, mark, pass);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Ann', 70, TRUE);");
+        String response = sendCommandToServer(query);
+        assertTrue(response.contains("Ann\t70") && !response.contains("Simon"), "DROP TABLE should invalidate the cached result");
+        assertTrue(sendCommandToServer("SELECT * FROM marks WHERE mark > 60;").contains("Ann"));
+
+        // The same query in another database reads that database's table.
+        String otherDatabase = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + otherDatabase + ";");
+        sendCommandToServer("USE " + otherDatabase + ";");
+        sendCommandToServer("CREATE TABLE marks (name, mark, pass);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Simon', 65, TRUE);");
+        assertTrue(sendCommandToServer("SELECT * FROM marks WHERE mark > 60;").contains("Simon"));
+        // Results streamed to a client are cached and replayed the same way.
+        Session session = new Session();
+        server.handleCommand(session, "USE " + otherDatabase + ";");
+        for (int i = 0; i < 2; i++) {
+            TextResultWriter.Builder streamed = new TextResultWriter.Builder();
+            server.handleCommand(session, "SELECT name FROM marks;", streamed);
+            assertTrue(streamed.toString().startsWith("[OK]" + System.lineSeparator() + "name"));
+        }
+        assertTrue(sendCommandToServer("SHOW STATS;").contains("cache.result.hit_ratio"));
+    }
+
+    // A table file changed outside the server is read again instead of being answered from the result cache
+    @Test
+    public void testResultCacheSeesExternalEdits() throws Exception {
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        sendCommandToServer("CREATE TABLE t (name);");
+        sendCommandToServer("INSERT INTO t VALUES ('Ann');");
+        assertFalse(sendCommandToServer("SELECT * FROM t;").contains("Bob"));
+        Files.writeString(Paths.get("databases", randomName, "t.tab"), System.lineSeparator() + "2\tBob",
+                StandardOpenOption.APPEND);
+        String response = sendCommandToServer("SELECT * FROM t;");
+        assertTrue(response.contains("1\tAnn") && response.contains("2\tBob"), "The edited file should be read again");
+        assertEquals(response, sendCommandToServer("SELECT * FROM t;"));
+        assertEquals(1, server.queryExecuter.getResultCache().getHits(), "The unchanged file should be a cache hit again");
+    }
+}
@@ -0,0 +1,88 @@
+package edu.uob;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import edu.uob.model.Session;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.time.Duration;
+
+public class SessionTests {
+
+    private DBServer server;
+
+    @BeforeEach
+    public void setup() {
+        server = new DBServer();
+    }
+
+    private String generateRandomName() {
+        StringBuilder randomName = new StringBuilder();
+        for (int i = 0; i < 10; i++) randomName.append((char) (97 + (Math.random() * 25.0)));
+        return randomName.toString();
+    }
+
+    private String sendCommandToServer(Session session, String command) {
+        return assertTimeoutPreemptively(Duration.ofMillis(1000), () -> server.handleCommand(session, command),
+                "Server took too long to respond (probably stuck in an infinite loop)");
+    }
+
+    // USE in one session must not change the database used by another session
+    @Test
+    public void testUseIsPerSession() {
+        Session first = new Session();
+        Session second = new Session();
+        String firstDatabase = generateRandomName();
+        String secondDatabase = generateRandomName();
+        sendCommandToServer(first, "CREATE DATABASE " + firstDatabase + ";");
+        sendCommandToServer(first, "CREATE DATABASE " + secondDatabase + ";");
+        sendCommandToServer(first, "USE " + firstDatabase + ";");
+        sendCommandToServer(first, "CREATE TABLE marks (name, mark);");
+        sendCommandToServer(first, "INSERT INTO marks VALUES ('Simon', 65);");
+        sendCommandToServer(second, "USE " + secondDatabase + ";");
+        sendCommandToServer(second, "CREATE TABLE marks (name, mark);");
+        sendCommandToServer(second, "INSERT INTO marks VALUES ('Chris', 20);");
+
+        String response = sendCommandToServer(first, "SELECT * FROM marks;");
+        assertTrue(response.contains("Simon"), "The first session should still read from its own database");
+        assertFalse(response.contains("Chris"), "The first session read a row from the second session's database");
+        response = sendCommandToServer(second, "SELECT * FROM marks;");
+        assertTrue(response.contains("Chris"), "The second session should read from its own database");
+        assertFalse(response.contains("Simon"), "The second session read a row from the first session's database");
+    }
+
+    // Prepared statements are bound to new values on every EXECUTE and are private to their session
+    @Test
+    public void testPreparedStatements() {
+        Session first = new Session();
+        Session second = new Session();
+        String database = generateRandomName();
+        sendCommandToServer(first, "CREATE DATABASE " + database + ";");
+        sendCommandToServer(first, "USE " + database + ";");
+        sendCommandToServer(second, "USE " + database + ";");
+        sendCommandToServer(first, "CREATE TABLE marks (name, mark, pass);");
+        sendCommandToServer(first, "INSERT INTO marks VALUES ('Simon', 65, TRUE), ('Sion', 55, TRUE), ('Rob', 35, FALSE);");
+
+        String response = sendCommandToServer(first, "PREPARE byid AS SELECT name FROM marks WHERE id == ?;");
+        assertTrue(response.contains("[OK]"), "PREPARE should succeed");
+        response = sendCommandToServer(first, "EXECUTE byid (2);");
+        assertTrue(response.contains("Sion") && !response.contains("Simon"), "EXECUTE should bind the id parameter");
+        response = sendCommandToServer(first, "EXECUTE byid (3);");
+        assertTrue(response.contains("Rob") && !response.contains("Sion"), "A second EXECUTE should bind the new value");
+        assertTrue(sendCommandToServer(first, "EXECUTE byid (1, 2);").contains("[ERROR]"), "Too many parameters should be rejected");
+        assertTrue(sendCommandToServer(first, "EXECUTE byid;").contains("[ERROR]"), "Missing parameters should be rejected");
+        assertTrue(sendCommandToServer(second, "EXECUTE byid (2);").contains("[ERROR]"),
+                "A statement prepared in one session should not be visible in another");
+        assertTrue(sendCommandToServer(first, "SELECT name FROM marks WHERE id == ?;").contains("[ERROR]"),
+                "Parameters outside PREPARE should be rejected");
+
+        sendCommandToServer(first, "PREPARE setmark AS UPDATE marks SET mark = ? WHERE name == ? AND pass == ?;");
+        sendCommandToServer(first, "EXECUTE setmark (70, 'Sion', TRUE);");
+        response = sendCommandToServer(second, "SELECT * FROM marks WHERE name == 'Sion';");
+        assertTrue(response.contains("Sion\t70\tTRUE"), "EXECUTE of a prepared UPDATE should bind every parameter in order");
+        assertTrue(sendCommandToServer(first, "DEALLOCATE byid;").contains("[OK]"), "DEALLOCATE should succeed");
+        assertTrue(sendCommandToServer(first, "EXECUTE byid (2);").contains("[ERROR]"), "A deallocated statement should be gone");
+    }
+}
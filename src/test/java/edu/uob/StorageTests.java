@@ -0,0 +1,553 @@
+package edu.uob;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import edu.uob.model.Session;
+import edu.uob.model.TableCache;
+import edu.uob.model.WriteAheadLog;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+public class StorageTests {
+
+    private DBServer server;
+
+    @BeforeEach
+    public void setup() {
+        server = new DBServer();
+    }
+
+    private String generateRandomName() {
+        StringBuilder randomName = new StringBuilder();
+        for (int i = 0; i < 10; i++) randomName.append((char) (97 + (Math.random() * 25.0)));
+        return randomName.toString();
+    }
+
+    private String sendCommandToServer(String command) {
+        return assertTimeoutPreemptively(Duration.ofMillis(1000), () -> server.handleCommand(command),
+                "Server took too long to respond (probably stuck in an infinite loop)");
+    }
+
+    // Ids must never be handed out twice, even after the last row was deleted and the server restarted
+    @Test
+    public void testIdsNotReusedAfterDelete() {
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        sendCommandToServer("CREATE TABLE marks (name, mark, pass);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Simon', 65, TRUE);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Sion', 55, TRUE);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Rob', 35, FALSE);");
+        sendCommandToServer("DELETE FROM marks WHERE name == 'Rob';");
+        sendCommandToServer("INSERT INTO marks VALUES ('Chris', 20, FALSE);");
+        String response = sendCommandToServer("SELECT id FROM marks WHERE name == 'Chris';");
+        assertTrue(response.contains("4"), "Chris should get id 4 because id 3 was already used by Rob");
+
+        server = new DBServer();
+        sendCommandToServer("USE " + randomName + ";");
+        sendCommandToServer("DELETE FROM marks WHERE name == 'Chris';");
+        sendCommandToServer("INSERT INTO marks VALUES ('Anna', 70, TRUE);");
+        response = sendCommandToServer("SELECT * FROM marks;");
+        assertTrue(response.contains("5\tAnna\t70\tTRUE"), "Anna should get id 5 after a restart");
+        assertFalse(response.contains("Chris"), "Chris was deleted but was still returned");
+    }
+
+    // Rows inserted while the table is cached and while it is not must both be visible
+    @Test
+    public void testInsertAfterCachedSelect() {
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        sendCommandToServer("CREATE TABLE marks (name, mark, pass);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Simon', 65, TRUE);");
+        sendCommandToServer("SELECT * FROM marks;");
+        sendCommandToServer("INSERT INTO marks VALUES ('Sion', 55, TRUE);");
+        String response = sendCommandToServer("SELECT * FROM marks;");
+        assertTrue(response.contains("1\tSimon\t65\tTRUE"), "Simon was not returned by SELECT *");
+        assertTrue(response.contains("2\tSion\t55\tTRUE"), "Sion was not returned by SELECT *");
+    }
+
+    // Cached tables are reloaded after their file changes outside the server, written through by
+    // commands, and evicted least recently used first once they hold too many rows
+    @Test
+    public void testTableCache() throws IOException {
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        sendCommandToServer("CREATE TABLE marks (name, mark);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Simon', 65);");
+        TableCache cache = server.queryExecuter.getDatabase().getTableCache();
+        sendCommandToServer("SELECT * FROM marks;");
+        long misses = cache.getMisses();
+        sendCommandToServer("SELECT name FROM marks;");
+        assertEquals(misses, cache.getMisses(), "A cached table should not be read again");
+
+        Path tableFile = Paths.get("databases", randomName, "marks.tab");
+        Files.writeString(tableFile, Files.readString(tableFile).replace("\t65", "\t100"));
+        assertTrue(sendCommandToServer("SELECT * FROM marks;").contains("1\tSimon\t100"), "An external edit should be seen");
+        assertEquals(misses + 1, cache.getMisses(), "An external edit should reload the table");
+
+        sendCommandToServer("INSERT INTO marks VALUES ('Cat', 80);");
+        sendCommandToServer("UPDATE marks SET mark = 75 WHERE name == 'Simon';");
+        String response = sendCommandToServer("SELECT * FROM marks;");
+        assertTrue(response.contains("1\tSimon\t75") && response.contains("2\tCat\t80"), response);
+        assertEquals(misses + 1, cache.getMisses(), "Writes should go through the cached table");
+
+        Path directory = Files.createTempDirectory("cache");
+        Files.writeString(directory.resolve("a.tab"), "id\tname\n1\tA\n2\tB\n");
+        Files.writeString(directory.resolve("b.tab"), "id\tname\n1\tC\n2\tD\n");
+        WriteAheadLog wal = WriteAheadLog.open(directory.toFile());
+        try {
+            TableCache small = new TableCache(3);
+            small.get("db/a", "a", directory.resolve("a.tab").toFile(), wal);
+            small.get("db/b", "b", directory.resolve("b.tab").toFile(), wal);
+            assertNull(small.getIfPresent("db/a"), "The least recently used table should be evicted");
+            assertNotNull(small.getIfPresent("db/b"), "The table just loaded should be kept");
+        } finally {
+            wal.close();
+            try (Stream<Path> files = Files.list(directory)) {
+                files.forEach(file -> file.toFile().delete());
+            }
+            Files.delete(directory);
+        }
+    }
+
+    // Several tuples in one INSERT must all be inserted with consecutive ids
+    @Test
+    public void testMultiRowInsert() {
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        sendCommandToServer("CREATE TABLE marks (name, mark, pass);");
+        String response = sendCommandToServer("INSERT INTO marks VALUES ('Simon', 65, TRUE), ('Sion', 55, TRUE), ('Rob', 35, FALSE);");
+        assertTrue(response.contains("[OK]"), "A valid multi-row INSERT was made, however an [OK] tag was not returned");
+        response = sendCommandToServer("SELECT * FROM marks;");
+        assertTrue(response.contains("1\tSimon\t65\tTRUE"), "Simon was not returned by SELECT *");
+        assertTrue(response.contains("2\tSion\t55\tTRUE"), "Sion was not returned by SELECT *");
+        assertTrue(response.contains("3\tRob\t35\tFALSE"), "Rob was not returned by SELECT *");
+    }
+
+    // LOAD DATA must append every line of the data file to the table, or none of them
+    @Test
+    public void testLoadData() throws IOException {
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        sendCommandToServer("CREATE TABLE marks (name, mark, pass);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Simon', 65, TRUE);");
+        Path dataFile = Paths.get("databases", randomName + ".tsv");
+        Files.write(dataFile, List.of("Sion\t55\tTRUE", "Rob\t35\tFALSE"));
+        String response = sendCommandToServer("LOAD DATA '" + randomName + ".tsv' INTO marks;");
+        assertTrue(response.contains("[OK]"), "A valid LOAD was made, however an [OK] tag was not returned");
+        response = sendCommandToServer("SELECT * FROM marks WHERE mark < 60;");
+        assertTrue(response.contains("2\tSion\t55\tTRUE"), "Sion was loaded but not returned by SELECT");
+        assertTrue(response.contains("3\tRob\t35\tFALSE"), "Rob was loaded but not returned by SELECT");
+        // A bad line anywhere in the file leaves the table as it was, so the load can simply be retried
+        String before = sendCommandToServer("SELECT * FROM marks;");
+        byte[] tableBytes = Files.readAllBytes(Paths.get("databases", randomName, "marks.tab"));
+        Files.write(dataFile, List.of("Kim\t70\tTRUE", "Ian\t80"));
+        assertTrue(sendCommandToServer("LOAD DATA '" + randomName + ".tsv' INTO marks;").startsWith("[ERROR]"));
+        assertArrayEquals(tableBytes, Files.readAllBytes(Paths.get("databases", randomName, "marks.tab")));
+        assertEquals(before, sendCommandToServer("SELECT * FROM marks;"), "A failed load should not add any rows");
+        Files.write(dataFile, List.of("Kim\t70\tTRUE", "Ian\t80\tTRUE"));
+        assertTrue(sendCommandToServer("LOAD DATA '" + randomName + ".tsv' INTO marks;").startsWith("[OK]"));
+        Files.delete(dataFile);
+        assertTrue(sendCommandToServer("SELECT * FROM marks;").contains("4\tKim\t70\tTRUE"),
+                "Ids handed out by the failed load should be taken back");
+        response = sendCommandToServer("LOAD DATA 'missing.tsv' INTO marks;");
+        assertTrue(response.contains("[ERROR]"), "Loading a missing file should return [ERROR]");
+        Path outside = Files.createTempFile("outside", ".tsv");
+        Files.write(outside, List.of("Eve\t99\tTRUE"));
+        try {
+            assertTrue(sendCommandToServer("LOAD DATA '" + outside.toAbsolutePath() + "' INTO marks;").contains("[ERROR]"),
+                    "Files outside the storage folder should not be loaded");
+            Path relative = Paths.get("databases").toAbsolutePath().relativize(outside.toAbsolutePath());
+            assertTrue(sendCommandToServer("LOAD DATA '" + relative + "' INTO marks;").contains("[ERROR]"),
+                    "A relative path should not escape the storage folder");
+        } finally {
+            Files.delete(outside);
+        }
+        assertFalse(sendCommandToServer("SELECT * FROM marks;").contains("Eve"));
+    }
+
+    // Point queries on id go through the primary key index and must see inserts, updates and deletes
+    @Test
+    public void testIdLookups() {
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        sendCommandToServer("CREATE TABLE marks (name, mark, pass);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Simon', 65, TRUE), ('Sion', 55, TRUE), ('Rob', 35, FALSE);");
+        String response = sendCommandToServer("SELECT name FROM marks WHERE id == 2;");
+        assertTrue(response.contains("Sion"), "SELECT by id should return Sion");
+        assertFalse(response.contains("Simon"), "SELECT by id should only return the row with that id");
+        sendCommandToServer("UPDATE marks SET mark = 40 WHERE id == 3;");
+        response = sendCommandToServer("SELECT * FROM marks WHERE (id == 3) AND (pass == FALSE);");
+        assertTrue(response.contains("3\tRob\t40\tFALSE"), "Rob's mark should have been updated through the id index");
+        sendCommandToServer("DELETE FROM marks WHERE id == 1;");
+        response = sendCommandToServer("SELECT * FROM marks WHERE id == 1;");
+        assertFalse(response.contains("Simon"), "Simon was deleted by id but is still returned");
+        sendCommandToServer("INSERT INTO marks VALUES ('Chris', 20, FALSE);");
+        response = sendCommandToServer("SELECT name FROM marks WHERE id == 4;");
+        assertTrue(response.contains("Chris"), "A newly inserted row should be found by id");
+    }
+
+    // Secondary indexes must be used by SELECT, kept up to date by every write and survive a restart
+    @Test
+    public void testSecondaryIndex() {
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        sendCommandToServer("CREATE TABLE marks (name, mark, pass);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Simon', 65, TRUE), ('Sion', 55, TRUE), ('Rob', 35, FALSE);");
+        assertTrue(sendCommandToServer("CREATE INDEX byname ON marks (name);").contains("[OK]"), "CREATE INDEX should succeed");
+        assertTrue(sendCommandToServer("CREATE INDEX bymark ON marks (mark);").contains("[OK]"), "CREATE INDEX should succeed");
+        assertTrue(sendCommandToServer("CREATE INDEX byname ON marks (pass);").contains("[ERROR]"), "Index names must be unique");
+        assertTrue(sendCommandToServer("CREATE INDEX nothing ON marks (grade);").contains("[ERROR]"), "Indexing a missing column should fail");
+
+        String response = sendCommandToServer("EXPLAIN SELECT * FROM marks WHERE name == 'Sion';");
+        assertTrue(response.contains("byname"), "SELECT on an indexed column should use the index");
+        response = sendCommandToServer("EXPLAIN SELECT * FROM marks WHERE pass == TRUE;");
+        assertTrue(response.contains("Full scan"), "SELECT on a column without an index should scan the table");
+
+        sendCommandToServer("INSERT INTO marks VALUES ('Chris', 20, FALSE);");
+        sendCommandToServer("UPDATE marks SET mark = 70 WHERE name == 'Sion';");
+        sendCommandToServer("DELETE FROM marks WHERE name == 'Rob';");
+        response = sendCommandToServer("SELECT name FROM marks WHERE mark > 60;");
+        assertTrue(response.contains("Simon") && response.contains("Sion"), "Range query should find Simon and Sion");
+        assertFalse(response.contains("Chris"), "Range query returned a row below the bound");
+        response = sendCommandToServer("SELECT * FROM marks WHERE name == 'chris';");
+        assertTrue(response.contains("4\tChris\t20\tFALSE"), "A newly inserted row should be found through the index");
+        response = sendCommandToServer("SELECT * FROM marks WHERE name == 'Rob';");
+        assertFalse(response.contains("Rob"), "Rob was deleted but is still returned through the index");
+
+        server = new DBServer();
+        sendCommandToServer("USE " + randomName + ";");
+        response = sendCommandToServer("EXPLAIN SELECT * FROM marks WHERE mark < 30;");
+        assertTrue(response.contains("bymark"), "Indexes should be loaded again after a restart");
+        response = sendCommandToServer("SELECT name FROM marks WHERE mark < 30;");
+        assertTrue(response.contains("Chris") && !response.contains("Sion"), "Range query after restart returned the wrong rows");
+        sendCommandToServer("ALTER TABLE marks DROP mark;");
+        response = sendCommandToServer("EXPLAIN SELECT * FROM marks WHERE name == 'Simon';");
+        assertTrue(response.contains("byname"), "Dropping another column should keep the index on name");
+        assertTrue(sendCommandToServer("DROP INDEX byname ON marks;").contains("[OK]"), "DROP INDEX should succeed");
+        response = sendCommandToServer("EXPLAIN SELECT * FROM marks WHERE name == 'Simon';");
+        assertTrue(response.contains("Full scan"), "A dropped index should no longer be used");
+    }
+
+    // JOIN must return every matching pair in left-table order, whichever side is larger
+    @Test
+    public void testJoinWithDuplicateKeys() {
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        sendCommandToServer("CREATE TABLE teams (team);");
+        sendCommandToServer("INSERT INTO teams VALUES ('red'), ('blue');");
+        sendCommandToServer("CREATE TABLE players (name, team);");
+        sendCommandToServer("INSERT INTO players VALUES ('Ann', 'blue'), ('Bob', 'red'), ('Cat', 'blue'), ('Dan', 'green');");
+        String response = sendCommandToServer("JOIN teams AND players ON team AND team;");
+        String[] lines = response.split(System.lineSeparator());
+        assertTrue(lines.length == 5, "JOIN should return a header and three rows but returned " + response);
+        assertTrue(lines[2].equals("1\tBob") && lines[3].equals("2\tAnn") && lines[4].equals("3\tCat"),
+                "JOIN rows should follow the order of the left table, then the right table");
+        response = sendCommandToServer("JOIN players AND teams ON team AND team;");
+        assertTrue(response.contains("1\tAnn") && response.contains("2\tBob") && response.contains("3\tCat"),
+                "JOIN with the larger table on the left should return the same pairs");
+        assertFalse(response.contains("Dan"), "Dan's team does not exist, so Dan should not be joined");
+
+        // With a budget of one row both tables are sorted and merged instead, giving the same result.
+        String hashJoin = sendCommandToServer("JOIN teams AND players ON team AND team;");
+        System.setProperty("db.join.memoryBudgetRows", "1");
+        try {
+            assertTrue(sendCommandToServer("EXPLAIN JOIN teams AND players ON team AND team;").contains("Sort-merge join"));
+            assertEquals(hashJoin, sendCommandToServer("JOIN teams AND players ON team AND team;"));
+            assertEquals(response, sendCommandToServer("JOIN players AND teams ON team AND team;"));
+        } finally {
+            System.clearProperty("db.join.memoryBudgetRows");
+        }
+    }
+
+    // UPDATE and DELETE only append to the write-ahead log, which is applied whenever the table is read again
+    @Test
+    public void testWriteAheadLog() throws IOException {
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        sendCommandToServer("CREATE TABLE marks (name, mark, pass);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Simon', 65, TRUE), ('Sion', 55, TRUE), ('Rob', 35, FALSE);");
+        assertTrue(sendCommandToServer("UPDATE marks SET mark = 70 WHERE name == 'Simon';").startsWith("[OK]"));
+        assertTrue(sendCommandToServer("DELETE FROM marks WHERE name == 'Rob';").startsWith("[OK]"));
+        Path wal = Paths.get("databases", randomName, "wal.log");
+        assertTrue(Files.exists(wal), "Changes should be written to the write-ahead log");
+
+        // Forget the cached table, as a restart after a crash would, so it is read from its file and the log
+        server.queryExecuter.getDatabase().getTableCache().invalidatePrefix(randomName + "/");
+        String response = sendCommandToServer("SELECT * FROM marks;");
+        assertTrue(response.contains("1\tSimon\t70\tTRUE"), "The logged UPDATE should be applied when the table is loaded");
+        assertFalse(response.contains("Rob"), "The logged DELETE should be applied when the table is loaded");
+
+        server.queryExecuter.getDatabase().checkpoint();
+        assertTrue(Files.size(wal) == 0, "A checkpoint should empty the log once the table file holds the changes");
+        List<String> lines = Files.readAllLines(Paths.get("databases", randomName, "marks.tab"));
+        assertTrue(lines.contains("1\tSimon\t70\tTRUE") && lines.size() == 3, "A checkpoint should write the changes to the table file");
+        sendCommandToServer("UPDATE marks SET mark = 60 WHERE name == 'Sion';");
+        server.queryExecuter.getDatabase().getTableCache().invalidatePrefix(randomName + "/");
+        assertTrue(sendCommandToServer("SELECT mark FROM marks WHERE name == 'Sion';").contains("60"),
+                "Changes logged after a checkpoint should be applied on top of the checkpointed file");
+    }
+
+    // Rewritten files replace the old version in one step and leave no temporary files behind
+    @Test
+    public void testAtomicRewrite() throws IOException {
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        sendCommandToServer("CREATE TABLE marks (name, mark);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Simon', 65), ('Sion', 55);");
+        sendCommandToServer("CREATE INDEX markidx ON marks (mark);");
+        assertTrue(sendCommandToServer("ALTER TABLE marks ADD pass;").startsWith("[OK]"));
+        Path databaseDir = Paths.get("databases", randomName);
+        List<String> lines = Files.readAllLines(databaseDir.resolve("marks.tab"));
+        assertTrue(lines.get(0).equals("id\tname\tmark\tpass") && lines.size() == 3, "The rewritten table file should be complete");
+        try (Stream<Path> files = Files.list(databaseDir)) {
+            assertFalse(files.anyMatch(file -> file.getFileName().toString().endsWith(".tmp")),
+                    "Temporary files should be renamed into place");
+        }
+    }
+
+    // ANALYZE only takes the read lock, so several can rewrite the same statistics file at once
+    @Test
+    public void testConcurrentAnalyze() {
+        assertTimeoutPreemptively(Duration.ofMillis(10000), () -> {
+            String randomName = generateRandomName();
+            sendCommandToServer("CREATE DATABASE " + randomName + ";");
+            sendCommandToServer("USE " + randomName + ";");
+            sendCommandToServer("CREATE TABLE marks (name, mark);");
+            sendCommandToServer("INSERT INTO marks VALUES ('Simon', 65), ('Sion', 55), ('Rob', 35);");
+
+            int clients = 4;
+            ExecutorService executor = Executors.newFixedThreadPool(clients);
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> analyzers = new ArrayList<>();
+            for (int c = 0; c < clients; c++) {
+                analyzers.add(executor.submit(() -> {
+                    Session session = useDatabase(randomName);
+                    start.await();
+                    for (int i = 0; i < 50; i++) {
+                        String response = server.handleCommand(session, "ANALYZE marks;");
+                        assertTrue(response.startsWith("[OK]"), response);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> analyzer : analyzers) {
+                analyzer.get();
+            }
+            executor.shutdown();
+
+            try (Stream<Path> files = Files.list(Paths.get("databases", randomName))) {
+                assertFalse(files.anyMatch(file -> file.getFileName().toString().endsWith(".tmp")),
+                        "Temporary files should be renamed into place");
+            }
+        });
+    }
+
+    // Columnar tables keep their rows in marks.col and give the same results as row tables
+    @Test
+    public void testColumnarStorage() throws IOException {
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        assertTrue(sendCommandToServer("CREATE TABLE other (a) STORAGE = PAGES;").contains("[ERROR]"),
+                "An unknown storage format should be rejected");
+        assertTrue(sendCommandToServer("CREATE TABLE marks (name, mark, pass) STORAGE = COLUMNAR;").startsWith("[OK]"));
+        sendCommandToServer("INSERT INTO marks VALUES ('Simon', 65, TRUE), ('Sion', 55, TRUE), ('Rob', 35, FALSE);");
+        sendCommandToServer("UPDATE marks SET mark = 70 WHERE name == 'Simon';");
+        sendCommandToServer("DELETE FROM marks WHERE name == 'Rob';");
+        server.queryExecuter.getDatabase().checkpoint();
+        Path databaseDir = Paths.get("databases", randomName);
+        assertTrue(Files.exists(databaseDir.resolve("marks.col")), "Columnar tables should be stored in a .col file");
+        assertTrue(Files.readAllLines(databaseDir.resolve("marks.tab")).size() == 1, "Checkpointed rows should leave the .tab file");
+
+        // Read the table from its file again so only the columns the query uses are decoded
+        server.queryExecuter.getDatabase().getTableCache().invalidatePrefix(randomName + "/");
+        sendCommandToServer("INSERT INTO marks VALUES ('Chris', 20, FALSE);");
+        server.queryExecuter.getDatabase().getTableCache().invalidatePrefix(randomName + "/");
+        assertTrue(sendCommandToServer("EXPLAIN SELECT name FROM marks WHERE mark > 50;").contains("reading 2 of 4 columns"));
+        String response = sendCommandToServer("SELECT name FROM marks WHERE mark > 50;");
+        assertTrue(response.contains("Simon") && response.contains("Sion"), "The columnar scan should find matching rows");
+        assertFalse(response.contains("Rob") || response.contains("Chris"), "The columnar scan returned rows that do not match");
+        response = sendCommandToServer("SELECT * FROM marks WHERE mark < 30;");
+        assertTrue(response.contains("4\tChris\t20\tFALSE"), "Rows inserted since the last rewrite should be read from the .tab file");
+        assertFalse(sendCommandToServer("SELECT * FROM marks WHERE mark > 100;").contains("Simon"));
+
+        assertTrue(sendCommandToServer("ALTER TABLE marks ADD grade;").startsWith("[OK]"));
+        server.queryExecuter.getDatabase().getTableCache().invalidatePrefix(randomName + "/");
+        assertTrue(sendCommandToServer("SELECT * FROM marks WHERE name == 'Sion';").contains("2\tSion\t55\tTRUE\t"),
+                "Altered columnar tables should keep their rows");
+
+        // A crash after the column store was written but before the table file was cut back to its header
+        Files.write(databaseDir.resolve("marks.tab"), List.of("id\tname\tmark\tpass", "2\tSion\t55\tTRUE", "4\tChris\t20\tFALSE"));
+        server.queryExecuter.getDatabase().getTableCache().invalidatePrefix(randomName + "/");
+        sendCommandToServer("INSERT INTO marks VALUES ('Kim', 80, TRUE, 'A');");
+        assertTrue(sendCommandToServer("UPDATE marks SET grade = 'B' WHERE name == 'Kim';").startsWith("[OK]"),
+                "The columns should be taken from the column store");
+        response = sendCommandToServer("SELECT * FROM marks;");
+        assertTrue(response.contains("id\tname\tmark\tpass\tgrade") && response.contains("5\tKim\t80\tTRUE\tB"),
+                "The columns should be taken from the column store");
+        assertEquals(1, response.split("\tSion\t", -1).length - 1, "Rows moved into the column store should be read once");
+    }
+
+    // Large tables are scanned through a memory mapping of their file and give the same results as loaded tables;
+    // files are never mapped on Windows
+    @Test
+    @DisabledOnOs(OS.WINDOWS)
+    public void testMappedScan() throws IOException {
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        sendCommandToServer("CREATE TABLE marks (name, mark, pass);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Simon', 65, TRUE), ('Sion', 55, TRUE);");
+        // Rows as a hand-edited file might have them: Windows line endings, padding, a blank line, a short row
+        Files.writeString(Paths.get("databases", randomName, "marks.tab"),
+                "3\t Zoë \t70\tTRUE\r\n\n4\tRob\n", StandardOpenOption.APPEND);
+        server.queryExecuter.getDatabase().setMappedScanMinBytes(0);
+        server.queryExecuter.getDatabase().getTableCache().invalidatePrefix(randomName + "/");
+        assertTrue(sendCommandToServer("EXPLAIN SELECT name FROM marks WHERE mark > 60;").contains("Mapped file scan on marks reading 2 of 4 columns"));
+        String[] queries = {"SELECT * FROM marks;", "SELECT name FROM marks WHERE mark > 60;", "SELECT pass, id FROM marks WHERE name == 'rob';"};
+        String[] mapped = new String[queries.length];
+        for (int i = 0; i < queries.length; i++) {
+            mapped[i] = sendCommandToServer(queries[i]);
+        }
+        assertTrue(mapped[1].contains("Simon") && mapped[1].contains("Zoë") && !mapped[1].contains("Sion"),
+                "The mapped scan should find matching rows");
+        server.queryExecuter.getDatabase().setMappedScanMinBytes(Long.MAX_VALUE);
+        for (int i = 0; i < queries.length; i++) {
+            assertTrue(sendCommandToServer(queries[i]).equals(mapped[i]), "The mapped scan should return the same result as the loaded table");
+        }
+    }
+
+    // One checkpointer per server, stopped by close; checkpoints do not empty the result cache
+    @Test
+    public void testCheckpointer() throws IOException {
+        long checkpointers = countCheckpointerThreads();
+        for (int i = 0; i < 20; i++) {
+            sendCommandToServer("CREATE DATABASE " + generateRandomName() + ";");
+        }
+        assertEquals(checkpointers, countCheckpointerThreads(), "CREATE DATABASE should not start another checkpointer");
+
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        sendCommandToServer("CREATE TABLE marks (name, mark);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Simon', 65);");
+        sendCommandToServer("UPDATE marks SET mark = 70 WHERE name == 'Simon';");
+        String response = sendCommandToServer("SELECT * FROM marks;");
+        server.queryExecuter.getDatabase().checkpoint();
+        assertTrue(Files.readAllLines(Paths.get("databases", randomName, "marks.tab")).contains("1\tSimon\t70"));
+        assertEquals(response, sendCommandToServer("SELECT * FROM marks;"));
+        assertEquals(1, server.queryExecuter.getResultCache().getHits(), "A checkpoint should not change the table version");
+
+        server.queryExecuter.getDatabase().close();
+        // The stopped executor's thread can take a moment to exit.
+        long deadline = System.currentTimeMillis() + 1000;
+        while (countCheckpointerThreads() >= checkpointers && System.currentTimeMillis() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertEquals(checkpointers - 1, countCheckpointerThreads(), "Closing the database should stop its checkpointer");
+    }
+
+    // Readers and writers on different tables run in parallel; each table is read from disk only once
+    @Test
+    public void testConcurrentTableLoads() {
+        assertTimeoutPreemptively(Duration.ofMillis(10000), () -> {
+            String randomName = generateRandomName();
+            sendCommandToServer("CREATE DATABASE " + randomName + ";");
+            sendCommandToServer("USE " + randomName + ";");
+            int tables = 4;
+            for (int t = 0; t < tables; t++) {
+                sendCommandToServer("CREATE TABLE t" + t + " (name, mark);");
+                StringBuilder insert = new StringBuilder("INSERT INTO t" + t + " VALUES ");
+                for (int i = 0; i < 500; i++) {
+                    insert.append(i == 0 ? "" : ", ").append("('Student").append(i).append("', ").append(i % 100).append(")");
+                }
+                sendCommandToServer(insert + ";");
+            }
+            TableCache cache = server.queryExecuter.getDatabase().getTableCache();
+            cache.invalidatePrefix(randomName + "/");
+            long misses = cache.getMisses();
+
+            ExecutorService executor = Executors.newFixedThreadPool(tables * 3);
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> clients = new ArrayList<>();
+            for (int t = 0; t < tables; t++) {
+                String table = "t" + t;
+                for (int reader = 0; reader < 2; reader++) {
+                    clients.add(executor.submit(() -> {
+                        Session session = useDatabase(randomName);
+                        start.await();
+                        for (int i = 0; i < 50; i++) {
+                            String response = server.handleCommand(session, "SELECT name FROM " + table + " WHERE mark == 0;");
+                            assertTrue(response.startsWith("[OK]") && response.contains("Student100"), response);
+                        }
+                        return null;
+                    }));
+                }
+                clients.add(executor.submit(() -> {
+                    Session session = useDatabase(randomName);
+                    start.await();
+                    for (int i = 0; i < 50; i++) {
+                        String response = server.handleCommand(session, "INSERT INTO " + table + " VALUES ('Late" + i + "', 0);");
+                        assertTrue(response.startsWith("[OK]"), response);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> client : clients) {
+                client.get();
+            }
+            executor.shutdown();
+
+            assertEquals(misses + tables, cache.getMisses(), "Each table should be loaded once");
+            for (int t = 0; t < tables; t++) {
+                String response = sendCommandToServer("SELECT name FROM t" + t + " WHERE mark == 0;");
+                // Status and header, then the 5 loaded rows with mark 0 and the 50 inserted ones.
+                assertEquals(2 + 5 + 50, response.split("\\R").length, "Every insert should be kept");
+            }
+        });
+    }
+
+    private Session useDatabase(String databaseName) {
+        Session session = new Session();
+        assertTrue(server.handleCommand(session, "USE " + databaseName + ";").startsWith("[OK]"));
+        return session;
+    }
+
+    private static long countCheckpointerThreads() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().equals("checkpointer") && thread.isAlive()).count();
+    }
+}